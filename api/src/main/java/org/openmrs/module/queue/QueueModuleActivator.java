@@ -10,9 +10,13 @@
 package org.openmrs.module.queue;
 
 import lombok.extern.slf4j.Slf4j;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.BaseModuleActivator;
 import org.openmrs.module.DaemonToken;
 import org.openmrs.module.DaemonTokenAware;
+import org.openmrs.module.queue.api.QueueServicesWrapper;
+import org.openmrs.module.queue.api.VisitQueueNumberFormatter;
+import org.openmrs.module.queue.api.sort.SortWeightGeneratorListener;
 import org.openmrs.module.queue.tasks.QueueTimerTask;
 
 /**
@@ -26,10 +30,33 @@ public class QueueModuleActivator extends BaseModuleActivator implements DaemonT
 		super.started();
 		log.info("Queue Module Started");
 		QueueTimerTask.setEnabled(true);
+		Context.getAdministrationService().addGlobalPropertyListener(getQueueServicesWrapper());
+		Context.getAdministrationService().addGlobalPropertyListener(getSortWeightGeneratorListener());
+		Context.getAdministrationService().addGlobalPropertyListener(getVisitQueueNumberFormatter());
+	}
+	
+	@Override
+	public void willStop() {
+		super.willStop();
+		Context.getAdministrationService().removeGlobalPropertyListener(getQueueServicesWrapper());
+		Context.getAdministrationService().removeGlobalPropertyListener(getSortWeightGeneratorListener());
+		Context.getAdministrationService().removeGlobalPropertyListener(getVisitQueueNumberFormatter());
 	}
 	
 	@Override
 	public void setDaemonToken(DaemonToken daemonToken) {
 		QueueTimerTask.setDaemonToken(daemonToken);
 	}
+	
+	private QueueServicesWrapper getQueueServicesWrapper() {
+		return Context.getRegisteredComponent("queue.QueueServicesWrapper", QueueServicesWrapper.class);
+	}
+	
+	private SortWeightGeneratorListener getSortWeightGeneratorListener() {
+		return Context.getRegisteredComponent("queue.SortWeightGeneratorListener", SortWeightGeneratorListener.class);
+	}
+	
+	private VisitQueueNumberFormatter getVisitQueueNumberFormatter() {
+		return Context.getRegisteredComponent("queue.VisitQueueNumberFormatter", VisitQueueNumberFormatter.class);
+	}
 }
@@ -20,4 +20,12 @@ public class QueueModuleConstants {
 	public final static String QUEUE_SORT_WEIGHT_GENERATOR = "queue.sortWeightGenerator";
 	
 	public final static String EXISTING_VALUE_SORT_WEIGHT_GENERATOR = "existingValueSortWeightGenerator";
+	
+	public final static String QUEUE_PRIORITY_AGING_MINUTES = "queue.priorityAgingMinutes";
+	
+	public final static String QUEUE_VISIT_QUEUE_NUMBER_PREFIX_LENGTH = "queue.visitQueueNumberPrefixLength";
+	
+	public final static String QUEUE_VISIT_QUEUE_NUMBER_PADDING = "queue.visitQueueNumberPadding";
+	
+	public final static String QUEUE_MAX_EVENT_STREAMS = "queue.maxEventStreams";
 }
@@ -0,0 +1,79 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Concept;
+
+/**
+ * An immutable snapshot of the members of a concept set, which allows membership and position
+ * within the set to be checked in constant time, without loading the set members. Members are
+ * identified by uuid, consistent with {@link Concept#equals(Object)}.
+ */
+public class ConceptSetMembers {
+	
+	private final List<String> memberUuids;
+	
+	private final Map<String, Integer> positions;
+	
+	/**
+	 * @param members the members of the concept set, in order
+	 */
+	public ConceptSetMembers(List<Concept> members) {
+		List<String> uuids = new ArrayList<>();
+		Map<String, Integer> indexes = new HashMap<>();
+		if (members != null) {
+			for (Concept member : members) {
+				indexes.putIfAbsent(member.getUuid(), uuids.size());
+				uuids.add(member.getUuid());
+			}
+		}
+		this.memberUuids = Collections.unmodifiableList(uuids);
+		this.positions = Collections.unmodifiableMap(indexes);
+	}
+	
+	/**
+	 * @param concept the concept to check
+	 * @return true if the given concept is a member of the set
+	 */
+	public boolean contains(Concept concept) {
+		return concept != null && positions.containsKey(concept.getUuid());
+	}
+	
+	/**
+	 * @param concept the concept to check
+	 * @return the position of the given concept within the set, or -1 if it is not a member
+	 */
+	public int indexOf(Concept concept) {
+		if (concept == null) {
+			return -1;
+		}
+		return positions.getOrDefault(concept.getUuid(), -1);
+	}
+	
+	/**
+	 * @return the uuids of the members of the set, in order
+	 */
+	public List<String> getMemberUuids() {
+		return memberUuids;
+	}
+	
+	/**
+	 * @return the number of members in the set
+	 */
+	public int size() {
+		return memberUuids.size();
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api;
+
+import java.util.Date;
+
+import org.openmrs.Concept;
+import org.openmrs.User;
+import org.openmrs.annotation.Handler;
+import org.openmrs.api.handler.SaveHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Clears the concept set members cached by {@link QueueServicesWrapper} whenever a concept is saved,
+ * as this may change the members of a configured concept set. The cache is cleared again once the
+ * transaction completes, so that members read by other threads before the change was committed are
+ * not retained.
+ */
+@Handler(supports = Concept.class)
+public class ConceptSetMembersSaveHandler implements SaveHandler<Concept> {
+	
+	private final QueueServicesWrapper queueServices;
+	
+	@Autowired
+	public ConceptSetMembersSaveHandler(@Qualifier("queue.QueueServicesWrapper") QueueServicesWrapper queueServices) {
+		this.queueServices = queueServices;
+	}
+	
+	@Override
+	public void handle(Concept concept, User user, Date date, String s) {
+		queueServices.clearConceptSetMembers();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					queueServices.clearConceptSetMembers();
+				}
+			});
+		}
+	}
+}
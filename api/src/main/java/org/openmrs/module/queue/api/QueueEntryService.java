@@ -11,25 +11,35 @@ package org.openmrs.module.queue.api;
 
 import javax.validation.constraints.NotNull;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.openmrs.Concept;
 import org.openmrs.Location;
 import org.openmrs.Patient;
+import org.openmrs.Provider;
 import org.openmrs.Visit;
 import org.openmrs.VisitAttributeType;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.APIException;
+import org.openmrs.module.queue.api.search.QueueEntryReference;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.api.search.QueueEntrySummary;
+import org.openmrs.module.queue.api.search.QueueEntryWaitTimeStatistics;
 import org.openmrs.module.queue.api.sort.SortWeightGenerator;
 import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
 import org.openmrs.module.queue.model.QueueEntryTransition;
+import org.openmrs.module.queue.model.QueueEntryTransitionResult;
 import org.openmrs.module.queue.utils.PrivilegeConstants;
 
 public interface QueueEntryService {
 	
+	int BULK_UPDATE_BATCH_SIZE = 1000;
+	
 	/**
 	 * Gets a queue entry given uuid.
 	 *
@@ -39,6 +49,15 @@ public interface QueueEntryService {
 	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
 	Optional<QueueEntry> getQueueEntryByUuid(@NotNull String uuid);
 	
+	/**
+	 * Gets the queue entries with the given uuids in a single query, including voided queue entries.
+	 *
+	 * @param uuids the uuids of the queue entries to return
+	 * @return the queue entries with any of the given uuids, in no particular order
+	 */
+	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
+	List<QueueEntry> getQueueEntriesByUuids(@NotNull Collection<String> uuids);
+	
 	/**
 	 * Gets a queue entry by id.
 	 *
@@ -62,8 +81,19 @@ public interface QueueEntryService {
 	List<QueueEntry> getOverlappingQueueEntries(Patient patient, Queue queue, Date startedAt, Date endedAt);
 	
 	/**
-	 * Given a specified queue entry Q, return its previous queue entry P, where P has same patient and
-	 * visit as Q, and P.endedAt time is same as Q.startedAt time, and P.queue is same as
+	 * Checks whether any other queue entry for the same patient and queue overlaps with the given queue
+	 * entry, without loading the overlapping entries
+	 *
+	 * @param queueEntry the queue entry to check
+	 * @return true if another queue entry that has not been voided overlaps with the given queue entry
+	 */
+	@Authorized(PrivilegeConstants.GET_QUEUE_ENTRIES)
+	boolean hasOverlappingQueueEntries(@NotNull QueueEntry queueEntry);
+	
+	/**
+	 * Given a specified queue entry Q, return its previous queue entry P. If Q was created by a
+	 * transition, P is the entry it is linked to as its previousQueueEntry. Otherwise, P has same
+	 * patient and visit as Q, and P.endedAt time is same as Q.startedAt time, and P.queue is same as
 	 * Q.queueComingFrom
 	 *
 	 * @param queueEntry
@@ -73,6 +103,20 @@ public interface QueueEntryService {
 	@Authorized(PrivilegeConstants.GET_QUEUE_ENTRIES)
 	QueueEntry getPreviousQueueEntry(@NotNull QueueEntry queueEntry);
 	
+	/**
+	 * Retrieves the previous queue entries of many queue entries together, as for
+	 * {@link #getPreviousQueueEntry(QueueEntry)}, but with a single query for all of them, such as
+	 * when representing a page of queue entries
+	 *
+	 * @param queueEntries the saved queue entries to get the previous queue entries of
+	 * @return the previous queue entry of each of the given queue entries, keyed by queue entry id,
+	 *         mapped to null if an entry has no previous queue entry. Entries that have a
+	 *         queueComingFrom but no startedAt are not included.
+	 * @throws IllegalStateException if multiple previous queue entries are identified for an entry
+	 */
+	@Authorized(PrivilegeConstants.GET_QUEUE_ENTRIES)
+	Map<Integer, QueueEntry> getPreviousQueueEntries(@NotNull Collection<QueueEntry> queueEntries);
+	
 	/**
 	 * Saves a queue entry
 	 *
@@ -88,10 +132,43 @@ public interface QueueEntryService {
 	 * 
 	 * @param queueEntryTransition the queueEntryTransition
 	 * @return the new QueueEntry that is created
+	 * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if the queue entry has
+	 *             been modified by another transaction since it was loaded
 	 */
 	@Authorized({ PrivilegeConstants.MANAGE_QUEUE_ENTRIES })
 	QueueEntry transitionQueueEntry(@NotNull QueueEntryTransition queueEntryTransition);
 	
+	/**
+	 * Calls the next patient waiting in a queue, by claiming the active entry with the given waiting
+	 * status that has the highest sort weight and transitioning it to the given new status, in a single
+	 * operation. The claimed entry is locked until the transition completes, and entries being called
+	 * by concurrent callers are skipped, so that two callers never call the same patient.
+	 *
+	 * @param queue the queue to call the next patient from
+	 * @param waitingStatus the status of the entries that are waiting to be called
+	 * @param newStatus the status to transition the called entry to
+	 * @param provider the provider calling the patient, if any. Entries waiting for a different
+	 *            provider are skipped, and the new entry is waiting for this provider.
+	 * @return the new QueueEntry that is created, or null if there are no patients waiting
+	 */
+	@Authorized({ PrivilegeConstants.MANAGE_QUEUE_ENTRIES })
+	QueueEntry callNext(@NotNull Queue queue, @NotNull Concept waitingStatus, @NotNull Concept newStatus,
+	        Provider provider);
+	
+	/**
+	 * Transitions many queue entries together in a single transaction. Each transition is checked and
+	 * validated as for {@link #transitionQueueEntry(QueueEntryTransition)}, and also against the other
+	 * transitions in the batch, but a transition that fails does not prevent the others from being
+	 * saved. The entries being transitioned are reloaded and locked together, every transition is
+	 * checked before any entry is ended, and the changes to them are written to the database in batches.
+	 * The new entries are saved with {@link #saveQueueEntry(QueueEntry)}.
+	 *
+	 * @param transitions the transitions to perform
+	 * @return the outcome of each transition, in the same order as the given transitions
+	 */
+	@Authorized({ PrivilegeConstants.MANAGE_QUEUE_ENTRIES })
+	List<QueueEntryTransitionResult> transitionQueueEntries(@NotNull List<QueueEntryTransition> transitions);
+	
 	/**
 	 * Undoes a transition to the input queue entry by voiding it and making its previous queue entry
 	 * active by setting the previous entry's end time to null.
@@ -101,6 +178,8 @@ public interface QueueEntryService {
 	 * @return the previous queue entry, re-activated
 	 * @throws IllegalArgumentException if the previous queue entry does not exist
 	 * @throws IllegalStateException if multiple previous entries are identified
+	 * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if the queue entry or its
+	 *             previous queue entry has been modified by another transaction since it was loaded
 	 */
 	@Authorized({ PrivilegeConstants.MANAGE_QUEUE_ENTRIES })
 	QueueEntry undoTransition(@NotNull QueueEntry queueEntry);
@@ -124,19 +203,82 @@ public interface QueueEntryService {
 	void purgeQueueEntry(@NotNull QueueEntry queueEntry) throws APIException;
 	
 	/**
-	 * @return {@link List} of queue entries that match the given %{@link QueueEntrySearchCriteria}
+	 * @return {@link List} of queue entries that match the given %{@link QueueEntrySearchCriteria},
+	 *         limited to the after, startIndex and limit of the criteria if specified
 	 */
 	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
 	List<QueueEntry> getQueueEntries(@NotNull QueueEntrySearchCriteria searchCriteria);
 	
+	/**
+	 * @return summaries of the queue entries that match the given %{@link QueueEntrySearchCriteria}, as
+	 *         for {@link #getQueueEntries(QueueEntrySearchCriteria)}, retrieved with a projection so that
+	 *         the entries and the objects they refer to are not loaded
+	 */
+	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
+	List<QueueEntrySummary> getQueueEntrySummaries(@NotNull QueueEntrySearchCriteria searchCriteria);
+	
+	/**
+	 * Retrieves the journey of a patient through queues during a visit, with a single query
+	 *
+	 * @param visit the visit to retrieve the journey for
+	 * @return the queue entries of the visit that have not been voided, in the order they started
+	 */
+	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
+	List<QueueEntry> getQueueEntryJourney(@NotNull Visit visit);
+	
+	/**
+	 * Retrieves the journey of a patient through queues on a given day, with a single query, such as
+	 * for patients who are queued without a visit
+	 *
+	 * @param patient the patient to retrieve the journey for
+	 * @param date any time on the day to retrieve the journey for
+	 * @return the queue entries of the patient that started on that day and have not been voided, in
+	 *         the order they started
+	 */
+	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
+	List<QueueEntry> getQueueEntryJourney(@NotNull Patient patient, @NotNull Date date);
+	
 	/**
 	 * @return {@link Long} count of queue entries that match the given
-	 *         %{@link QueueEntrySearchCriteria}
+	 *         %{@link QueueEntrySearchCriteria}, ignoring any after, startIndex and limit
 	 */
 	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
 	Long getCountOfQueueEntries(@NotNull QueueEntrySearchCriteria searchCriteria);
 	
 	/**
+	 * @return statistics about the wait times of the queue entries that match the given
+	 *         %{@link QueueEntrySearchCriteria} and have ended, ignoring any after, startIndex and limit.
+	 *         The wait times are aggregated by the database where possible, so percentiles cannot be
+	 *         computed from these statistics.
+	 */
+	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
+	QueueEntryWaitTimeStatistics getQueueEntryWaitTimeStatistics(@NotNull QueueEntrySearchCriteria searchCriteria);
+	
+	/**
+	 * @param searchCriteria the criteria to limit the queue entries by
+	 * @param includeWaitTimes true to retrieve the wait time of each entry, so that percentiles can be
+	 *            computed from the returned statistics
+	 * @return statistics about the wait times of the queue entries that match the given
+	 *         %{@link QueueEntrySearchCriteria} and have ended, ignoring any after, startIndex and limit
+	 */
+	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
+	QueueEntryWaitTimeStatistics getQueueEntryWaitTimeStatistics(@NotNull QueueEntrySearchCriteria searchCriteria,
+	        boolean includeWaitTimes);
+	
+	/**
+	 * @param queue the queue to check
+	 * @return a version for the entries in the given queue, which changes once any transaction that
+	 *         saves, transitions, voids or purges an entry in the queue has completed. Entries retrieved
+	 *         for the queue remain current for as long as this version is unchanged.
+	 */
+	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
+	long getQueueEntriesVersion(@NotNull Queue queue);
+	
+	/**
+	 * Issues the next visit queue number for the queue at the location today, from a sequence that
+	 * is incremented atomically so that concurrent registrations are issued different numbers, and
+	 * formats it with the {@link VisitQueueNumberFormatter}
+	 *
 	 * @param location The location associated with the queue
 	 * @param queue The queue
 	 * @return VisitQueueNumber - used to identify patients in the queue instead of using patient name
@@ -147,11 +289,75 @@ public interface QueueEntryService {
 	        @NotNull VisitAttributeType visitAttributeType);
 	
 	/**
-	 * Closes all active queue entries
+	 * Ends the active queue entries of the given stopped visit at the visit's stop date, with bulk
+	 * updates rather than by saving each entry. Entries that started after the visit was stopped are not
+	 * ended. The method name intentionally does not start with "save", so that the save handlers, which
+	 * call this method, are not applied to the visit again.
+	 *
+	 * @param visit the stopped visit
+	 * @return the number of queue entries that were ended
+	 */
+	@Authorized({ PrivilegeConstants.MANAGE_QUEUE_ENTRIES })
+	int endQueueEntriesForVisit(@NotNull Visit visit);
+	
+	/**
+	 * Voids the queue entries of the given voided visit, with the visit's void details, using bulk
+	 * updates rather than by saving each entry. The method name intentionally does not start with
+	 * "void", so that the void handlers are not applied to the visit again.
+	 *
+	 * @param visit the voided visit
+	 * @return the number of queue entries that were voided
+	 */
+	@Authorized({ PrivilegeConstants.MANAGE_QUEUE_ENTRIES })
+	int markQueueEntriesVoidedForVisit(@NotNull Visit visit);
+	
+	/**
+	 * Retrieves, in chunks, the active queue entries that have not been ended even though their visit
+	 * has been stopped. The returned entries are ordered by id, so the id of the last entry can be used
+	 * as a watermark to retrieve the next chunk.
+	 *
+	 * @param afterQueueEntryId if not null, limits to entries with an id greater than this
+	 * @param maxResults the maximum number of entries to return
+	 * @return the active queue entries whose visit has been stopped, with their visits loaded
+	 */
+	@Authorized({ PrivilegeConstants.GET_QUEUE_ENTRIES })
+	List<QueueEntry> getActiveQueueEntriesWithStoppedVisits(Integer afterQueueEntryId, int maxResults);
+	
+	/**
+	 * Closes all active queue entries, including any that start after the time at which they are closed.
+	 * The entries are closed in chunks as for
+	 * {@link #closeActiveQueueEntries(Collection, Collection, Date)}.
 	 */
 	@Authorized(PrivilegeConstants.MANAGE_QUEUE_ENTRIES)
 	void closeActiveQueueEntries();
 	
+	/**
+	 * Closes the matching active queue entries, without loading them, by ending them with bulk updates
+	 * of at most {@link #BULK_UPDATE_BATCH_SIZE} entries each. The entries are read in chunks by id, and
+	 * each chunk is closed and committed in a transaction of its own, so an interrupted call leaves the
+	 * chunks already closed in place. Entries that start after the time at which they are closed are not
+	 * closed.
+	 *
+	 * @param queues if not null, limits to entries in these queues
+	 * @param locations if not null, limits to entries in queues at these locations
+	 * @param startedBefore if not null, limits to entries that started before this date
+	 * @return the number of queue entries that were closed
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_QUEUE_ENTRIES)
+	int closeActiveQueueEntries(Collection<Queue> queues, Collection<Location> locations, Date startedBefore);
+	
+	/**
+	 * Ends the referenced queue entries that are still active with a single bulk update, in a
+	 * transaction of its own that is committed when this returns. Used to close each chunk of entries in
+	 * {@link #closeActiveQueueEntries(Collection, Collection, Date)}.
+	 *
+	 * @param queueEntries references to at most {@link #BULK_UPDATE_BATCH_SIZE} queue entries to end
+	 * @param endedAt the date to end the queue entries at
+	 * @return the number of queue entries that were ended
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_QUEUE_ENTRIES)
+	int closeQueueEntries(@NotNull List<QueueEntryReference> queueEntries, @NotNull Date endedAt);
+	
 	/**
 	 * @return the instance of SortWeightGenerator that is configured via global property, or null if
 	 *         none configured
@@ -166,4 +372,27 @@ public interface QueueEntryService {
 	 * @param sortWeightGenerator the SortWeightGenerator to set
 	 */
 	void setSortWeightGenerator(SortWeightGenerator sortWeightGenerator);
+	
+	/**
+	 * Regenerates the sort weights of all active queue entries with the sort weight generator, so that
+	 * entries saved before a change to the generator, or to its configuration, are ordered consistently
+	 * with those saved after it. The generator is resolved in the transaction of the caller, and the
+	 * entries are then read in chunks by id, each chunk being updated and committed in a transaction of
+	 * its own. Entries whose sort weight does not change are not updated.
+	 *
+	 * @return the number of queue entries whose sort weight was changed
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_QUEUE_ENTRIES)
+	int regenerateSortWeights();
+	
+	/**
+	 * Regenerates the sort weights of the referenced queue entries that are still active, in a
+	 * transaction of its own that is committed when this returns. Used to update each chunk of entries
+	 * in {@link #regenerateSortWeights()}.
+	 *
+	 * @param queueEntries references to at most {@link #BULK_UPDATE_BATCH_SIZE} queue entries to update
+	 * @return the number of queue entries whose sort weight was changed
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_QUEUE_ENTRIES)
+	int regenerateSortWeights(@NotNull List<QueueEntryReference> queueEntries);
 }
@@ -11,9 +11,11 @@ package org.openmrs.module.queue.api;
 
 import javax.validation.constraints.NotNull;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.openmrs.OpenmrsObject;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.APIException;
 import org.openmrs.module.queue.api.search.QueueSearchCriteria;
@@ -73,6 +75,20 @@ public interface QueueService {
 	@Authorized({ PrivilegeConstants.GET_QUEUES })
 	List<Queue> getQueues(@NotNull QueueSearchCriteria searchCriteria);
 	
+	/**
+	 * Gets the queues, concepts, locations or providers with any of the given uuids in a single query,
+	 * so that references to several of them are not resolved one at a time. Retired queues are
+	 * excluded, as they are when getting a queue by uuid. The privilege to get objects of the given type
+	 * is required.
+	 *
+	 * @param type one of Queue, Concept, Location or Provider
+	 * @param uuids the uuids of the objects to retrieve
+	 * @return the objects found, in no particular order
+	 * @throws IllegalArgumentException if objects of the given type cannot be retrieved by uuid
+	 */
+	@Authorized
+	<T extends OpenmrsObject> List<T> getObjectsByUuids(@NotNull Class<T> type, @NotNull Collection<String> uuids);
+	
 	/**
 	 * Voids a queue
 	 *
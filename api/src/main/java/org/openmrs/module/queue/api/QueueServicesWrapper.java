@@ -10,17 +10,29 @@
 package org.openmrs.module.queue.api;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
 import org.openmrs.Concept;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Location;
+import org.openmrs.OpenmrsObject;
 import org.openmrs.Patient;
 import org.openmrs.Provider;
 import org.openmrs.Visit;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.ConceptService;
+import org.openmrs.api.GlobalPropertyListener;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.ProviderService;
@@ -32,9 +44,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+/**
+ * Provides access to the services used by this module, and resolves references to the objects they
+ * manage. The members of the concept sets configured for allowed services, statuses and priorities
+ * are cached, as they are checked whenever a queue or queue entry is validated or sorted. These are
+ * invalidated whenever one of the relevant global properties changes, and whenever a concept is
+ * saved, as this may change the members of a set.
+ */
 @Component("queue.QueueServicesWrapper")
 @Getter
-public class QueueServicesWrapper {
+public class QueueServicesWrapper implements GlobalPropertyListener {
 	
 	private final QueueService queueService;
 	
@@ -56,6 +75,9 @@ public class QueueServicesWrapper {
 	
 	private final ProviderService providerService;
 	
+	@Getter(AccessLevel.NONE)
+	private final Map<String, ConceptSetMembers> conceptSetMembers = new ConcurrentHashMap<>();
+	
 	@Autowired
 	public QueueServicesWrapper(@Qualifier("queue.QueueService") QueueService queueService,
 	    @Qualifier("queue.QueueEntryService") QueueEntryService queueEntryService,
@@ -81,11 +103,26 @@ public class QueueServicesWrapper {
 	 * @return a List of Concepts matching those references
 	 */
 	public List<Concept> getConcepts(String[] conceptRefs) {
-		List<Concept> ret = new ArrayList<>();
-		for (String conceptRef : conceptRefs) {
-			ret.add(getConcept(conceptRef.trim()));
-		}
-		return ret;
+		return listByRef(conceptRefs, getConceptsByRef(Arrays.asList(conceptRefs)));
+	}
+	
+	/**
+	 * @param members the members of a concept set
+	 * @return the member concepts, in order, resolved with a single query
+	 */
+	public List<Concept> getConcepts(ConceptSetMembers members) {
+		return getConcepts(members.getMemberUuids().toArray(new String[0]));
+	}
+	
+	/**
+	 * Resolves all concepts referenced by uuid with a single query, and only resolves the remaining
+	 * references one at a time, by mapping or name
+	 *
+	 * @param conceptRefs the uuids, source:mappings, or unique names of the concepts to retrieve
+	 * @return a Map from each trimmed non-blank reference to the concept it matches
+	 */
+	public Map<String, Concept> getConceptsByRef(Collection<String> conceptRefs) {
+		return getAllByRef(Concept.class, conceptRefs, this::getConceptByMappingOrName);
 	}
 	
 	/**
@@ -100,19 +137,23 @@ public class QueueServicesWrapper {
 		if (c != null) {
 			return c;
 		}
+		return getConceptByMappingOrName(conceptRef);
+	}
+	
+	private Concept getConceptByMappingOrName(String conceptRef) {
 		//handle mapping
 		int idx = conceptRef.indexOf(":");
 		if (idx >= 0 && idx < conceptRef.length() - 1) {
 			String conceptSource = conceptRef.substring(0, idx);
 			String conceptCode = conceptRef.substring(idx + 1);
-			c = getConceptService().getConceptByMapping(conceptCode, conceptSource);
+			Concept c = getConceptService().getConceptByMapping(conceptCode, conceptSource);
 			if (c != null) {
 				return c;
 			}
 		}
 		//handle name.  this isn't ideal, as core will just log a warning if there are 2 concepts with the same name
 		//but there are no alternative suitable methods to get a List of Concepts that exactly match a given name
-		c = getConceptService().getConceptByName(conceptRef);
+		Concept c = getConceptService().getConceptByName(conceptRef);
 		if (c == null) {
 			throw new IllegalArgumentException("Unable to find concept: " + conceptRef);
 		}
@@ -124,11 +165,18 @@ public class QueueServicesWrapper {
 	 * @return a List of Locations matching those references
 	 */
 	public List<Location> getLocations(String[] locationRefs) {
-		List<Location> ret = new ArrayList<>();
-		for (String locationRef : locationRefs) {
-			ret.add(getLocation(locationRef.trim()));
-		}
-		return ret;
+		return listByRef(locationRefs, getLocationsByRef(Arrays.asList(locationRefs)));
+	}
+	
+	/**
+	 * Resolves all locations referenced by uuid with a single query, and only resolves the remaining
+	 * references one at a time, by name
+	 *
+	 * @param locationRefs the uuids or unique names of the locations to retrieve
+	 * @return a Map from each trimmed non-blank reference to the location it matches
+	 */
+	public Map<String, Location> getLocationsByRef(Collection<String> locationRefs) {
+		return getAllByRef(Location.class, locationRefs, this::getLocationByName);
 	}
 	
 	/**
@@ -143,6 +191,10 @@ public class QueueServicesWrapper {
 		if (l != null) {
 			return l;
 		}
+		return getLocationByName(locationRef);
+	}
+	
+	private Location getLocationByName(String locationRef) {
 		List<Location> locations = getLocationService().getLocations(locationRef);
 		if (locations.size() == 1) {
 			return locations.get(0);
@@ -187,11 +239,17 @@ public class QueueServicesWrapper {
 	 * @return a List of Queues matching those references
 	 */
 	public List<Queue> getQueues(String[] queueRefs) {
-		List<Queue> ret = new ArrayList<>();
-		for (String queueRef : queueRefs) {
-			ret.add(getQueue(queueRef.trim()));
-		}
-		return ret;
+		return listByRef(queueRefs, getQueuesByRef(Arrays.asList(queueRefs)));
+	}
+	
+	/**
+	 * @param queueRefs the uuids of the queues to retrieve, which are resolved with a single query
+	 * @return a Map from each trimmed non-blank reference to the queue it matches
+	 */
+	public Map<String, Queue> getQueuesByRef(Collection<String> queueRefs) {
+		return getAllByRef(Queue.class, queueRefs, queueRef -> {
+			throw new IllegalArgumentException("Unable to find queue: " + queueRef);
+		});
 	}
 	
 	/**
@@ -214,11 +272,17 @@ public class QueueServicesWrapper {
 	 * @return a List of Providers matching those references
 	 */
 	public List<Provider> getProviders(String[] providerRefs) {
-		List<Provider> ret = new ArrayList<>();
-		for (String providerRef : providerRefs) {
-			ret.add(getProvider(providerRef.trim()));
-		}
-		return ret;
+		return listByRef(providerRefs, getProvidersByRef(Arrays.asList(providerRefs)));
+	}
+	
+	/**
+	 * @param providerRefs the uuids of the providers to retrieve, which are resolved with a single query
+	 * @return a Map from each trimmed non-blank reference to the provider it matches
+	 */
+	public Map<String, Provider> getProvidersByRef(Collection<String> providerRefs) {
+		return getAllByRef(Provider.class, providerRefs, providerRef -> {
+			throw new IllegalArgumentException("Unable to find provider: " + providerRef);
+		});
 	}
 	
 	/**
@@ -236,6 +300,47 @@ public class QueueServicesWrapper {
 		throw new IllegalArgumentException("Unable to find provider: " + providerRef);
 	}
 	
+	/**
+	 * @param refs the references to look up, which are trimmed
+	 * @param objectsByRef the objects resolved for the references
+	 * @return a List of the objects matching the references, in the same order, with null for blank
+	 *         references
+	 */
+	public static <T> List<T> listByRef(String[] refs, Map<String, T> objectsByRef) {
+		List<T> ret = new ArrayList<>();
+		for (String ref : refs) {
+			ret.add(objectsByRef.get(ref.trim()));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Resolves the distinct non-blank references with a single query by uuid, and resolves any
+	 * reference not matching a uuid with the given resolver, which throws if it cannot be resolved
+	 */
+	private <T extends OpenmrsObject> Map<String, T> getAllByRef(Class<T> type, Collection<String> refs,
+	        Function<String, T> refResolver) {
+		Set<String> unresolvedRefs = new LinkedHashSet<>();
+		for (String ref : refs) {
+			if (StringUtils.isNotBlank(ref)) {
+				unresolvedRefs.add(ref.trim());
+			}
+		}
+		Map<String, T> ret = new HashMap<>();
+		if (unresolvedRefs.isEmpty()) {
+			return ret;
+		}
+		for (T object : getQueueService().getObjectsByUuids(type, unresolvedRefs)) {
+			if (unresolvedRefs.remove(object.getUuid())) {
+				ret.put(object.getUuid(), object);
+			}
+		}
+		for (String ref : unresolvedRefs) {
+			ret.put(ref, refResolver.apply(ref));
+		}
+		return ret;
+	}
+	
 	/**
 	 * @param queueRoomRefs array of QueueRoom references
 	 * @return a List of QueueRooms matching those references
@@ -306,6 +411,86 @@ public class QueueServicesWrapper {
 		return conceptSet.getSetMembers();
 	}
 	
+	/**
+	 * @return the members of the allowed service concept set
+	 * @see #getAllowedServices()
+	 */
+	public ConceptSetMembers getAllowedServiceMembers() {
+		return getConceptSetMembers(null, QueueModuleConstants.QUEUE_SERVICE);
+	}
+	
+	/**
+	 * @param queue
+	 * @return the members of the allowed status concept set for the given queue
+	 * @see #getAllowedStatuses(Queue)
+	 */
+	public ConceptSetMembers getAllowedStatusMembers(Queue queue) {
+		return getConceptSetMembers(queue.getStatusConceptSet(), QueueModuleConstants.QUEUE_STATUS);
+	}
+	
+	/**
+	 * @param queue
+	 * @return the members of the allowed priority concept set for the given queue
+	 * @see #getAllowedPriorities(Queue)
+	 */
+	public ConceptSetMembers getAllowedPriorityMembers(Queue queue) {
+		return getConceptSetMembers(queue.getPriorityConceptSet(), QueueModuleConstants.QUEUE_PRIORITY);
+	}
+	
+	/**
+	 * Clears the cached members of all concept sets, so that they are resolved again when next needed
+	 */
+	public void clearConceptSetMembers() {
+		conceptSetMembers.clear();
+	}
+	
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return QueueModuleConstants.QUEUE_SERVICE.equals(propertyName)
+		        || QueueModuleConstants.QUEUE_STATUS.equals(propertyName)
+		        || QueueModuleConstants.QUEUE_PRIORITY.equals(propertyName);
+	}
+	
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		clearConceptSetMembers();
+	}
+	
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		clearConceptSetMembers();
+	}
+	
+	/**
+	 * Members are cached by the reference to the concept set, which is either the uuid of the concept
+	 * set configured directly or the value of the global property, so that a change to the global
+	 * property value is never matched with the members of a previously configured concept set.
+	 *
+	 * @param conceptSet the concept set configured directly, if any
+	 * @param globalProperty the global property configuring the default concept set
+	 * @return the members of the given concept set if not null, otherwise of the default concept set
+	 */
+	private ConceptSetMembers getConceptSetMembers(Concept conceptSet, String globalProperty) {
+		if (conceptSet != null) {
+			if (conceptSet.getConceptId() == null) {
+				return new ConceptSetMembers(conceptSet.getSetMembers());
+			}
+			return conceptSetMembers.computeIfAbsent(conceptSet.getUuid(),
+			    uuid -> new ConceptSetMembers(conceptSet.getSetMembers()));
+		}
+		String conceptSetRef = getGlobalProperty(globalProperty);
+		ConceptSetMembers ret = StringUtils.isBlank(conceptSetRef) ? null : conceptSetMembers.get(conceptSetRef);
+		if (ret == null) {
+			Concept defaultConceptSet = getConcept(conceptSetRef);
+			if (defaultConceptSet == null) {
+				throw new IllegalStateException("Missing global property: " + globalProperty);
+			}
+			ret = new ConceptSetMembers(defaultConceptSet.getSetMembers());
+			conceptSetMembers.put(conceptSetRef, ret);
+		}
+		return ret;
+	}
+	
 	/**
 	 * @return the value of the global property with the given name
 	 */
@@ -0,0 +1,120 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.module.queue.QueueModuleConstants;
+import org.openmrs.module.queue.model.Queue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Formats visit queue numbers as a prefix taken from the name of the queue, followed by the number
+ * padded with zeros, such as CON-053. The length of the prefix and the number of digits to pad the
+ * number to are configured with global properties, and default to 3.
+ */
+@Slf4j
+@Component("queue.VisitQueueNumberFormatter")
+public class VisitQueueNumberFormatter implements GlobalPropertyListener {
+	
+	public static final int DEFAULT_PREFIX_LENGTH = 3;
+	
+	public static final int DEFAULT_PADDING = 3;
+	
+	public static final String SEPARATOR = "-";
+	
+	private AdministrationService administrationService;
+	
+	private volatile Integer prefixLength;
+	
+	private volatile Integer padding;
+	
+	@Autowired
+	public void setAdministrationService(@Qualifier("adminService") AdministrationService administrationService) {
+		this.administrationService = administrationService;
+	}
+	
+	/**
+	 * @param queue the queue the number was issued for
+	 * @param number the number issued
+	 * @return the visit queue number, prefixed by the upper case name of the queue, if the prefix length
+	 *         is not 0
+	 */
+	public String format(Queue queue, int number) {
+		String paddedNumber = StringUtils.leftPad(String.valueOf(number), getPadding(), "0");
+		String prefix = StringUtils.left(StringUtils.upperCase(queue.getName()), getPrefixLength());
+		return StringUtils.isEmpty(prefix) ? paddedNumber : prefix + SEPARATOR + paddedNumber;
+	}
+	
+	/**
+	 * @return the number of characters of the queue name to prefix visit queue numbers with
+	 */
+	public int getPrefixLength() {
+		Integer ret = prefixLength;
+		if (ret == null) {
+			ret = getIntegerProperty(QueueModuleConstants.QUEUE_VISIT_QUEUE_NUMBER_PREFIX_LENGTH, DEFAULT_PREFIX_LENGTH);
+			prefixLength = ret;
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return the minimum number of digits of visit queue numbers, which are padded with zeros
+	 */
+	public int getPadding() {
+		Integer ret = padding;
+		if (ret == null) {
+			ret = getIntegerProperty(QueueModuleConstants.QUEUE_VISIT_QUEUE_NUMBER_PADDING, DEFAULT_PADDING);
+			padding = ret;
+		}
+		return ret;
+	}
+	
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return QueueModuleConstants.QUEUE_VISIT_QUEUE_NUMBER_PREFIX_LENGTH.equals(propertyName)
+		        || QueueModuleConstants.QUEUE_VISIT_QUEUE_NUMBER_PADDING.equals(propertyName);
+	}
+	
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		prefixLength = null;
+		padding = null;
+	}
+	
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		prefixLength = null;
+		padding = null;
+	}
+	
+	private int getIntegerProperty(String propertyName, int defaultValue) {
+		String value = administrationService == null ? null : administrationService.getGlobalProperty(propertyName);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			int ret = Integer.parseInt(value.trim());
+			if (ret >= 0) {
+				return ret;
+			}
+		}
+		catch (NumberFormatException e) {
+			// Logged below
+		}
+		log.warn("Invalid value for " + propertyName + ": " + value);
+		return defaultValue;
+	}
+}
@@ -10,7 +10,6 @@
 package org.openmrs.module.queue.api;
 
 import java.util.Date;
-import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -19,11 +18,14 @@ import org.openmrs.Visit;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.handler.SaveHandler;
 import org.openmrs.api.handler.VoidHandler;
-import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
-import org.openmrs.module.queue.model.QueueEntry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+/**
+ * Ends the queue entries of a visit when it is stopped, and voids them when it is voided. As this can
+ * run for many visits at once, such as when visits are closed at the end of the day, the entries are
+ * updated in bulk rather than by loading, validating and saving each of them.
+ */
 @Handler(supports = Visit.class)
 public class VisitWithQueueEntriesSaveHandler implements SaveHandler<Visit>, VoidHandler<Visit> {
 	
@@ -39,33 +41,12 @@ public class VisitWithQueueEntriesSaveHandler implements SaveHandler<Visit>, Voi
 	@Override
 	public void handle(Visit visit, User user, Date date, String s) {
 		if (visit.getVisitId() != null && visit.getStopDatetime() != null) {
-			QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
-			criteria.setVisit(visit);
-			criteria.setIsEnded(false);
-			List<QueueEntry> queueEntries = queueEntryService.getQueueEntries(criteria);
-			if (!queueEntries.isEmpty()) {
-				log.debug("Closing " + +queueEntries.size() + " queue entries associated with stopped visit");
-			}
-			for (QueueEntry qe : queueEntries) {
-				qe.setEndedAt(visit.getStopDatetime());
-				queueEntryService.saveQueueEntry(qe);
-				log.trace("Closed queue entry " + qe + " on " + visit.getStopDatetime());
-			}
+			int count = queueEntryService.endQueueEntriesForVisit(visit);
+			log.trace("Closed " + count + " queue entries on " + visit.getStopDatetime());
 		}
 		if (visit.getVisitId() != null && visit.getVoided()) {
-			QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
-			criteria.setVisit(visit);
-			List<QueueEntry> queueEntries = queueEntryService.getQueueEntries(criteria);
-			for (QueueEntry qe : queueEntries) {
-				if (!qe.getVoided()) {
-					qe.setVoided(true);
-					qe.setVoidReason(visit.getVoidReason());
-					qe.setVoidedBy(visit.getVoidedBy());
-					qe.setDateVoided(visit.getDateVoided());
-					queueEntryService.saveQueueEntry(qe);
-				}
-				log.trace("Voided queue entry " + qe + " on " + date);
-			}
+			int count = queueEntryService.markQueueEntriesVoidedForVisit(visit);
+			log.trace("Voided " + count + " queue entries on " + date);
 		}
 	}
 }
@@ -11,8 +11,10 @@ package org.openmrs.module.queue.api.dao;
 
 import javax.validation.constraints.NotNull;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.openmrs.OpenmrsObject;
 import org.openmrs.module.queue.api.search.QueueSearchCriteria;
 import org.openmrs.module.queue.model.Queue;
 
@@ -22,4 +24,15 @@ public interface QueueDao extends BaseQueueDao<Queue> {
 	 * @return {@link List} of queues that match the given %{@link QueueSearchCriteria}
 	 */
 	List<Queue> getQueues(@NotNull QueueSearchCriteria searchCriteria);
+	
+	/**
+	 * Gets the objects of the given type with any of the given uuids in a single query
+	 *
+	 * @param type the mapped type of the objects to retrieve
+	 * @param uuids the uuids of the objects to retrieve
+	 * @param includeRetired if false, retired objects are excluded
+	 * @return the objects found, in no particular order
+	 */
+	<T extends OpenmrsObject> List<T> getObjectsByUuids(@NotNull Class<T> type, @NotNull Collection<String> uuids,
+	        boolean includeRetired);
 }
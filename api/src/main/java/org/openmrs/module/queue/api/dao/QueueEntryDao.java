@@ -11,39 +11,235 @@ package org.openmrs.module.queue.api.dao;
 
 import javax.validation.constraints.NotNull;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
+import org.openmrs.Concept;
+import org.openmrs.Location;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.module.queue.api.search.QueueEntryReference;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.api.search.QueueEntrySummary;
+import org.openmrs.module.queue.api.search.QueueEntryWaitTimeStatistics;
+import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
 
 public interface QueueEntryDao extends BaseQueueDao<QueueEntry> {
 	
 	/**
-	 * @return {@link List} of queue entries that match the given %{@link QueueEntrySearchCriteria}
+	 * @return {@link List} of queue entries that match the given %{@link QueueEntrySearchCriteria},
+	 *         limited to the after, startIndex and limit of the criteria if specified
 	 */
 	List<QueueEntry> getQueueEntries(@NotNull QueueEntrySearchCriteria searchCriteria);
 	
+	/**
+	 * @return summaries of the queue entries that match the given %{@link QueueEntrySearchCriteria}, in
+	 *         the same order and limited in the same way as
+	 *         {@link #getQueueEntries(QueueEntrySearchCriteria)}, retrieved without loading the entries
+	 *         or the objects they refer to
+	 */
+	List<QueueEntrySummary> getQueueEntrySummaries(@NotNull QueueEntrySearchCriteria searchCriteria);
+	
+	/**
+	 * @return {@link List} of queue entries that match the given %{@link QueueEntrySearchCriteria},
+	 *         ordered by the time they started, ignoring any after, startIndex and limit
+	 */
+	List<QueueEntry> getQueueEntriesInStartedOrder(@NotNull QueueEntrySearchCriteria searchCriteria);
+	
 	/**
 	 * @return {@link Long} of the number of queue entries that match the given
-	 *         %{@link QueueEntrySearchCriteria}
+	 *         %{@link QueueEntrySearchCriteria}, ignoring any after, startIndex and limit
 	 */
 	Long getCountOfQueueEntries(@NotNull QueueEntrySearchCriteria searchCriteria);
 	
+	/**
+	 * @param searchCriteria the criteria to limit the queue entries by
+	 * @param includeWaitTimes true to retrieve the wait time of each entry, so that percentiles can be
+	 *            computed, otherwise the wait times are aggregated by the database where its dialect
+	 *            allows this
+	 * @return statistics about the wait times of the queue entries that match the given
+	 *         %{@link QueueEntrySearchCriteria} and have ended, ignoring any after, startIndex and limit.
+	 *         Only the start and end times of the entries are retrieved, rather than the entries
+	 *         themselves.
+	 */
+	QueueEntryWaitTimeStatistics getQueueEntryWaitTimeStatistics(@NotNull QueueEntrySearchCriteria searchCriteria,
+	        boolean includeWaitTimes);
+	
 	List<QueueEntry> getOverlappingQueueEntries(@NotNull QueueEntrySearchCriteria searchCriteria);
 	
 	/**
-	 * Flushes the current session to ensure pending changes are persisted to the database.
+	 * Checks whether any queue entry overlaps with the given criteria, as for
+	 * {@link #getOverlappingQueueEntries(QueueEntrySearchCriteria)}, by querying only for the ids of at
+	 * most a couple of matching entries rather than loading all of them
+	 *
+	 * @param searchCriteria the patient, queues, startedOn and endedOn to check for overlapping entries
+	 * @param excludedQueueEntryIds the ids of queue entries to disregard, such as the entry being checked
+	 * @return true if there is at least one overlapping queue entry that has not been voided
+	 */
+	boolean hasOverlappingQueueEntries(@NotNull QueueEntrySearchCriteria searchCriteria,
+	        @NotNull Collection<Integer> excludedQueueEntryIds);
+	
+	/**
+	 * @param uuids the uuids of the queue entries to retrieve
+	 * @return the queue entries, including voided queue entries, with any of the given uuids, retrieved
+	 *         in a single query, in no particular order
+	 */
+	List<QueueEntry> getQueueEntriesByUuids(@NotNull Collection<String> uuids);
+	
+	/**
+	 * Reloads the given queue entries from the database, locking them against concurrent modification
+	 * until the current transaction completes. Only the rows of the queue entries themselves are
+	 * locked, and not those of the objects they refer to. Any instances of these entries already in the
+	 * session are evicted first, so that the returned entries reflect the current state in the
+	 * database.
+	 *
+	 * @param queueEntries the saved queue entries to reload
+	 * @return the reloaded queue entries, in no particular order
+	 */
+	List<QueueEntry> getQueueEntriesForUpdate(@NotNull Collection<QueueEntry> queueEntries);
+	
+	/**
+	 * Retrieves, in a single query, the queue entries that may be the previous queue entry of any of the
+	 * given queue entries, being those that have not been voided, are for the patient of one of the
+	 * given entries, are in the queue that one of them came from, and ended at the time one of them
+	 * started. The caller is responsible for matching the candidates to each entry.
+	 *
+	 * @param queueEntries the queue entries to retrieve the possible previous queue entries of
+	 * @return the possible previous queue entries, in no particular order
+	 */
+	List<QueueEntry> getPreviousQueueEntryCandidates(@NotNull Collection<QueueEntry> queueEntries);
+	
+	/**
+	 * Claims the queue entry that is next in line in the given queue, being the active entry with the
+	 * given status that has the highest sort weight, by locking it until the current transaction
+	 * completes. Entries that are locked by other transactions are skipped where the database
+	 * supports it, so that concurrent callers claim different entries rather than the same one.
+	 *
+	 * @param queue the queue to claim the next entry in
+	 * @param status the status of the entries that are waiting to be claimed
+	 * @param provider if not null, entries that are waiting for a different provider are skipped
+	 * @return the claimed queue entry, or null if there are no entries waiting to be claimed
+	 */
+	QueueEntry claimNextQueueEntry(@NotNull Queue queue, @NotNull Concept status, Provider provider);
+	
+	/**
+	 * Increments the visit queue number sequence of the given queue, location and day with a single
+	 * update, which locks the sequence until the current transaction completes, so that concurrent
+	 * callers are each issued a different number.
+	 *
+	 * @param queue the queue the number is issued for
+	 * @param location the location the number is issued at
+	 * @param day the day the number is issued on
+	 * @return the incremented number, or null if there is no sequence for the queue, location and day
+	 */
+	Integer incrementTicketSequence(@NotNull Queue queue, @NotNull Location location, @NotNull Date day);
+	
+	/**
+	 * Creates the visit queue number sequence of the given queue, location and day, starting from the
+	 * given number, unless another transaction has already created it
+	 *
+	 * @param queue the queue the number is issued for
+	 * @param location the location the number is issued at
+	 * @param day the day the number is issued on
+	 * @param number the first number issued
+	 * @return true if the sequence was created, or false if it already exists
+	 */
+	boolean createTicketSequence(@NotNull Queue queue, @NotNull Location location, @NotNull Date day, int number);
+	
+	/**
+	 * @param searchCriteria the criteria to limit the queue entries by
+	 * @return references to the matching queue entries, ordered by id, without loading the entries
+	 *         themselves
+	 */
+	List<QueueEntryReference> getQueueEntryReferences(QueueEntrySearchCriteria searchCriteria);
+	
+	/**
+	 * Retrieves references to the matching queue entries in chunks. As the references are ordered by id,
+	 * the id of the last reference can be used as a watermark to retrieve the next chunk.
+	 *
+	 * @param searchCriteria the criteria to limit the queue entries by
+	 * @param afterQueueEntryId if not null, limits to entries with an id greater than this
+	 * @param maxResults the maximum number of references to return
+	 * @return references to the matching queue entries, ordered by id, without loading the entries
+	 *         themselves
+	 */
+	List<QueueEntryReference> getQueueEntryReferences(QueueEntrySearchCriteria searchCriteria, Integer afterQueueEntryId,
+	        int maxResults);
+	
+	/**
+	 * @param afterQueueEntryId if not null, limits to entries with an id greater than this
+	 * @param maxResults the maximum number of entries to return
+	 * @return the queue entries that have not ended or been voided and whose visit has been stopped,
+	 *         ordered by id, with their visits fetched
+	 */
+	List<QueueEntry> getActiveQueueEntriesWithStoppedVisits(Integer afterQueueEntryId, int maxResults);
+	
+	/**
+	 * Ends the given queue entries with a single bulk update, skipping any that have already ended. Any
+	 * pending changes in the session are flushed first, and any instances of these entries in the
+	 * session are evicted afterwards, as they no longer reflect the database.
+	 *
+	 * @param queueEntryIds the ids of the queue entries to end
+	 * @param endedAt the date to end the queue entries at
+	 * @param changedBy the user ending the queue entries
+	 * @return the number of queue entries that were ended
+	 */
+	int endQueueEntries(@NotNull Collection<Integer> queueEntryIds, @NotNull Date endedAt, User changedBy);
+	
+	/**
+	 * Voids the given queue entries with a single bulk update, skipping any that are already voided.
+	 * Any pending changes in the session are flushed first, and any instances of these entries in the
+	 * session are evicted afterwards, as they no longer reflect the database.
+	 *
+	 * @param queueEntryIds the ids of the queue entries to void
+	 * @param voidedBy the user voiding the queue entries
+	 * @param dateVoided the date the queue entries are voided
+	 * @param voidReason the reason for voiding the queue entries
+	 * @return the number of queue entries that were voided
+	 */
+	int voidQueueEntries(@NotNull Collection<Integer> queueEntryIds, User voidedBy, @NotNull Date dateVoided,
+	        String voidReason);
+	
+	/**
+	 * @param queueEntry the queue entry to check
+	 * @return the queue that the given queue entry is in in the database, which differs from its queue
+	 *         if it is being moved to another queue, or null if it has not been saved
+	 */
+	Queue getPersistedQueue(@NotNull QueueEntry queueEntry);
+	
+	/**
+	 * Unlinks the queue entries that were transitioned from the given queue entry from it with a single
+	 * bulk update, so that it can be deleted. Any pending changes in the session are flushed first, and
+	 * any instances of the unlinked entries in the session are evicted afterwards, as they no longer
+	 * reflect the database.
+	 *
+	 * @param queueEntry the queue entry to unlink the next queue entries from
+	 * @return the number of queue entries that were unlinked
+	 */
+	int unlinkNextQueueEntries(@NotNull QueueEntry queueEntry);
+	
+	/**
+	 * Flushes the current session to ensure pending changes are persisted to the database. Queue
+	 * entries are updated only if their version has not changed since they were loaded.
+	 *
+	 * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if a queue entry being
+	 *             updated has been modified by another transaction since it was loaded
 	 */
 	void flushSession();
 	
 	/**
-	 * Updates the queue entry only if it hasn't been modified since it was loaded. This provides
-	 * optimistic locking to prevent concurrent modifications.
+	 * Sets the number of statements that are sent to the database together when the current session is
+	 * flushed
 	 *
-	 * @param queueEntry the queue entry to update
-	 * @param expectedDateChanged the dateChanged value that was present when the entry was loaded
-	 * @return true if the update succeeded, false if the entry was modified by another transaction
+	 * @param batchSize the JDBC batch size, or null to use the configured default
+	 */
+	void setJdbcBatchSize(Integer batchSize);
+	
+	/**
+	 * @return the number of statements that are sent to the database together when the current session
+	 *         is flushed, or null if the configured default is used
 	 */
-	boolean updateIfUnmodified(QueueEntry queueEntry, Date expectedDateChanged);
+	Integer getJdbcBatchSize();
 }
@@ -9,11 +9,30 @@
  */
 package org.openmrs.module.queue.api.dao.impl;
 
+import javax.validation.constraints.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+import org.apache.commons.lang3.BooleanUtils;
 import org.hibernate.Criteria;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.transform.Transformers;
+import org.openmrs.Concept;
+import org.openmrs.Location;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.Retireable;
 import org.openmrs.module.queue.api.dao.QueueDao;
+import org.openmrs.module.queue.api.dao.impl.QueueMetadataCache.QueueMetadata;
 import org.openmrs.module.queue.api.search.QueueSearchCriteria;
 import org.openmrs.module.queue.model.Queue;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -21,16 +40,130 @@ import org.springframework.beans.factory.annotation.Qualifier;
 @SuppressWarnings("unchecked")
 public class QueueDaoImpl extends AbstractBaseQueueDaoImpl<Queue> implements QueueDao {
 	
+	private final QueueMetadataCache metadataCache = new QueueMetadataCache();
+	
 	public QueueDaoImpl(@Qualifier(value = "sessionFactory") SessionFactory sessionFactory) {
 		super(sessionFactory);
 	}
 	
+	@Override
+	public Optional<Queue> get(@NotNull String uuid) {
+		for (QueueMetadata queue : getQueueMetadata()) {
+			if (queue.getUuid().equals(uuid)) {
+				return loadQueues(Collections.singletonList(queue), false).stream().findFirst();
+			}
+		}
+		// The queue may have been created since the cache was loaded
+		return super.get(uuid);
+	}
+	
+	@Override
+	public List<Queue> findAll(boolean includeVoided) {
+		return loadQueues(getQueueMetadata(), includeVoided);
+	}
+	
 	@Override
 	public List<Queue> getQueues(QueueSearchCriteria searchCriteria) {
-		Criteria c = getCurrentSession().createCriteria(Queue.class, "q");
-		includeVoidedObjects(c, searchCriteria.isIncludeRetired());
-		limitByCollectionProperty(c, "q.location", searchCriteria.getLocations());
-		limitByCollectionProperty(c, "q.service", searchCriteria.getServices());
+		Set<Integer> locationIds = getIds(searchCriteria.getLocations(), Location::getLocationId);
+		Set<Integer> serviceIds = getIds(searchCriteria.getServices(), Concept::getConceptId);
+		List<QueueMetadata> queues = filterQueueMetadata(
+		    q -> (locationIds == null || locationIds.contains(q.getLocationId()))
+		            && (serviceIds == null || serviceIds.contains(q.getServiceId())));
+		return loadQueues(queues, searchCriteria.isIncludeRetired());
+	}
+	
+	@Override
+	public Queue createOrUpdate(Queue queue) {
+		metadataCache.invalidate();
+		return super.createOrUpdate(queue);
+	}
+	
+	@Override
+	public void delete(Queue queue) {
+		metadataCache.invalidate();
+		super.delete(queue);
+	}
+	
+	@Override
+	public <T extends OpenmrsObject> List<T> getObjectsByUuids(Class<T> type, Collection<String> uuids,
+	        boolean includeRetired) {
+		if (uuids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		if (Queue.class.equals(type)) {
+			Set<String> uuidSet = new HashSet<>(uuids);
+			return (List<T>) loadQueues(filterQueueMetadata(q -> uuidSet.contains(q.getUuid())), includeRetired);
+		}
+		Criteria c = getCurrentSession().createCriteria(type);
+		c.add(Restrictions.in("uuid", uuids));
+		if (!includeRetired && Retireable.class.isAssignableFrom(type)) {
+			c.add(Restrictions.eq("retired", false));
+		}
 		return c.list();
 	}
+	
+	/**
+	 * @return the cached metadata of all queues, loading it with a single query if necessary
+	 */
+	private List<QueueMetadata> getQueueMetadata() {
+		return metadataCache.getAll(() -> {
+			Criteria c = getCurrentSession().createCriteria(Queue.class, "q");
+			c.createAlias("q.location", "l");
+			c.createAlias("q.service", "s");
+			c.setProjection(Projections.projectionList().add(Projections.property("q.queueId"), "queueId")
+			        .add(Projections.property("q.uuid"), "uuid").add(Projections.property("l.locationId"), "locationId")
+			        .add(Projections.property("s.conceptId"), "serviceId")
+			        .add(Projections.property("q.retired"), "retired"));
+			c.setResultTransformer(Transformers.aliasToBean(QueueMetadata.class));
+			return c.list();
+		});
+	}
+	
+	private List<QueueMetadata> filterQueueMetadata(Predicate<QueueMetadata> predicate) {
+		List<QueueMetadata> ret = new ArrayList<>();
+		for (QueueMetadata queue : getQueueMetadata()) {
+			if (predicate.test(queue)) {
+				ret.add(queue);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Loads the given queues by id, which takes them from the session or the second-level cache where
+	 * possible and otherwise loads them with a single query. Queues that no longer exist, or that have
+	 * been retired since the cache was loaded, are excluded.
+	 */
+	private List<Queue> loadQueues(List<QueueMetadata> queues, boolean includeRetired) {
+		List<Integer> queueIds = new ArrayList<>();
+		for (QueueMetadata queue : queues) {
+			if (includeRetired || BooleanUtils.isNotTrue(queue.getRetired())) {
+				queueIds.add(queue.getQueueId());
+			}
+		}
+		List<Queue> ret = new ArrayList<>();
+		if (queueIds.isEmpty()) {
+			return ret;
+		}
+		for (Queue queue : getCurrentSession().byMultipleIds(Queue.class).multiLoad(queueIds)) {
+			if (queue != null && (includeRetired || BooleanUtils.isNotTrue(queue.getRetired()))) {
+				ret.add(queue);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return the ids of the given objects, or null if the given collection is null
+	 */
+	private <T> Set<Integer> getIds(Collection<T> objects, Function<T, Integer> idGetter) {
+		if (objects == null) {
+			return null;
+		}
+		Set<Integer> ret = new HashSet<>();
+		for (T object : objects) {
+			ret.add(idGetter.apply(object));
+		}
+		return ret;
+	}
 }
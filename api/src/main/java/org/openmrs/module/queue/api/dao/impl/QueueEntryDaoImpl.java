@@ -9,32 +9,88 @@
  */
 package org.openmrs.module.queue.api.dao.impl;
 
+import javax.persistence.OptimisticLockException;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
 
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.FlushMode;
+import org.hibernate.LockMode;
+import org.hibernate.LockOptions;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.Query;
+import org.hibernate.sql.JoinType;
+import org.hibernate.transform.Transformers;
+import org.hibernate.type.LongType;
+import org.hibernate.type.Type;
+import org.openmrs.Concept;
+import org.openmrs.Location;
 import org.openmrs.Patient;
+import org.openmrs.Provider;
+import org.openmrs.User;
 import org.openmrs.module.queue.api.dao.QueueEntryDao;
+import org.openmrs.module.queue.api.search.QueueEntryCursor;
+import org.openmrs.module.queue.api.search.QueueEntryFetchPlan;
+import org.openmrs.module.queue.api.search.QueueEntryReference;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.api.search.QueueEntrySummary;
+import org.openmrs.module.queue.api.search.QueueEntryWaitTimeStatistics;
 import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 @SuppressWarnings("unchecked")
 public class QueueEntryDaoImpl extends AbstractBaseQueueDaoImpl<QueueEntry> implements QueueEntryDao {
 	
+	private static final int WAIT_TIME_FETCH_SIZE = 1000;
+	
+	private static final long MILLIS_PER_MINUTE = 60 * 1000;
+	
+	private static final int OVERLAP_PROBE_SIZE = 2;
+	
+	private static final int FETCH_BATCH_SIZE = 500;
+	
+	/**
+	 * The associations of queue entries joined in the query for them by any fetch plan other than none,
+	 * besides the queue, which is always joined
+	 */
+	private static final String[] FETCHED_ASSOCIATIONS = { "patient", "visit", "status", "priority",
+	        "locationWaitingFor", "providerWaitingFor", "queueComingFrom" };
+	
 	public QueueEntryDaoImpl(@Qualifier("sessionFactory") SessionFactory sessionFactory) {
 		super(sessionFactory);
 	}
@@ -42,10 +98,51 @@ public class QueueEntryDaoImpl extends AbstractBaseQueueDaoImpl<QueueEntry> impl
 	@Override
 	public List<QueueEntry> getQueueEntries(QueueEntrySearchCriteria searchCriteria) {
 		Criteria c = createCriteriaFromSearchCriteria(searchCriteria);
-		c.addOrder(Order.desc("qe.sortWeight"));
-		c.addOrder(Order.asc("qe.startedAt"));
-		c.addOrder(Order.asc("qe.dateCreated"));
-		c.addOrder(Order.asc("qe.queueEntryId"));
+		QueueEntryFetchPlan fetchPlan = searchCriteria.getFetchPlan();
+		if (fetchPlan != null && fetchPlan != QueueEntryFetchPlan.NONE) {
+			for (String association : FETCHED_ASSOCIATIONS) {
+				c.setFetchMode(association, FetchMode.JOIN);
+			}
+		}
+		orderAndLimit(c, searchCriteria);
+		List<QueueEntry> queueEntries = c.list();
+		fetchCollections(queueEntries, fetchPlan);
+		return queueEntries;
+	}
+	
+	@Override
+	public List<QueueEntrySummary> getQueueEntrySummaries(QueueEntrySearchCriteria searchCriteria) {
+		Criteria c = createCriteriaFromSearchCriteria(searchCriteria);
+		c.createAlias("qe.patient", "p");
+		c.createAlias("p.names", "pn", JoinType.LEFT_OUTER_JOIN,
+		    Restrictions.and(Restrictions.eq("pn.preferred", true), Restrictions.eq("pn.voided", false)));
+		c.createAlias("qe.status", "st");
+		c.createAlias("qe.priority", "pr");
+		c.createAlias("qe.visit", "v", JoinType.LEFT_OUTER_JOIN);
+		c.createAlias("qe.locationWaitingFor", "lwf", JoinType.LEFT_OUTER_JOIN);
+		c.createAlias("qe.providerWaitingFor", "pwf", JoinType.LEFT_OUTER_JOIN);
+		c.createAlias("qe.queueComingFrom", "qcf", JoinType.LEFT_OUTER_JOIN);
+		c.setProjection(Projections.projectionList().add(Projections.property("qe.queueEntryId"), "queueEntryId")
+		        .add(Projections.property("qe.uuid"), "uuid").add(Projections.property("q.uuid"), "queueUuid")
+		        .add(Projections.property("p.uuid"), "patientUuid").add(Projections.property("pn.givenName"), "givenName")
+		        .add(Projections.property("pn.middleName"), "middleName")
+		        .add(Projections.property("pn.familyName"), "familyName").add(Projections.property("v.uuid"), "visitUuid")
+		        .add(Projections.property("st.uuid"), "statusUuid").add(Projections.property("pr.uuid"), "priorityUuid")
+		        .add(Projections.property("qe.sortWeight"), "sortWeight")
+		        .add(Projections.property("qe.startedAt"), "startedAt").add(Projections.property("qe.endedAt"), "endedAt")
+		        .add(Projections.property("qe.dateCreated"), "dateCreated")
+		        .add(Projections.property("lwf.uuid"), "locationWaitingForUuid")
+		        .add(Projections.property("pwf.uuid"), "providerWaitingForUuid")
+		        .add(Projections.property("qcf.uuid"), "queueComingFromUuid"));
+		c.setResultTransformer(Transformers.aliasToBean(QueueEntrySummary.class));
+		orderAndLimit(c, searchCriteria);
+		return c.list();
+	}
+	
+	@Override
+	public List<QueueEntry> getQueueEntriesInStartedOrder(QueueEntrySearchCriteria searchCriteria) {
+		Criteria c = createCriteriaFromSearchCriteria(searchCriteria);
+		c.addOrder(Order.asc("qe.startedAt")).addOrder(Order.asc("qe.queueEntryId"));
 		return c.list();
 	}
 	
@@ -56,12 +153,378 @@ public class QueueEntryDaoImpl extends AbstractBaseQueueDaoImpl<QueueEntry> impl
 		return (Long) criteria.uniqueResult();
 	}
 	
+	@Override
+	public QueueEntryWaitTimeStatistics getQueueEntryWaitTimeStatistics(QueueEntrySearchCriteria searchCriteria,
+	        boolean includeWaitTimes) {
+		String waitTimeSql = getWaitTimeSql();
+		if (includeWaitTimes || waitTimeSql == null) {
+			return new QueueEntryWaitTimeStatistics(getWaitTimes(searchCriteria));
+		}
+		Criteria criteria = createCriteriaFromSearchCriteria(searchCriteria);
+		criteria.add(Restrictions.isNotNull("qe.startedAt"));
+		criteria.add(Restrictions.isNotNull("qe.endedAt"));
+		criteria.setProjection(Projections.projectionList().add(Projections.rowCount())
+		        .add(Projections.sqlProjection(
+		            "sum(" + waitTimeSql + ") as total_wait, min(" + waitTimeSql + ") as min_wait, max(" + waitTimeSql
+		                    + ") as max_wait",
+		            new String[] { "total_wait", "min_wait", "max_wait" },
+		            new Type[] { LongType.INSTANCE, LongType.INSTANCE, LongType.INSTANCE })));
+		Object[] row = (Object[]) criteria.uniqueResult();
+		long count = (Long) row[0];
+		return new QueueEntryWaitTimeStatistics((int) count, count == 0 ? 0 : (Long) row[1], (Long) row[2],
+		        (Long) row[3]);
+	}
+	
+	/**
+	 * @return the wait time in minutes of each matching queue entry that has ended, retrieving only the
+	 *         start and end times of the entries
+	 */
+	private long[] getWaitTimes(QueueEntrySearchCriteria searchCriteria) {
+		Criteria criteria = createCriteriaFromSearchCriteria(searchCriteria);
+		criteria.add(Restrictions.isNotNull("qe.startedAt"));
+		criteria.add(Restrictions.isNotNull("qe.endedAt"));
+		criteria.setProjection(
+		    Projections.projectionList().add(Projections.property("qe.startedAt")).add(Projections.property("qe.endedAt")));
+		criteria.setFetchSize(WAIT_TIME_FETCH_SIZE);
+		LongStream.Builder waitTimes = LongStream.builder();
+		ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			while (results.next()) {
+				Date startedAt = (Date) results.get(0);
+				Date endedAt = (Date) results.get(1);
+				waitTimes.add((endedAt.getTime() - startedAt.getTime()) / MILLIS_PER_MINUTE);
+			}
+		}
+		finally {
+			results.close();
+		}
+		return waitTimes.build().toArray();
+	}
+	
+	/**
+	 * There is no portable way to compute the difference between two timestamps in a query, so this
+	 * is only supported for the databases that OpenMRS runs on, and for the database used in tests
+	 *
+	 * @return an SQL expression for the number of whole minutes between the start and end of a queue
+	 *         entry, or null if this is not supported by the dialect in use
+	 */
+	private String getWaitTimeSql() {
+		Dialect dialect = ((SessionFactoryImplementor) getSessionFactory()).getJdbcServices().getDialect();
+		if (dialect instanceof MySQLDialect) {
+			return "timestampdiff(MINUTE, {alias}.started_at, {alias}.ended_at)";
+		}
+		if (dialect instanceof PostgreSQL81Dialect) {
+			return "cast(floor(extract(epoch from ({alias}.ended_at - {alias}.started_at)) / 60) as bigint)";
+		}
+		if (dialect instanceof H2Dialect) {
+			return "cast(floor(datediff('SECOND', {alias}.started_at, {alias}.ended_at) / 60) as bigint)";
+		}
+		return null;
+	}
+	
 	@Override
 	public List<QueueEntry> getOverlappingQueueEntries(QueueEntrySearchCriteria searchCriteria) {
 		Session session = getSessionFactory().getCurrentSession();
 		CriteriaBuilder cb = session.getCriteriaBuilder();
 		CriteriaQuery<QueueEntry> query = cb.createQuery(QueueEntry.class);
 		Root<QueueEntry> root = query.from(QueueEntry.class);
+		List<Predicate> predicates = getOverlappingPredicates(cb, root, searchCriteria);
+		query.where(cb.and(predicates.toArray(new Predicate[0])));
+		
+		return session.createQuery(query).list();
+	}
+	
+	@Override
+	public boolean hasOverlappingQueueEntries(QueueEntrySearchCriteria searchCriteria,
+	        Collection<Integer> excludedQueueEntryIds) {
+		Session session = getSessionFactory().getCurrentSession();
+		CriteriaBuilder cb = session.getCriteriaBuilder();
+		excludedQueueEntryIds = new HashSet<>(excludedQueueEntryIds);
+		while (true) {
+			CriteriaQuery<Integer> query = cb.createQuery(Integer.class);
+			Root<QueueEntry> root = query.from(QueueEntry.class);
+			List<Predicate> predicates = getOverlappingPredicates(cb, root, searchCriteria);
+			if (!excludedQueueEntryIds.isEmpty()) {
+				predicates.add(cb.not(root.get("queueEntryId").in(excludedQueueEntryIds)));
+			}
+			query.select(root.<Integer> get("queueEntryId")).where(cb.and(predicates.toArray(new Predicate[0])));
+			List<Integer> queueEntryIds = session.createQuery(query).setMaxResults(OVERLAP_PROBE_SIZE).list();
+			if (queueEntryIds.isEmpty()) {
+				return false;
+			}
+			for (Integer queueEntryId : queueEntryIds) {
+				if (!isVoidedInSession(queueEntryId)) {
+					return true;
+				}
+				excludedQueueEntryIds.add(queueEntryId);
+			}
+		}
+	}
+	
+	@Override
+	public List<QueueEntry> getQueueEntriesByUuids(Collection<String> uuids) {
+		if (uuids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Criteria c = getCurrentSession().createCriteria(QueueEntry.class, "qe");
+		c.add(Restrictions.in("qe.uuid", uuids));
+		return c.list();
+	}
+	
+	@Override
+	public List<QueueEntry> getQueueEntriesForUpdate(Collection<QueueEntry> queueEntries) {
+		if (queueEntries.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Session session = getCurrentSession();
+		List<Integer> queueEntryIds = new ArrayList<>();
+		for (QueueEntry queueEntry : queueEntries) {
+			if (session.contains(queueEntry)) {
+				session.evict(queueEntry);
+			}
+			queueEntryIds.add(queueEntry.getQueueEntryId());
+		}
+		// Only the ids are selected under the lock, so that it does not extend to the rows of eagerly fetched
+		// associations, and the locked entries are then loaded without it
+		Query<Integer> query = session.createQuery(
+		    "select qe.queueEntryId from QueueEntry qe where qe.queueEntryId in (:queueEntryIds)", Integer.class);
+		query.setParameterList("queueEntryIds", queueEntryIds);
+		query.setLockOptions(
+		    new LockOptions(LockMode.PESSIMISTIC_WRITE).setAliasSpecificLockMode("qe", LockMode.PESSIMISTIC_WRITE));
+		List<Integer> lockedQueueEntryIds = query.list();
+		if (lockedQueueEntryIds.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Criteria c = session.createCriteria(QueueEntry.class, "qe");
+		c.add(Restrictions.in("qe.queueEntryId", lockedQueueEntryIds));
+		return c.list();
+	}
+	
+	@Override
+	public List<QueueEntry> getPreviousQueueEntryCandidates(Collection<QueueEntry> queueEntries) {
+		Set<Patient> patients = new HashSet<>();
+		Set<Queue> queuesComingFrom = new HashSet<>();
+		Set<Date> startedAts = new HashSet<>();
+		for (QueueEntry queueEntry : queueEntries) {
+			if (queueEntry.getQueueComingFrom() != null && queueEntry.getStartedAt() != null) {
+				patients.add(queueEntry.getPatient());
+				queuesComingFrom.add(queueEntry.getQueueComingFrom());
+				startedAts.add(queueEntry.getStartedAt());
+			}
+		}
+		if (patients.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Criteria c = getCurrentSession().createCriteria(QueueEntry.class, "qe");
+		includeVoidedObjects(c, false);
+		c.add(Restrictions.in("qe.patient", patients));
+		c.add(Restrictions.in("qe.queue", queuesComingFrom));
+		c.add(Restrictions.in("qe.endedAt", startedAts));
+		return c.list();
+	}
+	
+	@Override
+	public QueueEntry claimNextQueueEntry(Queue queue, Concept status, Provider provider) {
+		// Only the id is selected, so that the lock does not extend to the rows of eagerly fetched associations
+		StringBuilder hql = new StringBuilder();
+		hql.append("select qe.queueEntryId from QueueEntry qe ");
+		hql.append("where qe.queue = :queue and qe.status = :status and qe.endedAt is null and qe.voided = false ");
+		if (provider != null) {
+			hql.append("and (qe.providerWaitingFor is null or qe.providerWaitingFor = :provider) ");
+		}
+		hql.append("order by qe.sortWeight desc, qe.startedAt asc, qe.dateCreated asc, qe.queueEntryId asc");
+		
+		Query<Integer> query = getCurrentSession().createQuery(hql.toString(), Integer.class);
+		query.setParameter("queue", queue);
+		query.setParameter("status", status);
+		if (provider != null) {
+			query.setParameter("provider", provider);
+		}
+		query.setLockOptions(new LockOptions(LockMode.UPGRADE_SKIPLOCKED).setAliasSpecificLockMode("qe",
+		    LockMode.UPGRADE_SKIPLOCKED));
+		query.setMaxResults(1);
+		List<Integer> queueEntryIds = query.list();
+		return queueEntryIds.isEmpty() ? null : getCurrentSession().get(QueueEntry.class, queueEntryIds.get(0));
+	}
+	
+	@Override
+	public Integer incrementTicketSequence(Queue queue, Location location, Date day) {
+		String where = " where s.queue = :queue and s.location = :location and s.sequenceDate = :day";
+		int rowsUpdated = getCurrentSession()
+		        .createQuery("update QueueTicketSequence s set s.lastNumber = s.lastNumber + 1" + where)
+		        .setParameter("queue", queue).setParameter("location", location).setParameter("day", day)
+		        .executeUpdate();
+		if (rowsUpdated == 0) {
+			return null;
+		}
+		// The sequence is locked by the update, so the number read is the one this transaction incremented it to
+		return getCurrentSession().createQuery("select s.lastNumber from QueueTicketSequence s" + where, Integer.class)
+		        .setParameter("queue", queue).setParameter("location", location).setParameter("day", day)
+		        .uniqueResult();
+	}
+	
+	@Override
+	public boolean createTicketSequence(Queue queue, Location location, Date day, int number) {
+		String sql = "insert into queue_ticket_sequence (queue_id, location_id, sequence_date, last_number) "
+		        + "values (?, ?, ?, ?)";
+		return getCurrentSession().doReturningWork(connection -> {
+			// A concurrent insert of the same sequence violates its unique constraint, which is rolled back to
+			// the savepoint so that the rest of the transaction can continue. Any other error is rethrown.
+			Savepoint savepoint = connection.setSavepoint();
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				statement.setInt(1, queue.getQueueId());
+				statement.setInt(2, location.getLocationId());
+				statement.setDate(3, new java.sql.Date(day.getTime()));
+				statement.setInt(4, number);
+				statement.executeUpdate();
+			}
+			catch (SQLException e) {
+				connection.rollback(savepoint);
+				if (isIntegrityConstraintViolation(e)) {
+					return false;
+				}
+				throw e;
+			}
+			connection.releaseSavepoint(savepoint);
+			return true;
+		});
+	}
+	
+	@Override
+	public List<QueueEntryReference> getQueueEntryReferences(QueueEntrySearchCriteria searchCriteria) {
+		return createQueueEntryReferenceCriteria(searchCriteria).list();
+	}
+	
+	@Override
+	public List<QueueEntryReference> getQueueEntryReferences(QueueEntrySearchCriteria searchCriteria,
+	        Integer afterQueueEntryId, int maxResults) {
+		Criteria c = createQueueEntryReferenceCriteria(searchCriteria);
+		if (afterQueueEntryId != null) {
+			c.add(Restrictions.gt("qe.queueEntryId", afterQueueEntryId));
+		}
+		c.setMaxResults(maxResults);
+		return c.list();
+	}
+	
+	private Criteria createQueueEntryReferenceCriteria(QueueEntrySearchCriteria searchCriteria) {
+		Criteria c = createCriteriaFromSearchCriteria(searchCriteria);
+		c.setProjection(Projections.projectionList().add(Projections.property("qe.queueEntryId"), "queueEntryId")
+		        .add(Projections.property("qe.uuid"), "queueEntryUuid").add(Projections.property("q.queueId"), "queueId")
+		        .add(Projections.property("q.uuid"), "queueUuid"));
+		c.setResultTransformer(Transformers.aliasToBean(QueueEntryReference.class));
+		c.addOrder(Order.asc("qe.queueEntryId"));
+		return c;
+	}
+	
+	@Override
+	public List<QueueEntry> getActiveQueueEntriesWithStoppedVisits(Integer afterQueueEntryId, int maxResults) {
+		Criteria c = getCurrentSession().createCriteria(QueueEntry.class, "qe");
+		c.createAlias("visit", "v");
+		includeVoidedObjects(c, false);
+		c.add(Restrictions.isNull("qe.endedAt"));
+		c.add(Restrictions.isNotNull("v.stopDatetime"));
+		if (afterQueueEntryId != null) {
+			c.add(Restrictions.gt("qe.queueEntryId", afterQueueEntryId));
+		}
+		c.addOrder(Order.asc("qe.queueEntryId"));
+		c.setMaxResults(maxResults);
+		return c.list();
+	}
+	
+	@Override
+	public int endQueueEntries(Collection<Integer> queueEntryIds, Date endedAt, User changedBy) {
+		if (queueEntryIds.isEmpty()) {
+			return 0;
+		}
+		flushSession();
+		int rowsUpdated = getCurrentSession()
+		        .createQuery("update QueueEntry qe set qe.endedAt = :endedAt, qe.dateChanged = :dateChanged, "
+		                + "qe.changedBy = :changedBy, qe.version = qe.version + 1 "
+		                + "where qe.queueEntryId in (:ids) and qe.endedAt is null")
+		        .setParameter("endedAt", endedAt).setParameter("dateChanged", new Date())
+		        .setParameter("changedBy", changedBy).setParameterList("ids", queueEntryIds).executeUpdate();
+		evictQueueEntries(queueEntryIds);
+		return rowsUpdated;
+	}
+	
+	@Override
+	public int voidQueueEntries(Collection<Integer> queueEntryIds, User voidedBy, Date dateVoided, String voidReason) {
+		if (queueEntryIds.isEmpty()) {
+			return 0;
+		}
+		flushSession();
+		int rowsUpdated = getCurrentSession()
+		        .createQuery("update QueueEntry qe set qe.voided = true, qe.voidedBy = :voidedBy, "
+		                + "qe.dateVoided = :dateVoided, qe.voidReason = :voidReason, qe.version = qe.version + 1 "
+		                + "where qe.queueEntryId in (:ids) and qe.voided = false")
+		        .setParameter("voidedBy", voidedBy).setParameter("dateVoided", dateVoided)
+		        .setParameter("voidReason", voidReason).setParameterList("ids", queueEntryIds).executeUpdate();
+		evictQueueEntries(queueEntryIds);
+		return rowsUpdated;
+	}
+	
+	@Override
+	public Queue getPersistedQueue(QueueEntry queueEntry) {
+		if (queueEntry.getQueueEntryId() == null) {
+			return null;
+		}
+		// The queue an entry in the session was loaded with is available without a query
+		SessionImplementor session = getCurrentSession().unwrap(SessionImplementor.class);
+		EntityEntry entityEntry = session.getPersistenceContext().getEntry(queueEntry);
+		if (entityEntry != null && entityEntry.getLoadedState() != null) {
+			return (Queue) entityEntry.getLoadedValue("queue");
+		}
+		// Otherwise the entry is read without flushing, so that a pending change of its queue is not seen
+		return getCurrentSession()
+		        .createQuery("select qe.queue from QueueEntry qe where qe.queueEntryId = :queueEntryId", Queue.class)
+		        .setParameter("queueEntryId", queueEntry.getQueueEntryId()).setHibernateFlushMode(FlushMode.MANUAL)
+		        .uniqueResult();
+	}
+	
+	@Override
+	public int unlinkNextQueueEntries(QueueEntry queueEntry) {
+		flushSession();
+		List<Integer> queueEntryIds = getCurrentSession()
+		        .createQuery("select qe.queueEntryId from QueueEntry qe where qe.previousQueueEntry = :queueEntry",
+		            Integer.class)
+		        .setParameter("queueEntry", queueEntry).list();
+		if (queueEntryIds.isEmpty()) {
+			return 0;
+		}
+		int rowsUpdated = getCurrentSession()
+		        .createQuery("update QueueEntry qe set qe.previousQueueEntry = null, qe.version = qe.version + 1 "
+		                + "where qe.queueEntryId in (:ids)")
+		        .setParameterList("ids", queueEntryIds).executeUpdate();
+		evictQueueEntries(queueEntryIds);
+		return rowsUpdated;
+	}
+	
+	@Override
+	public void flushSession() {
+		try {
+			getSessionFactory().getCurrentSession().flush();
+		}
+		catch (StaleStateException | OptimisticLockException e) {
+			throw new ObjectOptimisticLockingFailureException("A queue entry was modified by another transaction", e);
+		}
+	}
+	
+	@Override
+	public void setJdbcBatchSize(Integer batchSize) {
+		getCurrentSession().setJdbcBatchSize(batchSize);
+	}
+	
+	@Override
+	public Integer getJdbcBatchSize() {
+		return getCurrentSession().getJdbcBatchSize();
+	}
+	
+	/**
+	 * @return the predicates limiting to the non-voided queue entries for the patient and queues of the
+	 *         given criteria that overlap with the period from its startedOn to its endedOn
+	 */
+	private List<Predicate> getOverlappingPredicates(CriteriaBuilder cb, Root<QueueEntry> root,
+	        QueueEntrySearchCriteria searchCriteria) {
 		List<Predicate> predicates = new ArrayList<>();
 		
 		predicates.add(cb.equal(root.get("voided"), false));
@@ -92,53 +555,132 @@ public class QueueEntryDaoImpl extends AbstractBaseQueueDaoImpl<QueueEntry> impl
 			predicates.add(cb.lessThan(root.get("startedAt"), endedAt));
 		}
 		
-		query.where(cb.and(predicates.toArray(new Predicate[0])));
-		
-		return session.createQuery(query).list();
+		return predicates;
 	}
 	
-	@Override
-	public void flushSession() {
-		getSessionFactory().getCurrentSession().flush();
+	/**
+	 * @return whether an instance of the given queue entry in the session has been voided, as cascaded
+	 *         voids (e.g. voiding a patient) may not have been flushed to the database yet
+	 */
+	private boolean isVoidedInSession(Integer queueEntryId) {
+		SessionImplementor session = getCurrentSession().unwrap(SessionImplementor.class);
+		EntityPersister persister = session.getFactory().getMetamodel().entityPersister(QueueEntry.class);
+		Object queueEntry = session.getPersistenceContext().getEntity(session.generateEntityKey(queueEntryId, persister));
+		return queueEntry instanceof QueueEntry && ((QueueEntry) queueEntry).getVoided();
 	}
 	
-	@Override
-	public boolean updateIfUnmodified(QueueEntry queueEntry, Date expectedDateChanged) {
-		Session session = getSessionFactory().getCurrentSession();
-		
-		// This path issues a direct JPQL UPDATE and bypasses QueueEntryValidator; enforce the
-		// strict-positive-duration invariant here so the DB never ends up with ended_at <= started_at.
-		Date endedAt = queueEntry.getEndedAt();
-		Date startedAt = queueEntry.getStartedAt();
-		if (endedAt != null && startedAt != null && !endedAt.after(startedAt)) {
-			throw new IllegalArgumentException(
-			        "Queue entry endedAt (" + endedAt + ") must be after startedAt (" + startedAt + ")");
+	/**
+	 * @return whether the given exception is a violation of an integrity constraint, such as a unique
+	 *         constraint, which is reported with an SQL state of class 23
+	 */
+	static boolean isIntegrityConstraintViolation(SQLException e) {
+		return e instanceof SQLIntegrityConstraintViolationException
+		        || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+	}
+	
+	/**
+	 * Evicts any instances of the given queue entries from the session, after they have been changed by
+	 * a bulk update
+	 */
+	private void evictQueueEntries(Collection<Integer> queueEntryIds) {
+		Session session = getCurrentSession();
+		Set<Integer> ids = new HashSet<>(queueEntryIds);
+		for (Object key : new ArrayList<Object>(session.getStatistics().getEntityKeys())) {
+			EntityKey entityKey = (EntityKey) key;
+			if (QueueEntry.class.getName().equals(entityKey.getEntityName()) && ids.contains(entityKey.getIdentifier())) {
+				session.evict(session.get(QueueEntry.class, entityKey.getIdentifier()));
+			}
 		}
-		
-		// Evict the entity to prevent Hibernate from auto-flushing changes
-		session.evict(queueEntry);
-		
-		// Build conditional update query - only succeeds if dateChanged matches expected value
-		StringBuilder jpql = new StringBuilder();
-		jpql.append("UPDATE QueueEntry qe SET ");
-		jpql.append("qe.endedAt = :endedAt ");
-		jpql.append("WHERE qe.queueEntryId = :id ");
-		
-		if (expectedDateChanged == null) {
-			jpql.append("AND qe.dateChanged IS NULL");
-		} else {
-			jpql.append("AND qe.dateChanged = :expectedDateChanged");
+	}
+	
+	/**
+	 * Loads the collections of the patients, statuses and priorities of the given queue entries that are
+	 * needed by the given fetch plan, with one query for each collection
+	 */
+	private void fetchCollections(List<QueueEntry> queueEntries, QueueEntryFetchPlan fetchPlan) {
+		if (fetchPlan == null || fetchPlan == QueueEntryFetchPlan.NONE || queueEntries.isEmpty()) {
+			return;
 		}
-		
-		javax.persistence.Query query = session.createQuery(jpql.toString());
-		query.setParameter("endedAt", endedAt);
-		query.setParameter("id", queueEntry.getQueueEntryId());
-		if (expectedDateChanged != null) {
-			query.setParameter("expectedDateChanged", expectedDateChanged);
+		Set<Patient> patients = new LinkedHashSet<>();
+		Set<Concept> concepts = new LinkedHashSet<>();
+		for (QueueEntry queueEntry : queueEntries) {
+			addIfNotNull(patients, queueEntry.getPatient());
+			addIfNotNull(concepts, queueEntry.getStatus());
+			addIfNotNull(concepts, queueEntry.getPriority());
 		}
-		
-		int rowsUpdated = query.executeUpdate();
-		return rowsUpdated > 0;
+		fetchCollection(Patient.class, "names", patients);
+		fetchCollection(Patient.class, "identifiers", patients);
+		fetchCollection(Concept.class, "names", concepts);
+		if (fetchPlan == QueueEntryFetchPlan.FULL) {
+			fetchCollection(Patient.class, "addresses", patients);
+			fetchCollection(Patient.class, "attributes", patients);
+		}
+	}
+	
+	/**
+	 * Initializes the given collection of each of the given entities, which are already in the session,
+	 * by fetching it for all of them at once
+	 */
+	private void fetchCollection(Class<?> entityType, String collection, Collection<?> entities) {
+		List<Object> batch = new ArrayList<>(FETCH_BATCH_SIZE);
+		for (Object entity : entities) {
+			batch.add(entity);
+			if (batch.size() == FETCH_BATCH_SIZE) {
+				fetchCollectionBatch(entityType, collection, batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			fetchCollectionBatch(entityType, collection, batch);
+		}
+	}
+	
+	private void fetchCollectionBatch(Class<?> entityType, String collection, List<Object> entities) {
+		String hql = "select distinct e from " + entityType.getName() + " e left join fetch e." + collection
+		        + " where e in (:entities)";
+		getCurrentSession().createQuery(hql).setParameterList("entities", entities).list();
+	}
+	
+	private <T> void addIfNotNull(Set<T> set, T value) {
+		if (value != null) {
+			set.add(value);
+		}
+	}
+	
+	/**
+	 * Orders the given criteria in the standard ordering of queue entries, and limits it to the page of
+	 * entries requested by the given search criteria
+	 */
+	private void orderAndLimit(Criteria c, QueueEntrySearchCriteria searchCriteria) {
+		limitToEntriesAfter(c, searchCriteria.getAfter());
+		c.addOrder(Order.desc("qe.sortWeight"));
+		c.addOrder(Order.asc("qe.startedAt"));
+		c.addOrder(Order.asc("qe.dateCreated"));
+		c.addOrder(Order.asc("qe.queueEntryId"));
+		if (searchCriteria.getStartIndex() != null && searchCriteria.getStartIndex() > 0) {
+			c.setFirstResult(searchCriteria.getStartIndex());
+		}
+		if (searchCriteria.getLimit() != null) {
+			c.setMaxResults(searchCriteria.getLimit());
+		}
+	}
+	
+	/**
+	 * Limits the given criteria to those entries that follow the given cursor, using the same ordering
+	 * as {@link #getQueueEntries(QueueEntrySearchCriteria)}
+	 */
+	private void limitToEntriesAfter(Criteria c, QueueEntryCursor after) {
+		if (after == null) {
+			return;
+		}
+		Criterion afterQueueEntryId = Restrictions.and(Restrictions.eq("qe.dateCreated", after.getDateCreated()),
+		    Restrictions.gt("qe.queueEntryId", after.getQueueEntryId()));
+		Criterion afterDateCreated = Restrictions.or(Restrictions.gt("qe.dateCreated", after.getDateCreated()),
+		    afterQueueEntryId);
+		Criterion afterStartedAt = Restrictions.or(Restrictions.gt("qe.startedAt", after.getStartedAt()),
+		    Restrictions.and(Restrictions.eq("qe.startedAt", after.getStartedAt()), afterDateCreated));
+		c.add(Restrictions.or(Restrictions.lt("qe.sortWeight", after.getSortWeight()),
+		    Restrictions.and(Restrictions.eq("qe.sortWeight", after.getSortWeight()), afterStartedAt)));
 	}
 	
 	/**
@@ -0,0 +1,132 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.dao.impl;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Caches the properties by which queues are looked up: their ids, uuids, locations, services and
+ * whether they are retired. Queues rarely change, yet are looked up on nearly every request, so these
+ * lookups are answered from this cache and only the matching queues are then loaded by id, which is
+ * served from the session or the second-level cache. Entities are never cached here, so a queue is
+ * never shared between sessions. The cache is cleared whenever a queue is saved or deleted, both
+ * immediately and once the transaction completes, and is reloaded after at most
+ * {@link #MAX_AGE_MILLIS} to pick up changes made in other ways.
+ */
+public class QueueMetadataCache {
+	
+	public static final long MAX_AGE_MILLIS = 60 * 1000;
+	
+	private final AtomicReference<CachedQueues> cachedQueues = new AtomicReference<>();
+	
+	private final AtomicLong generation = new AtomicLong();
+	
+	/**
+	 * @param loader used to retrieve the metadata of all queues if there is no current cached metadata
+	 * @return the metadata of all queues, including retired queues
+	 */
+	public List<QueueMetadata> getAll(Supplier<List<QueueMetadata>> loader) {
+		long now = System.currentTimeMillis();
+		CachedQueues cached = cachedQueues.get();
+		if (cached == null || now - cached.createdAt > MAX_AGE_MILLIS) {
+			long loadedGeneration = generation.get();
+			cached = new CachedQueues(now, Collections.unmodifiableList(loader.get()));
+			// Discard what was loaded if a queue was changed while it was loading
+			if (generation.get() == loadedGeneration) {
+				cachedQueues.set(cached);
+				discardIfRolledBack(cached);
+			}
+		}
+		return cached.queues;
+	}
+	
+	/**
+	 * Clears the cache now and, if a transaction is active, again once it completes, so that changes
+	 * are seen as soon as they are committed and rolled back changes are never retained
+	 */
+	public void invalidate() {
+		clear();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					clear();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Metadata loaded in a transaction may include changes made by that transaction, including changes
+	 * not made through the dao, so it is discarded if the transaction does not commit
+	 */
+	private void discardIfRolledBack(CachedQueues cached) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					if (status != TransactionSynchronization.STATUS_COMMITTED) {
+						cachedQueues.compareAndSet(cached, null);
+					}
+				}
+			});
+		}
+	}
+	
+	private void clear() {
+		generation.incrementAndGet();
+		cachedQueues.set(null);
+	}
+	
+	private static class CachedQueues {
+		
+		private final long createdAt;
+		
+		private final List<QueueMetadata> queues;
+		
+		private CachedQueues(long createdAt, List<QueueMetadata> queues) {
+			this.createdAt = createdAt;
+			this.queues = queues;
+		}
+	}
+	
+	/**
+	 * The properties by which a queue is looked up
+	 */
+	@NoArgsConstructor
+	@Data
+	public static class QueueMetadata implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private Integer queueId;
+		
+		private String uuid;
+		
+		private Integer locationId;
+		
+		private Integer serviceId;
+		
+		private Boolean retired;
+	}
+}
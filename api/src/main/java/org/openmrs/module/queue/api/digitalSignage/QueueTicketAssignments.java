@@ -9,8 +9,10 @@
  */
 package org.openmrs.module.queue.api.digitalSignage;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -21,61 +23,89 @@ import org.apache.commons.lang3.StringUtils;
 @Slf4j
 public class QueueTicketAssignments {
 	
+	public static final String STATUS_COMPLETED = "completed";
+	
 	/**
-	 * The object has: service point/room name as key for ease of search and update and object with
-	 * status and ticket number
+	 * The current assignments, which are never modified but replaced as a whole, so that readers such
+	 * as the displays polling for active tickets always get a consistent snapshot without locking, and
+	 * writers never wait for each other or for readers
 	 */
-	private static final Map<String, TicketAssignment> ACTIVE_QUEUE_TICKETS = new HashMap<>();
+	private static final AtomicReference<Snapshot> ACTIVE_QUEUE_TICKETS = new AtomicReference<>(Snapshot.EMPTY);
 	
 	/**
-	 * We want to control access to the ACTIVE_QUEUE_TICKETS so that requests are queued
+	 * Assigns the ticket to the service point, removing it from any service point it was assigned to.
+	 * If the status is completed and the ticket was assigned, it is only removed. Concurrent updates
+	 * are applied one after the other, retrying any update that was made against an older snapshot.
 	 *
-	 * @param servicePointName
-	 * @param ticketNumber
-	 * @param status
+	 * @param servicePointName the service point or room name to assign the ticket to
+	 * @param ticketNumber the ticket number to assign
+	 * @param status the status of the ticket
 	 */
-	synchronized public static void updateTicketAssignment(String servicePointName, String ticketNumber, String status) {
+	public static void updateTicketAssignment(String servicePointName, String ticketNumber, String status) {
 		if (StringUtils.isNotBlank(servicePointName) && StringUtils.isNotBlank(ticketNumber)
 		        && StringUtils.isNotBlank(status)) {
-			
-			/** remove the ticket number from any assignment */
+			ACTIVE_QUEUE_TICKETS.updateAndGet(snapshot -> snapshot.withAssignment(servicePointName, ticketNumber, status));
+		}
+	}
+	
+	/**
+	 * @return an unmodifiable snapshot of the active ticket assignments, with the service point or
+	 *         room name as key
+	 */
+	public static Map<String, TicketAssignment> getActiveTicketAssignments() {
+		return ACTIVE_QUEUE_TICKETS.get().assignmentsByServicePoint;
+	}
+	
+	/**
+	 * The assignments of tickets to service points, along with the service point each ticket is
+	 * assigned to, so that a ticket is found without searching every service point
+	 */
+	private static final class Snapshot {
+		
+		private static final Snapshot EMPTY = new Snapshot(new HashMap<>(), new HashMap<>());
+		
+		private final Map<String, TicketAssignment> assignmentsByServicePoint;
+		
+		private final Map<String, String> servicePointsByTicket;
+		
+		private Snapshot(Map<String, TicketAssignment> assignmentsByServicePoint,
+		        Map<String, String> servicePointsByTicket) {
+			this.assignmentsByServicePoint = Collections.unmodifiableMap(assignmentsByServicePoint);
+			this.servicePointsByTicket = Collections.unmodifiableMap(servicePointsByTicket);
+		}
+		
+		private Snapshot withAssignment(String servicePointName, String ticketNumber, String status) {
+			Map<String, TicketAssignment> assignments = new HashMap<>(assignmentsByServicePoint);
+			Map<String, String> servicePoints = new HashMap<>(servicePointsByTicket);
 			
 			// Remove the ticket number from any assignment
-			for (String key : ACTIVE_QUEUE_TICKETS.keySet()) {
-				TicketAssignment assignment = ACTIVE_QUEUE_TICKETS.get(key);
-				if (assignment.getTicketNumber().equals(ticketNumber)) {
-					ACTIVE_QUEUE_TICKETS.remove(key);
-					if (status.equals("completed")) {
-						return;
-					}
-					break;
+			String currentServicePoint = servicePoints.remove(ticketNumber);
+			if (currentServicePoint != null) {
+				assignments.remove(currentServicePoint);
+				if (STATUS_COMPLETED.equals(status)) {
+					return new Snapshot(assignments, servicePoints);
 				}
 			}
 			
-			/** Assign ticket to a room if the room already exist */
-			// Assign ticket to a room if the room already exists
-			if (ACTIVE_QUEUE_TICKETS.containsKey(servicePointName)) {
-				TicketAssignment tAssignment = ACTIVE_QUEUE_TICKETS.get(servicePointName);
-				tAssignment.setStatus(status);
-				tAssignment.setTicketNumber(ticketNumber);
-				ACTIVE_QUEUE_TICKETS.put(servicePointName, tAssignment);
-			} else {
-				// Else create a new assignment
-				TicketAssignment ticketAssignment = new TicketAssignment(status, ticketNumber);
-				ACTIVE_QUEUE_TICKETS.put(servicePointName, ticketAssignment);
+			// Assign the ticket to the service point, replacing any ticket already assigned to it
+			TicketAssignment replaced = assignments.put(servicePointName, new TicketAssignment(status, ticketNumber));
+			if (replaced != null) {
+				servicePoints.remove(replaced.getTicketNumber());
 			}
+			servicePoints.put(ticketNumber, servicePointName);
+			return new Snapshot(assignments, servicePoints);
 		}
 	}
 	
-	public static Map<String, TicketAssignment> getActiveTicketAssignments() {
-		return new HashMap<>(ACTIVE_QUEUE_TICKETS);
-	}
-	
+	/**
+	 * The ticket assigned to a service point and its status, which is immutable so that it can be
+	 * shared between snapshots
+	 */
 	public static class TicketAssignment {
 		
-		private String status;
+		private final String status;
 		
-		private String ticketNumber;
+		private final String ticketNumber;
 		
 		public TicketAssignment(String status, String ticketNumber) {
 			this.status = status;
@@ -86,16 +116,8 @@ public class QueueTicketAssignments {
 			return status;
 		}
 		
-		public void setStatus(String status) {
-			this.status = status;
-		}
-		
 		public String getTicketNumber() {
 			return ticketNumber;
 		}
-		
-		public void setTicketNumber(String ticketNumber) {
-			this.ticketNumber = ticketNumber;
-		}
 	}
 }
@@ -0,0 +1,193 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.event;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openmrs.module.queue.api.search.QueueEntryReference;
+import org.openmrs.module.queue.model.Queue;
+import org.openmrs.module.queue.model.QueueEntry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tracks changes to queue entries. A version number is maintained for the entries in each queue,
+ * which is incremented whenever an entry in that queue is changed, and a {@link QueueEntryEvent} is
+ * published to registered listeners for each change. Both happen only once the transaction making
+ * the change has completed, so that a reader that retrieves the version before querying the entries
+ * can never associate the version with entries that are older than it, and so that listeners are
+ * never told about changes that are rolled back. Versions and event ids start from the time at which
+ * the tracker was created, so they are not reused across restarts.
+ */
+@Slf4j
+@Component("queue.QueueEntryChangeTracker")
+public class QueueEntryChangeTracker {
+	
+	public static final int MAX_RECENT_EVENTS = 1000;
+	
+	private final long initialVersion = System.currentTimeMillis();
+	
+	private final AtomicLong sequence = new AtomicLong(initialVersion);
+	
+	private final Map<Integer, Long> versions = new ConcurrentHashMap<>();
+	
+	private final Deque<QueueEntryEvent> recentEvents = new ArrayDeque<>();
+	
+	private long lastDiscardedEventId = initialVersion;
+	
+	private final List<Consumer<QueueEntryEvent>> listeners = new CopyOnWriteArrayList<>();
+	
+	/**
+	 * @param queue the queue to check
+	 * @return the current version of the entries in the given queue
+	 */
+	public long getVersion(Queue queue) {
+		if (queue == null || queue.getQueueId() == null) {
+			return initialVersion;
+		}
+		return versions.getOrDefault(queue.getQueueId(), initialVersion);
+	}
+	
+	/**
+	 * Records that the given queue entry has been changed. Once the current transaction completes, the
+	 * version of its queue is incremented and, if the transaction committed, an event is published.
+	 *
+	 * @param queueEntry the queue entry that has been changed
+	 * @param type the type of change
+	 */
+	public void queueEntryChanged(QueueEntry queueEntry, QueueEntryEvent.Type type) {
+		if (queueEntry != null) {
+			queueEntryChanged(QueueEntryReference.of(queueEntry), type);
+		}
+	}
+	
+	/**
+	 * Records that the given queue entry has been changed, as for
+	 * {@link #queueEntryChanged(QueueEntry, QueueEntryEvent.Type)}, and also records the change in the
+	 * given queue that the entry was in before the change, if the entry has been moved out of it
+	 *
+	 * @param queueEntry the queue entry that has been changed
+	 * @param previousQueue the queue that the entry was in before the change, if any
+	 * @param type the type of change
+	 */
+	public void queueEntryChanged(QueueEntry queueEntry, Queue previousQueue, QueueEntryEvent.Type type) {
+		queueEntryChanged(queueEntry, type);
+		if (queueEntry == null || previousQueue == null || previousQueue.getQueueId() == null) {
+			return;
+		}
+		Queue queue = queueEntry.getQueue();
+		if (queue == null || !previousQueue.getQueueId().equals(queue.getQueueId())) {
+			queueEntryChanged(new QueueEntryReference(queueEntry.getQueueEntryId(), queueEntry.getUuid(),
+			        previousQueue.getQueueId(), previousQueue.getUuid()), type);
+		}
+	}
+	
+	/**
+	 * Records that the referenced queue entry has been changed, for changes that are made without
+	 * loading the queue entry
+	 *
+	 * @param queueEntry a reference to the queue entry that has been changed
+	 * @param type the type of change
+	 * @see #queueEntryChanged(QueueEntry, QueueEntryEvent.Type)
+	 */
+	public void queueEntryChanged(QueueEntryReference queueEntry, QueueEntryEvent.Type type) {
+		if (queueEntry == null || queueEntry.getQueueId() == null) {
+			return;
+		}
+		Integer queueId = queueEntry.getQueueId();
+		String queueUuid = queueEntry.getQueueUuid();
+		String queueEntryUuid = queueEntry.getQueueEntryUuid();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					incrementVersion(queueId);
+					if (status == TransactionSynchronization.STATUS_COMMITTED) {
+						publish(type, queueEntryUuid, queueUuid);
+					}
+				}
+			});
+		} else {
+			incrementVersion(queueId);
+			publish(type, queueEntryUuid, queueUuid);
+		}
+	}
+	
+	/**
+	 * @param eventId the id of the last event that has been received
+	 * @return the recent events published after the event with the given id, in the order in which
+	 *         they were published, or null if some of those events are no longer available
+	 */
+	public List<QueueEntryEvent> getEventsAfter(long eventId) {
+		synchronized (recentEvents) {
+			if (eventId < lastDiscardedEventId) {
+				return null;
+			}
+			List<QueueEntryEvent> ret = new ArrayList<>();
+			for (QueueEntryEvent event : recentEvents) {
+				if (event.getId() > eventId) {
+					ret.add(event);
+				}
+			}
+			return ret;
+		}
+	}
+	
+	/**
+	 * @param listener to be notified of each event as it is published. Listeners are notified in the
+	 *            order in which events are published, and so must not block.
+	 */
+	public void addListener(Consumer<QueueEntryEvent> listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * @param listener to no longer be notified of events
+	 */
+	public void removeListener(Consumer<QueueEntryEvent> listener) {
+		listeners.remove(listener);
+	}
+	
+	private void incrementVersion(Integer queueId) {
+		versions.merge(queueId, sequence.incrementAndGet(), Math::max);
+	}
+	
+	private void publish(QueueEntryEvent.Type type, String queueEntryUuid, String queueUuid) {
+		synchronized (recentEvents) {
+			QueueEntryEvent event = new QueueEntryEvent(sequence.incrementAndGet(), type, queueEntryUuid, queueUuid,
+			        new Date());
+			recentEvents.addLast(event);
+			if (recentEvents.size() > MAX_RECENT_EVENTS) {
+				lastDiscardedEventId = recentEvents.removeFirst().getId();
+			}
+			for (Consumer<QueueEntryEvent> listener : listeners) {
+				try {
+					listener.accept(event);
+				}
+				catch (Exception e) {
+					log.warn("Error notifying listener of queue entry event " + event, e);
+				}
+			}
+		}
+	}
+}
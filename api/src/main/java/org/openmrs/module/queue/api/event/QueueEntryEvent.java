@@ -0,0 +1,51 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.event;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Describes a change to a queue entry that has been committed to the database
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class QueueEntryEvent implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public enum Type {
+		CREATED,
+		UPDATED,
+		TRANSITIONED,
+		ENDED,
+		VOIDED,
+		PURGED
+	}
+	
+	/**
+	 * Identifies the event. Events are assigned increasing ids in the order in which they are
+	 * published.
+	 */
+	private final long id;
+	
+	private final Type type;
+	
+	private final String queueEntryUuid;
+	
+	private final String queueUuid;
+	
+	private final Date date;
+}
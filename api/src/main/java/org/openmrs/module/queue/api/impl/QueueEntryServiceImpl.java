@@ -14,19 +14,29 @@ import static org.openmrs.module.queue.QueueModuleConstants.QUEUE_SORT_WEIGHT_GE
 
 import javax.validation.constraints.NotNull;
 
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.openmrs.Concept;
 import org.openmrs.Location;
 import org.openmrs.Patient;
+import org.openmrs.Provider;
+import org.openmrs.User;
 import org.openmrs.Visit;
 import org.openmrs.VisitAttribute;
 import org.openmrs.VisitAttributeType;
@@ -36,18 +46,33 @@ import org.openmrs.api.VisitService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.queue.api.QueueEntryService;
+import org.openmrs.module.queue.api.VisitQueueNumberFormatter;
 import org.openmrs.module.queue.api.dao.QueueEntryDao;
+import org.openmrs.module.queue.api.event.QueueEntryChangeTracker;
+import org.openmrs.module.queue.api.event.QueueEntryEvent;
+import org.openmrs.module.queue.api.search.QueueEntryReference;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.api.search.QueueEntrySummary;
+import org.openmrs.module.queue.api.search.QueueEntryWaitTimeStatistics;
 import org.openmrs.module.queue.api.sort.SortWeightGenerator;
 import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
 import org.openmrs.module.queue.model.QueueEntryTransition;
+import org.openmrs.module.queue.model.QueueEntryTransitionResult;
+import org.openmrs.validator.ValidateUtil;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.BindException;
+import org.springframework.validation.Errors;
+import org.springframework.validation.ObjectError;
 
 @Slf4j
 @Transactional
 public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEntryService {
 	
+	private static final int TRANSITION_BATCH_SIZE = 50;
+	
 	@Setter
 	private QueueEntryDao dao;
 	
@@ -60,6 +85,12 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 	@Setter
 	private SortWeightGenerator sortWeightGenerator = null;
 	
+	@Setter
+	private QueueEntryChangeTracker changeTracker = new QueueEntryChangeTracker();
+	
+	@Setter
+	private VisitQueueNumberFormatter visitQueueNumberFormatter = new VisitQueueNumberFormatter();
+	
 	/**
 	 * @see QueueEntryService#getQueueEntryByUuid(String)
 	 */
@@ -69,6 +100,15 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 		return dao.get(queueEntryUuid);
 	}
 	
+	/**
+	 * @see QueueEntryService#getQueueEntriesByUuids(Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<QueueEntry> getQueueEntriesByUuids(@NotNull Collection<String> uuids) {
+		return dao.getQueueEntriesByUuids(uuids);
+	}
+	
 	/**
 	 * @see QueueEntryService#getQueueEntryById(Integer)
 	 */
@@ -86,6 +126,24 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 		return dao.getOverlappingQueueEntries(criteria);
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public boolean hasOverlappingQueueEntries(@NotNull QueueEntry queueEntry) {
+		QueueEntrySearchCriteria criteria = QueueEntrySearchCriteria.builder()
+		        .queues(Collections.singletonList(queueEntry.getQueue())).patient(queueEntry.getPatient())
+		        .startedOn(queueEntry.getStartedAt()).endedOn(queueEntry.getEndedAt()).build();
+		// The entry being checked, and the entry it was transitioned from, which ends as it starts
+		List<Integer> excludedQueueEntryIds = new ArrayList<>();
+		if (queueEntry.getQueueEntryId() != null) {
+			excludedQueueEntryIds.add(queueEntry.getQueueEntryId());
+		}
+		QueueEntry previousQueueEntry = queueEntry.getPreviousQueueEntry();
+		if (previousQueueEntry != null && previousQueueEntry.getQueueEntryId() != null) {
+			excludedQueueEntryIds.add(previousQueueEntry.getQueueEntryId());
+		}
+		return dao.hasOverlappingQueueEntries(criteria, excludedQueueEntryIds);
+	}
+	
 	/**
 	 * @see QueueEntryService#saveQueueEntry(org.openmrs.module.queue.model.QueueEntry)
 	 */
@@ -93,6 +151,8 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 	public QueueEntry saveQueueEntry(QueueEntry queueEntry) {
 		Double sortWeight = getSortWeightGenerator().generateSortWeight(queueEntry);
 		queueEntry.setSortWeight(sortWeight);
+		// An entry moved to another queue also changes the pages of the queue it was in
+		changeTracker.queueEntryChanged(queueEntry, dao.getPersistedQueue(queueEntry), getChangeType(queueEntry));
 		return dao.createOrUpdate(queueEntry);
 	}
 	
@@ -107,9 +167,10 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 			throw new IllegalArgumentException("Cannot transition a queue entry that has not been saved");
 		}
 		
-		// Reload from database to check current state and guard against concurrent modifications
+		// Check the current state, which is only reloaded if the entry is not already in the session
 		QueueEntry currentState = dao.get(queueEntryToStop.getId())
 		        .orElseThrow(() -> new IllegalArgumentException("Queue entry not found"));
+		checkUnmodified(queueEntryToStop, currentState);
 		if (currentState.getVoided()) {
 			throw new IllegalStateException("Cannot transition a voided queue entry");
 		}
@@ -117,34 +178,123 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 			throw new IllegalStateException("Cannot transition a queue entry that has already ended");
 		}
 		
-		// Capture the dateChanged for optimistic locking
-		Date expectedDateChanged = currentState.getDateChanged();
-		
-		// Round the transition date to whole seconds so the value persisted as the old entry's
-		// ended_at is byte-for-byte identical to the new entry's started_at; the underlying
-		// DATETIME column stores second precision and mismatched rounding would otherwise put the
-		// two timestamps in adjacent seconds and leave gaps in the queue history.
-		Date transitionDate = roundToSecond(queueEntryTransition.getTransitionDate());
-		// Guarantee the entry being ended has a strictly positive duration. When a transition lands
-		// in the same second the entry was created, advance by one second so endedAt > startedAt.
-		Date currentStartedAt = currentState.getStartedAt();
-		if (currentStartedAt != null && !transitionDate.after(currentStartedAt)) {
-			transitionDate = new Date(currentStartedAt.getTime() + 1000L);
-		}
+		Date transitionDate = getTransitionDate(queueEntryTransition, currentState);
 		queueEntryTransition.setTransitionDate(transitionDate);
+		queueEntryToStop.setEndedAt(transitionDate);
 		
 		QueueEntry queueEntryToStart = queueEntryTransition.constructNewQueueEntry();
 		
-		// Use optimistic locking to end the current entry
-		queueEntryToStop.setEndedAt(transitionDate);
-		boolean updated = dao.updateIfUnmodified(queueEntryToStop, expectedDateChanged);
-		if (!updated) {
-			throw new IllegalStateException("Queue entry was modified by another transaction");
+		// The entry is ended by a versioned update, which fails if another transaction has changed it
+		currentState.setEndedAt(transitionDate);
+		changeTracker.queueEntryChanged(currentState, QueueEntryEvent.Type.TRANSITIONED);
+		dao.flushSession();
+		
+		return getProxiedQueueEntryService().saveQueueEntry(queueEntryToStart);
+	}
+	
+	/**
+	 * @see QueueEntryService#callNext(Queue, Concept, Concept, Provider)
+	 */
+	@Override
+	public QueueEntry callNext(@NotNull Queue queue, @NotNull Concept waitingStatus, @NotNull Concept newStatus,
+	        Provider provider) {
+		QueueEntry queueEntry = dao.claimNextQueueEntry(queue, waitingStatus, provider);
+		if (queueEntry == null) {
+			return null;
+		}
+		QueueEntryTransition transition = new QueueEntryTransition();
+		transition.setQueueEntryToTransition(queueEntry);
+		transition.setTransitionDate(new Date());
+		transition.setNewStatus(newStatus);
+		transition.setNewProviderWaitingFor(provider);
+		return getProxiedQueueEntryService().transitionQueueEntry(transition);
+	}
+	
+	/**
+	 * @see QueueEntryService#transitionQueueEntries(List)
+	 */
+	@Override
+	public List<QueueEntryTransitionResult> transitionQueueEntries(@NotNull List<QueueEntryTransition> transitions) {
+		List<QueueEntryTransitionResult> results = new ArrayList<>();
+		List<QueueEntry> queueEntriesToStop = new ArrayList<>();
+		for (QueueEntryTransition transition : transitions) {
+			results.add(new QueueEntryTransitionResult(transition));
+			QueueEntry queueEntryToStop = transition.getQueueEntryToTransition();
+			if (queueEntryToStop != null && queueEntryToStop.getId() != null) {
+				queueEntriesToStop.add(queueEntryToStop);
+			}
+		}
+		// The entries are flushed in batches, restoring the batch size of the session afterwards
+		Integer jdbcBatchSize = dao.getJdbcBatchSize();
+		dao.setJdbcBatchSize(TRANSITION_BATCH_SIZE);
+		try {
+			transitionQueueEntries(results, queueEntriesToStop);
+		}
+		finally {
+			dao.setJdbcBatchSize(jdbcBatchSize);
+		}
+		return results;
+	}
+	
+	/**
+	 * Performs the transitions of the given results, setting the outcome of each
+	 */
+	private void transitionQueueEntries(List<QueueEntryTransitionResult> results, List<QueueEntry> queueEntriesToStop) {
+		// Reload and lock all entries at once to check current state and guard against concurrent modifications
+		Map<Integer, QueueEntry> currentStates = new HashMap<>();
+		for (QueueEntry currentState : dao.getQueueEntriesForUpdate(queueEntriesToStop)) {
+			currentStates.put(currentState.getId(), currentState);
+		}
+		
+		// Check every transition before anything is ended, validating each new entry against the entries in
+		// the database and against the other new entries in the batch
+		List<QueueEntryTransitionResult> validResults = new ArrayList<>();
+		Set<Integer> queueEntryIdsToStop = new HashSet<>();
+		Set<String> newPatientQueues = new HashSet<>();
+		for (QueueEntryTransitionResult result : results) {
+			QueueEntryTransition transition = result.getTransition();
+			QueueEntry queueEntryToStop = transition.getQueueEntryToTransition();
+			QueueEntry currentState = queueEntryToStop == null || queueEntryToStop.getId() == null ? null
+			        : currentStates.get(queueEntryToStop.getId());
+			if (currentState == null) {
+				result.setError("Cannot transition a queue entry that has not been saved");
+			} else if (currentState.getVoided()) {
+				result.setError("Cannot transition a voided queue entry");
+			} else if (currentState.getEndedAt() != null || !queueEntryIdsToStop.add(currentState.getId())) {
+				result.setError("Cannot transition a queue entry that has already ended");
+			} else {
+				transition.setQueueEntryToTransition(currentState);
+				transition.setTransitionDate(getTransitionDate(transition, currentState));
+				QueueEntry queueEntryToStart = transition.constructNewQueueEntry();
+				Errors errors = new BindException(queueEntryToStart, "queueEntry");
+				ValidateUtil.validate(queueEntryToStart, errors);
+				String patientQueue = queueEntryToStart.getPatient().getPatientId() + ":"
+				        + queueEntryToStart.getQueue().getQueueId();
+				if (errors.hasErrors()) {
+					result.setError(getErrorMessage(errors));
+				} else if (!newPatientQueues.add(patientQueue)) {
+					result.setError("This patient is already in this queue");
+				} else {
+					result.setNewQueueEntry(queueEntryToStart);
+					validResults.add(result);
+				}
+			}
 		}
 		
+		// Only the entries that are transitioned are ended, and these are flushed together before the new
+		// entries are saved
+		for (QueueEntryTransitionResult result : validResults) {
+			QueueEntryTransition transition = result.getTransition();
+			QueueEntry queueEntryToStop = transition.getQueueEntryToTransition();
+			queueEntryToStop.setEndedAt(transition.getTransitionDate());
+			changeTracker.queueEntryChanged(queueEntryToStop, QueueEntryEvent.Type.TRANSITIONED);
+		}
 		dao.flushSession();
 		
-		return getProxiedQueueEntryService().saveQueueEntry(queueEntryToStart);
+		for (QueueEntryTransitionResult result : validResults) {
+			result.setNewQueueEntry(getProxiedQueueEntryService().saveQueueEntry(result.getNewQueueEntry()));
+		}
+		dao.flushSession();
 	}
 	
 	/**
@@ -158,9 +308,10 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 			throw new IllegalArgumentException("Cannot undo transition on a queue entry that has not been saved");
 		}
 		
-		// Reload from database to check current state and guard against concurrent modifications
+		// Check the current state, which is only reloaded if the entry is not already in the session
 		QueueEntry currentState = dao.get(queueEntry.getId())
 		        .orElseThrow(() -> new IllegalArgumentException("Queue entry not found"));
+		checkUnmodified(queueEntry, currentState);
 		if (currentState.getVoided()) {
 			throw new IllegalStateException("Cannot undo transition on a voided queue entry");
 		}
@@ -173,20 +324,13 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 			throw new IllegalArgumentException("Specified queue entry does not have a previous queue entry");
 		}
 		
-		// Capture the dateChanged for optimistic locking before re-opening the previous entry
-		Date expectedDateChanged = prevQueueEntry.getDateChanged();
-		
-		// Re-open the previous entry using optimistic locking
+		// The previous entry is re-opened by a versioned update, which fails if another transaction has changed it
 		prevQueueEntry.setEndedAt(null);
-		boolean updated = dao.updateIfUnmodified(prevQueueEntry, expectedDateChanged);
-		if (!updated) {
-			throw new IllegalStateException("Previous queue entry was modified by another transaction");
-		}
-		
+		changeTracker.queueEntryChanged(prevQueueEntry, QueueEntryEvent.Type.UPDATED);
 		getProxiedQueueEntryService().voidQueueEntry(queueEntry, "Transition undone");
+		dao.flushSession();
 		
-		// Reload the previous entry to return the updated state
-		return dao.get(prevQueueEntry.getId()).orElse(prevQueueEntry);
+		return prevQueueEntry;
 	}
 	
 	/**
@@ -198,6 +342,7 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 		queueEntry.setVoidReason(voidReason);
 		queueEntry.setDateVoided(new Date());
 		queueEntry.setVoidedBy(Context.getAuthenticatedUser());
+		changeTracker.queueEntryChanged(queueEntry, dao.getPersistedQueue(queueEntry), QueueEntryEvent.Type.VOIDED);
 		dao.createOrUpdate(queueEntry);
 	}
 	
@@ -206,6 +351,9 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 	 */
 	@Override
 	public void purgeQueueEntry(QueueEntry queueEntry) throws APIException {
+		changeTracker.queueEntryChanged(queueEntry, dao.getPersistedQueue(queueEntry), QueueEntryEvent.Type.PURGED);
+		// Entries transitioned from this one reference it, so they are unlinked before it is deleted
+		dao.unlinkNextQueueEntries(queueEntry);
 		dao.delete(queueEntry);
 	}
 	
@@ -215,31 +363,83 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 		return dao.getQueueEntries(searchCriteria);
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public List<QueueEntry> getQueueEntryJourney(@NotNull Visit visit) {
+		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
+		criteria.setVisit(visit);
+		return dao.getQueueEntriesInStartedOrder(criteria);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<QueueEntry> getQueueEntryJourney(@NotNull Patient patient, @NotNull Date date) {
+		Date startOfDay = DateUtils.truncate(date, Calendar.DATE);
+		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
+		criteria.setPatient(patient);
+		criteria.setStartedOnOrAfter(startOfDay);
+		criteria.setStartedOnOrBefore(new Date(DateUtils.addDays(startOfDay, 1).getTime() - 1));
+		return dao.getQueueEntriesInStartedOrder(criteria);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<QueueEntrySummary> getQueueEntrySummaries(QueueEntrySearchCriteria searchCriteria) {
+		return dao.getQueueEntrySummaries(searchCriteria);
+	}
+	
 	@Override
 	@Transactional(readOnly = true)
 	public Long getCountOfQueueEntries(QueueEntrySearchCriteria searchCriteria) {
 		return dao.getCountOfQueueEntries(searchCriteria);
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public QueueEntryWaitTimeStatistics getQueueEntryWaitTimeStatistics(QueueEntrySearchCriteria searchCriteria) {
+		return dao.getQueueEntryWaitTimeStatistics(searchCriteria, false);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public QueueEntryWaitTimeStatistics getQueueEntryWaitTimeStatistics(QueueEntrySearchCriteria searchCriteria,
+	        boolean includeWaitTimes) {
+		return dao.getQueueEntryWaitTimeStatistics(searchCriteria, includeWaitTimes);
+	}
+	
+	/**
+	 * @see QueueEntryService#getQueueEntriesVersion(Queue)
+	 */
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public long getQueueEntriesVersion(@NotNull Queue queue) {
+		return changeTracker.getVersion(queue);
+	}
+	
 	@Override
 	public String generateVisitQueueNumber(Location location, Queue queue, Visit visit,
 	        VisitAttributeType visitAttributeType) {
 		if (location == null || queue == null || visit == null || visitAttributeType == null) {
 			throw new APIException("Sufficient parameters not supplied for generation of VisitQueueNumber");
 		}
-		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
-		criteria.setHasVisit(Boolean.TRUE);
-		criteria.setQueues(Collections.singletonList(queue));
-		criteria.setLocations(Collections.singletonList(location));
-		Date onOrAfter = Date.from(LocalDateTime.now().with(LocalTime.MIN).atZone(ZoneId.systemDefault()).toInstant());
-		criteria.setStartedOnOrAfter(onOrAfter);
-		Date onOrBefore = Date.from(LocalDateTime.now().with(LocalTime.MAX).atZone(ZoneId.systemDefault()).toInstant());
-		criteria.setStartedOnOrBefore(onOrBefore);
-		Long nextQueueNumber = getCountOfQueueEntries(criteria) + 1;
-		String paddedString = StringUtils.leftPad(String.valueOf(nextQueueNumber), 3, "0");
-		String serviceName = queue.getName().toUpperCase();
-		String prefix = serviceName.length() < 3 ? serviceName : serviceName.substring(0, 3);
-		String queueNumber = prefix + "-" + paddedString;
+		Date today = DateUtils.truncate(new Date(), Calendar.DATE);
+		Integer nextQueueNumber = dao.incrementTicketSequence(queue, location, today);
+		if (nextQueueNumber == null) {
+			// The first number issued today continues from any entries that were added to the queue without it
+			QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
+			criteria.setHasVisit(Boolean.TRUE);
+			criteria.setQueues(Collections.singletonList(queue));
+			criteria.setLocations(Collections.singletonList(location));
+			criteria.setStartedOnOrAfter(today);
+			criteria.setStartedOnOrBefore(new Date(DateUtils.addDays(today, 1).getTime() - 1));
+			int firstQueueNumber = getCountOfQueueEntries(criteria).intValue() + 1;
+			boolean created = dao.createTicketSequence(queue, location, today, firstQueueNumber);
+			nextQueueNumber = created ? firstQueueNumber : dao.incrementTicketSequence(queue, location, today);
+			if (nextQueueNumber == null) {
+				throw new APIException("Unable to issue a visit queue number for queue " + queue.getUuid());
+			}
+		}
+		String queueNumber = visitQueueNumberFormatter.format(queue, nextQueueNumber);
 		
 		// Create Visit Attribute using generated queue number
 		VisitAttribute visitQueueNumber = new VisitAttribute();
@@ -250,12 +450,102 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 		return queueNumber;
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public List<QueueEntry> getActiveQueueEntriesWithStoppedVisits(Integer afterQueueEntryId, int maxResults) {
+		return dao.getActiveQueueEntriesWithStoppedVisits(afterQueueEntryId, maxResults);
+	}
+	
 	@Override
 	public void closeActiveQueueEntries() {
 		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
-		criteria.setIsEnded(Boolean.FALSE);
-		List<QueueEntry> queueEntries = getQueueEntries(criteria);
-		queueEntries.forEach(this::endQueueEntry);
+		criteria.setIsEnded(false);
+		closeActiveQueueEntries(criteria, new Date());
+	}
+	
+	/**
+	 * @see QueueEntryService#closeActiveQueueEntries(Collection, Collection, Date)
+	 */
+	@Override
+	public int closeActiveQueueEntries(Collection<Queue> queues, Collection<Location> locations, Date startedBefore) {
+		Date endedAt = new Date();
+		Date cutoff = startedBefore == null || startedBefore.after(endedAt) ? endedAt : startedBefore;
+		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
+		criteria.setQueues(queues);
+		criteria.setLocations(locations);
+		criteria.setIsEnded(false);
+		criteria.setStartedOnOrBefore(new Date(cutoff.getTime() - 1));
+		return closeActiveQueueEntries(criteria, endedAt);
+	}
+	
+	/**
+	 * @see QueueEntryService#closeQueueEntries(List, Date)
+	 */
+	@Override
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public int closeQueueEntries(@NotNull List<QueueEntryReference> queueEntries, @NotNull Date endedAt) {
+		User user = Context.getAuthenticatedUser();
+		return updateInBatches(queueEntries, QueueEntryEvent.Type.ENDED,
+		    queueEntryIds -> dao.endQueueEntries(queueEntryIds, endedAt, user));
+	}
+	
+	/**
+	 * Closes the active queue entries matching the given criteria, reading them in chunks by id and
+	 * closing each chunk in a transaction of its own
+	 *
+	 * @return the number of queue entries that were closed
+	 */
+	private int closeActiveQueueEntries(QueueEntrySearchCriteria criteria, Date endedAt) {
+		int count = 0;
+		Integer afterQueueEntryId = null;
+		List<QueueEntryReference> queueEntries;
+		do {
+			queueEntries = dao.getQueueEntryReferences(criteria, afterQueueEntryId, BULK_UPDATE_BATCH_SIZE);
+			if (!queueEntries.isEmpty()) {
+				count += getProxiedQueueEntryService().closeQueueEntries(queueEntries, endedAt);
+				afterQueueEntryId = queueEntries.get(queueEntries.size() - 1).getQueueEntryId();
+			}
+		} while (queueEntries.size() == BULK_UPDATE_BATCH_SIZE);
+		log.debug("Closed " + count + " active queue entries");
+		return count;
+	}
+	
+	/**
+	 * @see QueueEntryService#endQueueEntriesForVisit(Visit)
+	 */
+	@Override
+	public int endQueueEntriesForVisit(@NotNull Visit visit) {
+		Date endedAt = visit.getStopDatetime();
+		if (visit.getVisitId() == null || endedAt == null) {
+			return 0;
+		}
+		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
+		criteria.setVisit(visit);
+		criteria.setIsEnded(false);
+		criteria.setStartedOnOrBefore(new Date(endedAt.getTime() - 1));
+		User user = Context.getAuthenticatedUser();
+		int count = updateInBatches(dao.getQueueEntryReferences(criteria), QueueEntryEvent.Type.ENDED,
+		    queueEntryIds -> dao.endQueueEntries(queueEntryIds, endedAt, user));
+		log.debug("Closed " + count + " queue entries associated with stopped visit " + visit.getVisitId());
+		return count;
+	}
+	
+	/**
+	 * @see QueueEntryService#markQueueEntriesVoidedForVisit(Visit)
+	 */
+	@Override
+	public int markQueueEntriesVoidedForVisit(@NotNull Visit visit) {
+		if (visit.getVisitId() == null || !visit.getVoided()) {
+			return 0;
+		}
+		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
+		criteria.setVisit(visit);
+		User voidedBy = visit.getVoidedBy() == null ? Context.getAuthenticatedUser() : visit.getVoidedBy();
+		Date dateVoided = visit.getDateVoided() == null ? new Date() : visit.getDateVoided();
+		int count = updateInBatches(dao.getQueueEntryReferences(criteria), QueueEntryEvent.Type.VOIDED,
+		    queueEntryIds -> dao.voidQueueEntries(queueEntryIds, voidedBy, dateVoided, visit.getVoidReason()));
+		log.debug("Voided " + count + " queue entries associated with voided visit " + visit.getVisitId());
+		return count;
 	}
 	
 	@Override
@@ -270,6 +560,62 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 		return sortWeightGenerator;
 	}
 	
+	/**
+	 * @see QueueEntryService#regenerateSortWeights()
+	 */
+	@Override
+	public int regenerateSortWeights() {
+		// Resolved before the chunks are updated, so that a change to the global property that is not yet
+		// committed is taken into account
+		SortWeightGenerator generator = getSortWeightGenerator();
+		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
+		criteria.setIsEnded(false);
+		int count = 0;
+		Integer afterQueueEntryId = null;
+		List<QueueEntryReference> queueEntries;
+		do {
+			queueEntries = dao.getQueueEntryReferences(criteria, afterQueueEntryId, BULK_UPDATE_BATCH_SIZE);
+			if (!queueEntries.isEmpty()) {
+				try {
+					count += getProxiedQueueEntryService().regenerateSortWeights(queueEntries);
+				}
+				catch (RuntimeException e) {
+					// The entries of this chunk are given a new sort weight when they are next saved
+					log.warn("Unable to regenerate the sort weights of " + queueEntries.size() + " queue entries", e);
+				}
+				afterQueueEntryId = queueEntries.get(queueEntries.size() - 1).getQueueEntryId();
+			}
+		} while (queueEntries.size() == BULK_UPDATE_BATCH_SIZE);
+		log.debug("Regenerated the sort weights of " + count + " active queue entries with " + generator);
+		return count;
+	}
+	
+	/**
+	 * @see QueueEntryService#regenerateSortWeights(List)
+	 */
+	@Override
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public int regenerateSortWeights(@NotNull List<QueueEntryReference> queueEntries) {
+		List<String> uuids = new ArrayList<>();
+		for (QueueEntryReference queueEntry : queueEntries) {
+			uuids.add(queueEntry.getQueueEntryUuid());
+		}
+		int count = 0;
+		for (QueueEntry queueEntry : dao.getQueueEntriesByUuids(uuids)) {
+			if (queueEntry.getEndedAt() != null || queueEntry.getVoided()) {
+				continue;
+			}
+			Double sortWeight = getSortWeightGenerator().generateSortWeight(queueEntry);
+			if (!Objects.equals(sortWeight, queueEntry.getSortWeight())) {
+				queueEntry.setSortWeight(sortWeight);
+				changeTracker.queueEntryChanged(queueEntry, QueueEntryEvent.Type.UPDATED);
+				count++;
+			}
+		}
+		dao.flushSession();
+		return count;
+	}
+	
 	/**
 	 * @return the instance of the QueueEntryService from the context. This is needed for
 	 *         self-referential access to ensure proxied instance is returned with relevant AOP
@@ -279,9 +625,79 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 		return Context.getService(QueueEntryService.class);
 	}
 	
-	private void endQueueEntry(@NotNull QueueEntry queueEntry) {
-		queueEntry.setEndedAt(new Date());
-		dao.createOrUpdate(queueEntry);
+	/**
+	 * Applies the given bulk update to the referenced queue entries, in batches of at most
+	 * {@link QueueEntryService#BULK_UPDATE_BATCH_SIZE} entries, and records the change of each entry
+	 *
+	 * @return the total number of queue entries updated
+	 */
+	private int updateInBatches(List<QueueEntryReference> queueEntries, QueueEntryEvent.Type type,
+	        Function<List<Integer>, Integer> update) {
+		int count = 0;
+		for (int i = 0; i < queueEntries.size(); i += BULK_UPDATE_BATCH_SIZE) {
+			int end = Math.min(i + BULK_UPDATE_BATCH_SIZE, queueEntries.size());
+			List<Integer> queueEntryIds = new ArrayList<>();
+			for (QueueEntryReference queueEntry : queueEntries.subList(i, end)) {
+				queueEntryIds.add(queueEntry.getQueueEntryId());
+				changeTracker.queueEntryChanged(queueEntry, type);
+			}
+			count += update.apply(queueEntryIds);
+		}
+		return count;
+	}
+	
+	/**
+	 * @return the type of change that saving the given queue entry represents
+	 */
+	private QueueEntryEvent.Type getChangeType(QueueEntry queueEntry) {
+		if (queueEntry.getQueueEntryId() == null) {
+			return QueueEntryEvent.Type.CREATED;
+		}
+		if (queueEntry.getVoided()) {
+			return QueueEntryEvent.Type.VOIDED;
+		}
+		if (queueEntry.getEndedAt() != null) {
+			return QueueEntryEvent.Type.ENDED;
+		}
+		return QueueEntryEvent.Type.UPDATED;
+	}
+	
+	/**
+	 * Rounds the transition date to whole seconds so the value persisted as the old entry's ended_at is
+	 * byte-for-byte identical to the new entry's started_at; the underlying DATETIME column stores
+	 * second precision and mismatched rounding would otherwise put the two timestamps in adjacent
+	 * seconds and leave gaps in the queue history. Also guarantees the entry being ended has a strictly
+	 * positive duration. When a transition lands in the same second the entry was created, the date is
+	 * advanced by one second so endedAt > startedAt.
+	 */
+	private Date getTransitionDate(QueueEntryTransition queueEntryTransition, QueueEntry currentState) {
+		Date transitionDate = roundToSecond(queueEntryTransition.getTransitionDate());
+		Date currentStartedAt = currentState.getStartedAt();
+		if (currentStartedAt != null && !transitionDate.after(currentStartedAt)) {
+			transitionDate = new Date(currentStartedAt.getTime() + 1000L);
+		}
+		return transitionDate;
+	}
+	
+	/**
+	 * @param queueEntry the queue entry that is being changed
+	 * @param currentState the current state of the queue entry in the session
+	 * @throws ObjectOptimisticLockingFailureException if the queue entry being changed was loaded before
+	 *             the current state was last updated, and so may no longer reflect it
+	 */
+	private void checkUnmodified(QueueEntry queueEntry, QueueEntry currentState) {
+		if (queueEntry != currentState && queueEntry.getVersion() != null
+		        && !queueEntry.getVersion().equals(currentState.getVersion())) {
+			throw new ObjectOptimisticLockingFailureException(QueueEntry.class, currentState.getId());
+		}
+	}
+	
+	private String getErrorMessage(Errors errors) {
+		List<String> messages = new ArrayList<>();
+		for (ObjectError error : errors.getAllErrors()) {
+			messages.add(error.getDefaultMessage() == null ? error.getCode() : error.getDefaultMessage());
+		}
+		return StringUtils.join(messages, ", ");
 	}
 	
 	private static Date roundToSecond(Date date) {
@@ -295,6 +711,12 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 	@Override
 	@Transactional(readOnly = true)
 	public QueueEntry getPreviousQueueEntry(@NotNull QueueEntry queueEntry) {
+		QueueEntry previousQueueEntry = queueEntry.getPreviousQueueEntry();
+		if (previousQueueEntry != null) {
+			return previousQueueEntry.getVoided() ? null : previousQueueEntry;
+		}
+		
+		// Entries that were not created by a transition are matched by patient, visit, queue and time
 		Queue queueComingFrom = queueEntry.getQueueComingFrom();
 		if (queueComingFrom == null) {
 			return null;
@@ -318,4 +740,62 @@ public class QueueEntryServiceImpl extends BaseOpenmrsService implements QueueEn
 			return null;
 		}
 	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, QueueEntry> getPreviousQueueEntries(@NotNull Collection<QueueEntry> queueEntries) {
+		Map<Integer, QueueEntry> ret = new HashMap<>();
+		List<QueueEntry> unlinkedQueueEntries = new ArrayList<>();
+		for (QueueEntry queueEntry : queueEntries) {
+			QueueEntry previousQueueEntry = queueEntry.getPreviousQueueEntry();
+			if (previousQueueEntry != null) {
+				ret.put(queueEntry.getQueueEntryId(), previousQueueEntry.getVoided() ? null : previousQueueEntry);
+			} else {
+				unlinkedQueueEntries.add(queueEntry);
+			}
+		}
+		if (unlinkedQueueEntries.isEmpty()) {
+			return ret;
+		}
+		Map<Integer, List<QueueEntry>> candidatesByPatient = new HashMap<>();
+		for (QueueEntry candidate : dao.getPreviousQueueEntryCandidates(unlinkedQueueEntries)) {
+			Integer patientId = candidate.getPatient().getPatientId();
+			candidatesByPatient.computeIfAbsent(patientId, k -> new ArrayList<>()).add(candidate);
+		}
+		for (QueueEntry queueEntry : unlinkedQueueEntries) {
+			Queue queueComingFrom = queueEntry.getQueueComingFrom();
+			if (queueComingFrom == null) {
+				ret.put(queueEntry.getQueueEntryId(), null);
+			} else if (queueEntry.getStartedAt() != null) {
+				QueueEntry previousQueueEntry = null;
+				Integer patientId = queueEntry.getPatient().getPatientId();
+				for (QueueEntry candidate : candidatesByPatient.getOrDefault(patientId, Collections.emptyList())) {
+					if (isPreviousQueueEntry(candidate, queueEntry)) {
+						if (previousQueueEntry != null) {
+							throw new IllegalStateException("Multiple previous queue entries found");
+						}
+						previousQueueEntry = candidate;
+					}
+				}
+				ret.put(queueEntry.getQueueEntryId(), previousQueueEntry);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return true if the candidate matches the given queue entry as in
+	 *         {@link #getPreviousQueueEntry(QueueEntry)}, where the visit is only matched if the queue
+	 *         entry has one
+	 */
+	private boolean isPreviousQueueEntry(QueueEntry candidate, QueueEntry queueEntry) {
+		if (!candidate.getQueue().getQueueId().equals(queueEntry.getQueueComingFrom().getQueueId())) {
+			return false;
+		}
+		if (queueEntry.getVisit() != null && (candidate.getVisit() == null
+		        || !candidate.getVisit().getVisitId().equals(queueEntry.getVisit().getVisitId()))) {
+			return false;
+		}
+		return candidate.getEndedAt() != null && candidate.getEndedAt().getTime() == queueEntry.getStartedAt().getTime();
+	}
 }
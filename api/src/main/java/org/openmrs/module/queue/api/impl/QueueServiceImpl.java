@@ -11,12 +11,19 @@ package org.openmrs.module.queue.api.impl;
 
 import javax.validation.constraints.NotNull;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import lombok.AccessLevel;
 import lombok.Setter;
+import org.openmrs.Concept;
+import org.openmrs.Location;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.Provider;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
@@ -24,12 +31,22 @@ import org.openmrs.module.queue.api.QueueService;
 import org.openmrs.module.queue.api.dao.QueueDao;
 import org.openmrs.module.queue.api.search.QueueSearchCriteria;
 import org.openmrs.module.queue.model.Queue;
+import org.openmrs.module.queue.utils.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
 @Setter(AccessLevel.MODULE)
 public class QueueServiceImpl extends BaseOpenmrsService implements QueueService {
 	
+	private static final Map<Class<?>, String> PRIVILEGES_BY_TYPE = new HashMap<>();
+	
+	static {
+		PRIVILEGES_BY_TYPE.put(Queue.class, PrivilegeConstants.GET_QUEUES);
+		PRIVILEGES_BY_TYPE.put(Concept.class, org.openmrs.util.PrivilegeConstants.GET_CONCEPTS);
+		PRIVILEGES_BY_TYPE.put(Location.class, org.openmrs.util.PrivilegeConstants.GET_LOCATIONS);
+		PRIVILEGES_BY_TYPE.put(Provider.class, org.openmrs.util.PrivilegeConstants.GET_PROVIDERS);
+	}
+	
 	private QueueDao dao;
 	
 	public void setDao(QueueDao dao) {
@@ -88,6 +105,20 @@ public class QueueServiceImpl extends BaseOpenmrsService implements QueueService
 		return dao.findAll();
 	}
 	
+	/**
+	 * @see org.openmrs.module.queue.api.QueueService#getObjectsByUuids(Class, Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public <T extends OpenmrsObject> List<T> getObjectsByUuids(@NotNull Class<T> type, @NotNull Collection<String> uuids) {
+		String privilege = PRIVILEGES_BY_TYPE.get(type);
+		if (privilege == null) {
+			throw new IllegalArgumentException("Unable to get objects of type " + type.getName() + " by uuid");
+		}
+		Context.requirePrivilege(privilege);
+		return dao.getObjectsByUuids(type, uuids, !Queue.class.equals(type));
+	}
+	
 	/**
 	 * @see org.openmrs.module.queue.api.QueueService#retireQueue(Queue, String)
 	 */
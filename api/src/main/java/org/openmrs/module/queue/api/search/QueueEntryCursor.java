@@ -0,0 +1,94 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.search;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.openmrs.module.queue.model.QueueEntry;
+
+/**
+ * The position of a queue entry within the standard ordering of queue entries (sortWeight
+ * descending, then startedAt, dateCreated and queueEntryId ascending). As this ordering is a total
+ * order, a cursor can be used to retrieve the entries that follow a given entry with a range seek,
+ * rather than by skipping over all preceding entries.
+ */
+@Slf4j
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class QueueEntryCursor implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final String SEPARATOR = ":";
+	
+	private Double sortWeight;
+	
+	private Date startedAt;
+	
+	private Date dateCreated;
+	
+	private Integer queueEntryId;
+	
+	/**
+	 * @param queueEntry the queue entry to get the position of
+	 * @return the cursor positioned at the given queue entry
+	 */
+	public static QueueEntryCursor of(QueueEntry queueEntry) {
+		return new QueueEntryCursor(queueEntry.getSortWeight(), queueEntry.getStartedAt(), queueEntry.getDateCreated(),
+		        queueEntry.getQueueEntryId());
+	}
+	
+	/**
+	 * @param queueEntry the summary of the queue entry to get the position of
+	 * @return the cursor positioned at the summarized queue entry
+	 */
+	public static QueueEntryCursor of(QueueEntrySummary queueEntry) {
+		return new QueueEntryCursor(queueEntry.getSortWeight(), queueEntry.getStartedAt(), queueEntry.getDateCreated(),
+		        queueEntry.getQueueEntryId());
+	}
+	
+	/**
+	 * @return an opaque, url-safe token that can be parsed back into this cursor with
+	 *         {@link #fromToken(String)}
+	 */
+	public String toToken() {
+		String value = sortWeight + SEPARATOR + startedAt.getTime() + SEPARATOR + dateCreated.getTime() + SEPARATOR
+		        + queueEntryId;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * @param token a token previously returned by {@link #toToken()}
+	 * @return the cursor encoded in the given token
+	 * @throws IllegalArgumentException if the token is not a valid queue entry cursor
+	 */
+	public static QueueEntryCursor fromToken(String token) {
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			String[] parts = value.split(SEPARATOR);
+			if (parts.length == 4) {
+				return new QueueEntryCursor(Double.valueOf(parts[0]), new Date(Long.parseLong(parts[1])),
+				        new Date(Long.parseLong(parts[2])), Integer.valueOf(parts[3]));
+			}
+		}
+		catch (IllegalArgumentException e) {
+			log.debug("Unable to parse queue entry continuation token: " + token, e);
+		}
+		throw new IllegalArgumentException("Invalid queue entry continuation token: " + token);
+	}
+}
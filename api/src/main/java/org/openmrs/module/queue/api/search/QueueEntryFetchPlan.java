@@ -0,0 +1,37 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.search;
+
+/**
+ * Determines which associations of queue entries are loaded along with a list of queue entries,
+ * rather than one at a time as each entry is rendered. Associations that reference a single object
+ * are joined in the query for the entries, and collections are loaded for all entries in the list
+ * with one further query each, so that the number of queries does not grow with the size of the
+ * list.
+ */
+public enum QueueEntryFetchPlan {
+	
+	/**
+	 * Only the queue entries are loaded, and their associations are loaded as they are accessed
+	 */
+	NONE,
+	
+	/**
+	 * Also loads the queue, patient, visit, status, priority, location and provider waiting for and the
+	 * queue coming from, along with the names and identifiers of patients and the names of statuses and
+	 * priorities, as needed to render the ref or default representation
+	 */
+	DEFAULT,
+	
+	/**
+	 * Also loads the addresses and attributes of patients, as needed to render the full representation
+	 */
+	FULL
+}
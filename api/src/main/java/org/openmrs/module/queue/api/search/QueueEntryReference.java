@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.search;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.openmrs.module.queue.model.QueueEntry;
+
+/**
+ * Identifies a queue entry and its queue, for bulk operations that act on many queue entries
+ * without loading them into the session
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class QueueEntryReference implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private Integer queueEntryId;
+	
+	private String queueEntryUuid;
+	
+	private Integer queueId;
+	
+	private String queueUuid;
+	
+	/**
+	 * @param queueEntry the queue entry to reference
+	 * @return a reference to the given queue entry
+	 */
+	public static QueueEntryReference of(QueueEntry queueEntry) {
+		return new QueueEntryReference(queueEntry.getQueueEntryId(), queueEntry.getUuid(),
+		        queueEntry.getQueue() == null ? null : queueEntry.getQueue().getQueueId(),
+		        queueEntry.getQueue() == null ? null : queueEntry.getQueue().getUuid());
+	}
+}
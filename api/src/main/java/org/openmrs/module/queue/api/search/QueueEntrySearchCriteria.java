@@ -78,4 +78,25 @@ public class QueueEntrySearchCriteria implements Serializable {
 	private Date endedOn;
 	
 	private boolean includedVoided = false;
+	
+	/**
+	 * The index of the first result to return, or null to start from the first result
+	 */
+	private Integer startIndex;
+	
+	/**
+	 * The maximum number of results to return, or null to return all results
+	 */
+	private Integer limit;
+	
+	/**
+	 * If specified, only results that follow this position in the standard ordering are returned.
+	 * This is an alternative to startIndex that allows the database to seek directly to the next page
+	 */
+	private QueueEntryCursor after;
+	
+	/**
+	 * The associations to load along with the queue entries, or null to load none of them
+	 */
+	private QueueEntryFetchPlan fetchPlan;
 }
@@ -0,0 +1,108 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.search;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.PersonName;
+import org.openmrs.module.queue.model.QueueEntry;
+
+/**
+ * A read-only summary of a queue entry, containing only the fields that are needed to list queue
+ * entries, such as on a queue screen. Summaries are retrieved with a projection query, so that the
+ * patient, visit, concepts, locations and providers that each queue entry refers to are not loaded.
+ */
+@NoArgsConstructor
+@Data
+public class QueueEntrySummary implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private Integer queueEntryId;
+	
+	private String uuid;
+	
+	private String queueUuid;
+	
+	private String patientUuid;
+	
+	private String givenName;
+	
+	private String middleName;
+	
+	private String familyName;
+	
+	private String visitUuid;
+	
+	private String statusUuid;
+	
+	private String priorityUuid;
+	
+	private Double sortWeight;
+	
+	private Date startedAt;
+	
+	private Date endedAt;
+	
+	private Date dateCreated;
+	
+	private String locationWaitingForUuid;
+	
+	private String providerWaitingForUuid;
+	
+	private String queueComingFromUuid;
+	
+	/**
+	 * @param queueEntry the queue entry to summarize
+	 * @return a summary of the given queue entry
+	 */
+	public static QueueEntrySummary of(QueueEntry queueEntry) {
+		QueueEntrySummary summary = new QueueEntrySummary();
+		summary.setQueueEntryId(queueEntry.getQueueEntryId());
+		summary.setUuid(queueEntry.getUuid());
+		summary.setQueueUuid(uuidOf(queueEntry.getQueue()));
+		summary.setPatientUuid(uuidOf(queueEntry.getPatient()));
+		PersonName personName = queueEntry.getPatient() == null ? null : queueEntry.getPatient().getPersonName();
+		if (personName != null) {
+			summary.setGivenName(personName.getGivenName());
+			summary.setMiddleName(personName.getMiddleName());
+			summary.setFamilyName(personName.getFamilyName());
+		}
+		summary.setVisitUuid(uuidOf(queueEntry.getVisit()));
+		summary.setStatusUuid(uuidOf(queueEntry.getStatus()));
+		summary.setPriorityUuid(uuidOf(queueEntry.getPriority()));
+		summary.setSortWeight(queueEntry.getSortWeight());
+		summary.setStartedAt(queueEntry.getStartedAt());
+		summary.setEndedAt(queueEntry.getEndedAt());
+		summary.setDateCreated(queueEntry.getDateCreated());
+		summary.setLocationWaitingForUuid(uuidOf(queueEntry.getLocationWaitingFor()));
+		summary.setProviderWaitingForUuid(uuidOf(queueEntry.getProviderWaitingFor()));
+		summary.setQueueComingFromUuid(uuidOf(queueEntry.getQueueComingFrom()));
+		return summary;
+	}
+	
+	/**
+	 * @return the patient's preferred name, or null if the patient does not have one
+	 */
+	public PersonName getPatientName() {
+		if (givenName == null && middleName == null && familyName == null) {
+			return null;
+		}
+		return new PersonName(givenName, middleName, familyName);
+	}
+	
+	private static String uuidOf(OpenmrsObject openmrsObject) {
+		return openmrsObject == null ? null : openmrsObject.getUuid();
+	}
+}
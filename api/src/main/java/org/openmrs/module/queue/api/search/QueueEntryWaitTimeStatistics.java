@@ -0,0 +1,124 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.search;
+
+import java.util.Arrays;
+
+/**
+ * Statistics about the wait times of the queue entries matching a {@link QueueEntrySearchCriteria}.
+ * The wait time of an entry is the number of whole minutes between its startedAt and endedAt, so
+ * only entries that have ended are included. The count, total, shortest and longest wait times are
+ * normally aggregated by the database. Percentiles need the wait times of each entry, which are then
+ * held as a sorted array of primitives, so that they can be computed without holding the entries
+ * themselves.
+ */
+public class QueueEntryWaitTimeStatistics {
+	
+	private final int count;
+	
+	private final long totalWaitTime;
+	
+	private final Long minWaitTime;
+	
+	private final Long maxWaitTime;
+	
+	private final long[] waitTimes;
+	
+	/**
+	 * @param waitTimes the wait times of each entry in minutes, which are sorted in place
+	 */
+	public QueueEntryWaitTimeStatistics(long[] waitTimes) {
+		Arrays.sort(waitTimes);
+		long total = 0;
+		for (long waitTime : waitTimes) {
+			total += waitTime;
+		}
+		this.count = waitTimes.length;
+		this.totalWaitTime = total;
+		this.minWaitTime = waitTimes.length == 0 ? null : waitTimes[0];
+		this.maxWaitTime = waitTimes.length == 0 ? null : waitTimes[waitTimes.length - 1];
+		this.waitTimes = waitTimes;
+	}
+	
+	/**
+	 * Creates statistics from wait times that have already been aggregated, for which percentiles
+	 * cannot be computed
+	 *
+	 * @param count the number of entries with a wait time
+	 * @param totalWaitTime the sum of the wait times in minutes
+	 * @param minWaitTime the shortest wait time in minutes, or null if there are no entries
+	 * @param maxWaitTime the longest wait time in minutes, or null if there are no entries
+	 */
+	public QueueEntryWaitTimeStatistics(int count, long totalWaitTime, Long minWaitTime, Long maxWaitTime) {
+		this.count = count;
+		this.totalWaitTime = totalWaitTime;
+		this.minWaitTime = minWaitTime;
+		this.maxWaitTime = maxWaitTime;
+		this.waitTimes = null;
+	}
+	
+	/**
+	 * @return the number of entries with a wait time
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * @return the average wait time in minutes, or 0 if there are no entries with a wait time
+	 */
+	public double getAverageWaitTime() {
+		return count == 0 ? 0.0 : (double) totalWaitTime / count;
+	}
+	
+	/**
+	 * @return the shortest wait time in minutes, or null if there are no entries with a wait time
+	 */
+	public Long getMinWaitTime() {
+		return minWaitTime;
+	}
+	
+	/**
+	 * @return the longest wait time in minutes, or null if there are no entries with a wait time
+	 */
+	public Long getMaxWaitTime() {
+		return maxWaitTime;
+	}
+	
+	/**
+	 * @return true if these statistics hold the wait time of each entry, so that percentiles can be
+	 *         computed
+	 */
+	public boolean hasWaitTimes() {
+		return waitTimes != null;
+	}
+	
+	/**
+	 * @param percentile the percentile to compute, between 0 and 100
+	 * @return the wait time in minutes at the given percentile, interpolating linearly between the
+	 *         closest ranks, or null if there are no entries with a wait time
+	 * @throws IllegalStateException if these statistics do not hold the wait time of each entry
+	 */
+	public Double getPercentileWaitTime(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+		}
+		if (waitTimes == null) {
+			throw new IllegalStateException("Percentiles cannot be computed from aggregated wait times");
+		}
+		if (waitTimes.length == 0) {
+			return null;
+		}
+		double rank = percentile / 100 * (waitTimes.length - 1);
+		int lower = (int) Math.floor(rank);
+		int upper = (int) Math.ceil(rank);
+		return waitTimes[lower] + (rank - lower) * (waitTimes[upper] - waitTimes[lower]);
+	}
+}
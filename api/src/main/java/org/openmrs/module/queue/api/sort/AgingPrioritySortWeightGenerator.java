@@ -0,0 +1,109 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.sort;
+
+import java.util.Date;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.module.queue.QueueModuleConstants;
+import org.openmrs.module.queue.api.QueueServicesWrapper;
+import org.openmrs.module.queue.model.QueueEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Extends the {@link BasicPrioritySortWeightGenerator} to age queue entries by how long they have
+ * been waiting, so that an entry that has waited for longer than the configured aging period moves
+ * ahead of entries with a priority that is one rank higher. The sort weight is the rank of the
+ * priority less the time at which the entry started, measured in aging periods. As the difference
+ * between the sort weights of two entries is then the difference between their ranks plus the
+ * difference between their waiting times, in aging periods, the entries are ordered as if they were
+ * aged continuously, without needing to be saved again as time passes.
+ * <p>
+ * These sort weights are large negative numbers, and so cannot be compared with those of the other
+ * generators, nor with those generated with a different aging period. The
+ * {@link SortWeightGeneratorListener} therefore regenerates the sort weights of all active entries
+ * whenever the configured generator or aging period changes.
+ */
+@Slf4j
+@Component("agingPrioritySortWeightGenerator")
+public class AgingPrioritySortWeightGenerator extends BasicPrioritySortWeightGenerator implements GlobalPropertyListener {
+	
+	public static final double DEFAULT_AGING_MINUTES = 60;
+	
+	private volatile Double agingMinutes;
+	
+	@Autowired
+	public AgingPrioritySortWeightGenerator(QueueServicesWrapper services) {
+		super(services);
+	}
+	
+	/**
+	 * Generates a sort weight based on the order of the priority within the configured concept set,
+	 * aged by the time at which the queue entry started
+	 */
+	@Override
+	public Double generateSortWeight(QueueEntry queueEntry) {
+		Date startedAt = queueEntry.getStartedAt() == null ? new Date() : queueEntry.getStartedAt();
+		return getRank(queueEntry) - startedAt.getTime() / (getAgingMinutes() * 60 * 1000);
+	}
+	
+	/**
+	 * @return the number of minutes that an entry must wait in order to move ahead of entries with a
+	 *         priority that is one rank higher
+	 */
+	public double getAgingMinutes() {
+		Double ret = agingMinutes;
+		if (ret == null) {
+			ret = parseAgingMinutes(services.getGlobalProperty(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES));
+			agingMinutes = ret;
+		}
+		return ret;
+	}
+	
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES.equals(propertyName);
+	}
+	
+	/**
+	 * The aging period is taken from the new value, rather than read again when next needed, so that
+	 * it is in effect for any sort weights regenerated before the change is committed
+	 */
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		agingMinutes = parseAgingMinutes(newValue.getPropertyValue());
+	}
+	
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		agingMinutes = DEFAULT_AGING_MINUTES;
+	}
+	
+	private static double parseAgingMinutes(String value) {
+		double ret = DEFAULT_AGING_MINUTES;
+		if (StringUtils.isNotBlank(value)) {
+			try {
+				ret = Double.parseDouble(value.trim());
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid value for " + QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES + ": " + value);
+			}
+		}
+		if (ret <= 0) {
+			log.warn("Invalid value for " + QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES + ": " + value);
+			ret = DEFAULT_AGING_MINUTES;
+		}
+		return ret;
+	}
+}
@@ -9,9 +9,7 @@
  */
 package org.openmrs.module.queue.api.sort;
 
-import java.util.List;
-
-import org.openmrs.Concept;
+import org.openmrs.module.queue.api.ConceptSetMembers;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.model.QueueEntry;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,7 +24,7 @@ import org.springframework.stereotype.Component;
 @Component("basicPrioritySortWeightGenerator")
 public class BasicPrioritySortWeightGenerator implements SortWeightGenerator {
 	
-	private final QueueServicesWrapper services;
+	protected final QueueServicesWrapper services;
 	
 	@Autowired
 	public BasicPrioritySortWeightGenerator(QueueServicesWrapper services) {
@@ -37,11 +35,17 @@ public class BasicPrioritySortWeightGenerator implements SortWeightGenerator {
 	 * Generates a sort weight based on the order of the priority within the configured concept set
 	 */
 	public Double generateSortWeight(QueueEntry queueEntry) {
-		List<Concept> allowedPriorities = services.getAllowedPriorities(queueEntry.getQueue());
-		int ret = 0; // Default to the lowest sort weight
-		if (queueEntry.getPriority() != null && allowedPriorities.contains(queueEntry.getPriority())) {
-			ret = allowedPriorities.indexOf(queueEntry.getPriority());
-		}
-		return (double) ret;
+		return (double) getRank(queueEntry);
+	}
+	
+	/**
+	 * @param queueEntry the queue entry to rank
+	 * @return the position of the priority of the given entry within the allowed priorities of its
+	 *         queue, or 0 if it has no priority or its priority is not allowed
+	 */
+	protected int getRank(QueueEntry queueEntry) {
+		ConceptSetMembers allowedPriorities = services.getAllowedPriorityMembers(queueEntry.getQueue());
+		int ret = allowedPriorities.indexOf(queueEntry.getPriority());
+		return Math.max(ret, 0); // Default to the lowest sort weight
 	}
 }
@@ -0,0 +1,80 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.sort;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.queue.QueueModuleConstants;
+import org.openmrs.module.queue.api.QueueEntryService;
+import org.openmrs.module.queue.utils.PrivilegeConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Switches to the sort weight generator configured by global property as soon as it changes, rather
+ * than when the server is next restarted, and regenerates the sort weights of the active queue
+ * entries whenever the generator or the aging period of the {@link AgingPrioritySortWeightGenerator}
+ * changes. Without this, the entries saved before and after such a change would have sort weights on
+ * different scales, and would be ordered inconsistently until they had all ended.
+ */
+@Slf4j
+@Component("queue.SortWeightGeneratorListener")
+public class SortWeightGeneratorListener implements GlobalPropertyListener {
+	
+	private final QueueEntryService queueEntryService;
+	
+	private final AgingPrioritySortWeightGenerator agingPrioritySortWeightGenerator;
+	
+	@Autowired
+	public SortWeightGeneratorListener(@Qualifier("queue.QueueEntryService") QueueEntryService queueEntryService,
+	    AgingPrioritySortWeightGenerator agingPrioritySortWeightGenerator) {
+		this.queueEntryService = queueEntryService;
+		this.agingPrioritySortWeightGenerator = agingPrioritySortWeightGenerator;
+	}
+	
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return QueueModuleConstants.QUEUE_SORT_WEIGHT_GENERATOR.equals(propertyName)
+		        || QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES.equals(propertyName);
+	}
+	
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		// The aging period is updated here, so that it is in effect before the sort weights are regenerated
+		if (QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES.equals(newValue.getProperty())) {
+			agingPrioritySortWeightGenerator.globalPropertyChanged(newValue);
+		}
+		sortWeightGeneratorChanged();
+	}
+	
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		if (QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES.equals(propertyName)) {
+			agingPrioritySortWeightGenerator.globalPropertyDeleted(propertyName);
+		}
+		sortWeightGeneratorChanged();
+	}
+	
+	private void sortWeightGeneratorChanged() {
+		// The user changing the global property may not be allowed to manage queue entries
+		Context.addProxyPrivilege(PrivilegeConstants.MANAGE_QUEUE_ENTRIES);
+		try {
+			queueEntryService.setSortWeightGenerator(null);
+			int count = queueEntryService.regenerateSortWeights();
+			log.info("Regenerated the sort weights of " + count + " active queue entries");
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.MANAGE_QUEUE_ENTRIES);
+		}
+	}
+}
@@ -30,6 +30,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.apache.commons.lang.BooleanUtils;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.openmrs.BaseChangeableOpenmrsMetadata;
 import org.openmrs.Concept;
 import org.openmrs.Location;
@@ -40,6 +42,7 @@ import org.openmrs.Location;
 @Getter
 @Entity
 @Table(name = "queue")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Queue extends BaseChangeableOpenmrsMetadata {
 	
 	private static final long serialVersionUID = 1L;
@@ -11,6 +11,7 @@ package org.openmrs.module.queue.model;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -18,6 +19,7 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import java.util.Date;
 
@@ -26,6 +28,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
 import org.openmrs.BaseChangeableOpenmrsData;
 import org.openmrs.Concept;
 import org.openmrs.Location;
@@ -40,6 +43,7 @@ import org.openmrs.Visit;
 @ToString
 @Entity
 @Table(name = "queue_entry")
+@BatchSize(size = 50)
 public class QueueEntry extends BaseChangeableOpenmrsData {
 	
 	private static final long serialVersionUID = 1L;
@@ -93,12 +97,26 @@ public class QueueEntry extends BaseChangeableOpenmrsData {
 	@JoinColumn(name = "queue_coming_from", referencedColumnName = "queue_id")
 	private Queue queueComingFrom;
 	
+	//The queue entry that was transitioned into this one, if any. Uninitialized previous queue entries
+	//are loaded in batches, so that those of a page of queue entries are loaded together.
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "previous_queue_entry_id", referencedColumnName = "queue_entry_id")
+	private QueueEntry previousQueueEntry;
+	
 	@Column(name = "started_at", nullable = false)
 	private Date startedAt;
 	
 	@Column(name = "ended_at")
 	private Date endedAt;
 	
+	//Incremented whenever the entry is updated, so that concurrent changes to the same entry are detected.
+	@EqualsAndHashCode.Exclude
+	@Version
+	@Column(name = "version", nullable = false)
+	private Integer version;
+	
 	@Override
 	public Integer getId() {
 		return getQueueEntryId();
@@ -14,6 +14,7 @@ import java.util.Date;
 
 import lombok.Data;
 import org.openmrs.Concept;
+import org.openmrs.Provider;
 
 /**
  * Bean definition that encapsulates the supported criteria for saving a direct transition from one
@@ -36,6 +37,8 @@ public class QueueEntryTransition implements Serializable {
 	
 	private String newPriorityComment;
 	
+	private Provider newProviderWaitingFor;
+	
 	/**
 	 * @return a new queue entry representing what one intends to transition into
 	 */
@@ -50,8 +53,10 @@ public class QueueEntryTransition implements Serializable {
 		queueEntry.setStatus(newStatus == null ? queueEntryToTransition.getStatus() : newStatus);
 		queueEntry.setSortWeight(queueEntryToTransition.getSortWeight());
 		queueEntry.setLocationWaitingFor(queueEntryToTransition.getLocationWaitingFor());
-		queueEntry.setProviderWaitingFor(queueEntryToTransition.getProviderWaitingFor());
+		queueEntry.setProviderWaitingFor(
+		    newProviderWaitingFor == null ? queueEntryToTransition.getProviderWaitingFor() : newProviderWaitingFor);
 		queueEntry.setQueueComingFrom(queueEntryToTransition.getQueue());
+		queueEntry.setPreviousQueueEntry(queueEntryToTransition);
 		queueEntry.setStartedAt(transitionDate);
 		return queueEntry;
 	}
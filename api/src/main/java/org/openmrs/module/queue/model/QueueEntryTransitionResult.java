@@ -0,0 +1,43 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.model;
+
+import java.io.Serializable;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The outcome of one of the transitions requested in a batch. Either the new queue entry that was
+ * created by the transition, or the error that prevented it, is set.
+ */
+@Data
+@NoArgsConstructor
+public class QueueEntryTransitionResult implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private QueueEntryTransition transition;
+	
+	private QueueEntry newQueueEntry;
+	
+	private String error;
+	
+	public QueueEntryTransitionResult(QueueEntryTransition transition) {
+		this.transition = transition;
+	}
+	
+	/**
+	 * @return true if the transition created a new queue entry
+	 */
+	public boolean isSuccessful() {
+		return newQueueEntry != null && error == null;
+	}
+}
@@ -22,6 +22,8 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.openmrs.BaseChangeableOpenmrsMetadata;
 
 @EqualsAndHashCode(callSuper = true)
@@ -30,6 +32,7 @@ import org.openmrs.BaseChangeableOpenmrsMetadata;
 @Getter
 @Entity
 @Table(name = "queue_room")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class QueueRoom extends BaseChangeableOpenmrsMetadata {
 	
 	private static final long serialVersionUID = 1L;
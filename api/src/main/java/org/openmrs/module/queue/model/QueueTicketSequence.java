@@ -0,0 +1,66 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.openmrs.Location;
+
+/**
+ * The last visit queue number issued for a queue at a location on a given day. There is a single
+ * sequence for each queue, location and day, which is incremented with a single update that locks
+ * it, so that concurrent registrations are each issued a different number.
+ */
+@NoArgsConstructor
+@Setter
+@Getter
+@Entity
+@Table(name = "queue_ticket_sequence", uniqueConstraints = @UniqueConstraint(columnNames = { "queue_id", "location_id",
+        "sequence_date" }))
+public class QueueTicketSequence implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "queue_ticket_sequence_id")
+	private Integer queueTicketSequenceId;
+	
+	@ManyToOne
+	@JoinColumn(name = "queue_id", nullable = false)
+	private Queue queue;
+	
+	@ManyToOne
+	@JoinColumn(name = "location_id", nullable = false)
+	private Location location;
+	
+	@Temporal(TemporalType.DATE)
+	@Column(name = "sequence_date", nullable = false)
+	private Date sequenceDate;
+	
+	@Column(name = "last_number", nullable = false)
+	private Integer lastNumber;
+}
@@ -17,17 +17,21 @@ import org.openmrs.Visit;
 import org.openmrs.api.ValidationException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.queue.api.QueueEntryService;
-import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
 import org.openmrs.module.queue.model.QueueEntry;
 
 /**
- * This iterates over all active VisitQueueEntries If the Visit associated with any of these has
- * ended (non-null stopDatetime), then the QueueEntry associated with it is also ended at the same
- * datetime as the Visit was stopped.
+ * This iterates over the active VisitQueueEntries whose Visit has ended (non-null stopDatetime), and
+ * ends each of them at the same datetime as the Visit was stopped. These entries are retrieved in
+ * chunks of {@link #BATCH_SIZE}, ordered by id, using the id of the last entry processed as a
+ * watermark, so that the cost of each run is proportional to the number of entries whose visit has
+ * been stopped rather than the number of active entries, and so that an entry that cannot be closed
+ * does not prevent the remaining entries from being processed.
  */
 @Slf4j
 public class AutoCloseVisitQueueEntryTask implements Runnable {
 	
+	public static final int BATCH_SIZE = 100;
+	
 	private static volatile boolean currentlyExecuting = false;
 	
 	@Override
@@ -39,27 +43,31 @@ public class AutoCloseVisitQueueEntryTask implements Runnable {
 		log.debug("Executing AutoCloseVisitQueueEntryTask");
 		try {
 			currentlyExecuting = true;
-			List<QueueEntry> queueEntries = getActiveVisitQueueEntries();
-			log.debug("There are {} active visit queue entries", queueEntries.size());
-			for (QueueEntry queueEntry : queueEntries) {
-				try {
-					Visit visit = queueEntry.getVisit();
-					Date visitStopDatetime = visit.getStopDatetime();
-					if (visitStopDatetime != null) {
+			Integer lastQueueEntryId = null;
+			List<QueueEntry> queueEntries;
+			do {
+				queueEntries = getActiveQueueEntriesWithStoppedVisits(lastQueueEntryId, BATCH_SIZE);
+				log.debug("There are {} active queue entries with stopped visits", queueEntries.size());
+				for (QueueEntry queueEntry : queueEntries) {
+					lastQueueEntryId = queueEntry.getQueueEntryId();
+					try {
+						Visit visit = queueEntry.getVisit();
+						Date visitStopDatetime = visit.getStopDatetime();
 						log.debug("Visit {} is closed at {}", visit.getVisitId(), visitStopDatetime);
 						log.debug("Auto closing queue entry {}", queueEntry.getQueueEntryId());
 						queueEntry.setEndedAt(visitStopDatetime);
 						saveQueueEntry(queueEntry);
 						log.info("Queue entry auto-closed following close of visit: {}", queueEntry.getQueueEntryId());
 					}
+					catch (ValidationException ve) {
+						log.warn("Unable to auto-close queue entry {}: {}", queueEntry.getQueueEntryId(), ve.getMessage());
+					}
+					catch (Exception e) {
+						log.warn("Unable to auto-close queue entry {}", queueEntry.getQueueEntryId(), e);
+					}
 				}
-				catch (ValidationException ve) {
-					log.warn("Unable to auto-close queue entry {}: {}", queueEntry.getQueueEntryId(), ve.getMessage());
-				}
-				catch (Exception e) {
-					log.warn("Unable to auto-close queue entry {}", queueEntry.getQueueEntryId(), e);
-				}
-			}
+				clearSession();
+			} while (queueEntries.size() >= BATCH_SIZE);
 		}
 		finally {
 			currentlyExecuting = false;
@@ -67,13 +75,13 @@ public class AutoCloseVisitQueueEntryTask implements Runnable {
 	}
 	
 	/**
-	 * @return the active VisitQueueEntries
+	 * @param afterQueueEntryId if not null, limits to entries with an id greater than this
+	 * @param maxResults the maximum number of entries to return
+	 * @return the active VisitQueueEntries whose Visit has ended, ordered by id
 	 */
-	protected List<QueueEntry> getActiveVisitQueueEntries() {
-		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
-		criteria.setIsEnded(false);
-		criteria.setHasVisit(true);
-		return Context.getService(QueueEntryService.class).getQueueEntries(criteria);
+	protected List<QueueEntry> getActiveQueueEntriesWithStoppedVisits(Integer afterQueueEntryId, int maxResults) {
+		return Context.getService(QueueEntryService.class).getActiveQueueEntriesWithStoppedVisits(afterQueueEntryId,
+		    maxResults);
 	}
 	
 	/**
@@ -82,4 +90,11 @@ public class AutoCloseVisitQueueEntryTask implements Runnable {
 	protected void saveQueueEntry(QueueEntry queueEntry) {
 		Context.getService(QueueEntryService.class).saveQueueEntry(queueEntry);
 	}
+	
+	/**
+	 * Clears the session after each chunk, so that entries that have been processed are not retained
+	 */
+	protected void clearSession() {
+		Context.clearSession();
+	}
 }
@@ -10,13 +10,14 @@
 package org.openmrs.module.queue.utils;
 
 import java.text.SimpleDateFormat;
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 
 import lombok.extern.slf4j.Slf4j;
+import org.openmrs.module.queue.api.search.QueueEntryWaitTimeStatistics;
 import org.openmrs.module.queue.model.QueueEntry;
 
 /**
@@ -56,23 +57,18 @@ public class QueueUtils {
 	 * @param queueEntries the QueueEntries to check
 	 * @return the average duration for the entries, in minutes, between startedAt and endedAt, where
 	 *         both are non-null
+	 * @deprecated use {@link org.openmrs.module.queue.api.QueueEntryService#getQueueEntryWaitTimeStatistics}
+	 *             instead, which computes the average in the database rather than from loaded entries
 	 */
+	@Deprecated
 	public static double computeAverageWaitTimeInMinutes(List<QueueEntry> queueEntries) {
-		double averageWaitTime = 0.0;
-		if (queueEntries != null && !queueEntries.isEmpty()) {
-			double totalWaitTime = 0.0;
-			int numEntries = 0;
-			for (QueueEntry e : queueEntries) {
-				LocalDateTime startedAt = convertToLocalDateTimeInSystemDefaultTimezone(e.getStartedAt());
-				LocalDateTime endedAt = convertToLocalDateTimeInSystemDefaultTimezone(e.getEndedAt());
-				if (startedAt != null && endedAt != null) {
-					totalWaitTime += Duration.between(startedAt, endedAt).toMinutes();
-					numEntries++;
-				}
-			}
-			averageWaitTime = totalWaitTime / numEntries;
+		if (queueEntries == null || queueEntries.isEmpty()) {
+			return 0.0;
 		}
-		return averageWaitTime;
+		long[] waitTimes = queueEntries.stream().filter(Objects::nonNull)
+		        .filter(e -> e.getStartedAt() != null && e.getEndedAt() != null)
+		        .mapToLong(e -> (e.getEndedAt().getTime() - e.getStartedAt().getTime()) / 60000).toArray();
+		return new QueueEntryWaitTimeStatistics(waitTimes).getAverageWaitTime();
 	}
 	
 	/**
@@ -11,8 +11,6 @@ package org.openmrs.module.queue.validators;
 
 import static org.springframework.validation.ValidationUtils.rejectIfEmptyOrWhitespace;
 
-import java.util.List;
-
 import org.openmrs.Visit;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.context.Context;
@@ -80,7 +78,7 @@ public class QueueEntryValidator implements Validator {
 		if (queueEntry.getStatus() == null) {
 			errors.rejectValue("status", "queueEntry.status.null", "The property status should not be null");
 		} else if (queue != null) {
-			if (!queueServices.getAllowedStatuses(queue).contains(queueEntry.getStatus())) {
+			if (!queueServices.getAllowedStatusMembers(queue).contains(queueEntry.getStatus())) {
 				errors.rejectValue("status", "queueEntry.status.invalid",
 				    "The property status should be a member of configured queue status conceptSet.");
 			}
@@ -89,7 +87,7 @@ public class QueueEntryValidator implements Validator {
 		if (queueEntry.getPriority() == null) {
 			errors.rejectValue("priority", "queueEntry.priority.null", "The property priority should not be null");
 		} else if (queue != null) {
-			if (!queueServices.getAllowedPriorities(queue).contains(queueEntry.getPriority())) {
+			if (!queueServices.getAllowedPriorityMembers(queue).contains(queueEntry.getPriority())) {
 				errors.rejectValue("priority", "queueEntry.priority.invalid",
 				    "The property priority should be a member of configured queue priority conceptSet.");
 			}
@@ -102,24 +100,8 @@ public class QueueEntryValidator implements Validator {
 	}
 	
 	private boolean isDuplicate(QueueEntry queueEntry, QueueEntryService queueEntryService) {
-		List<QueueEntry> queueEntries = queueEntryService.getOverlappingQueueEntries(queueEntry.getPatient(),
-		    queueEntry.getQueue(), queueEntry.getStartedAt(), queueEntry.getEndedAt());
-		// cascade voids (e.g. voiding a patient) may not yet be flushed to the DB when this runs,
-		// so voided entries can slip through the DAO-level filter — remove them here as a safety net
-		queueEntries.removeIf(QueueEntry::getVoided);
-		
-		// if we aren't checking an existing queue entry, any overlaps are "duplicates"
-		if (queueEntry.getId() == null) {
-			return !queueEntries.isEmpty();
-		}
-		
-		// if we are checking an existing queue entry then check if there is at least one overlapping entry
-		// that is not this entry
-		for (QueueEntry qe : queueEntries) {
-			if (!qe.getId().equals(queueEntry.getId())) {
-				return true;
-			}
-		}
-		return false;
+		// only probes for the existence of another overlapping entry, disregarding any that have been voided
+		// in the session but not yet flushed to the DB, such as by cascade voids (e.g. voiding a patient)
+		return queueEntryService.hasOverlappingQueueEntries(queueEntry);
 	}
 }
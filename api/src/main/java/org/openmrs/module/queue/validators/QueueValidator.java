@@ -47,7 +47,7 @@ public class QueueValidator implements Validator {
 		if (queue.getService() == null) {
 			errors.rejectValue("service", "QueueEntry.service.null", "The property service should not be null");
 		} else {
-			if (!queueServices.getAllowedServices().contains(queue.getService())) {
+			if (!queueServices.getAllowedServiceMembers().contains(queue.getService())) {
 				errors.rejectValue("service", "Queue.service.invalid",
 				    "The property service should be a member of configured queue service conceptSet.");
 			}
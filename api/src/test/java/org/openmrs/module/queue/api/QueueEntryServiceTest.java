@@ -14,12 +14,17 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -41,16 +46,19 @@ import org.openmrs.Provider;
 import org.openmrs.User;
 import org.openmrs.Visit;
 import org.openmrs.VisitAttributeType;
+import org.openmrs.api.APIException;
 import org.openmrs.api.VisitService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.context.UserContext;
 import org.openmrs.module.queue.api.dao.QueueEntryDao;
 import org.openmrs.module.queue.api.impl.QueueEntryServiceImpl;
+import org.openmrs.module.queue.api.search.QueueEntryReference;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
 import org.openmrs.module.queue.api.sort.ExistingValueSortWeightGenerator;
 import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
 import org.openmrs.module.queue.model.QueueEntryTransition;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 @RunWith(MockitoJUnitRunner.class)
 public class QueueEntryServiceTest {
@@ -157,6 +165,8 @@ public class QueueEntryServiceTest {
 		QueueEntry queueEntry = mock(QueueEntry.class);
 		when(dao.get(QUEUE_ENTRY_UUID)).thenReturn(Optional.empty());
 		queueEntryService.purgeQueueEntry(queueEntry);
+		verify(dao).unlinkNextQueueEntries(queueEntry);
+		verify(dao).delete(queueEntry);
 		assertThat(queueEntryService.getQueueEntryByUuid(QUEUE_ENTRY_UUID).isPresent(), is(false));
 	}
 	
@@ -176,6 +186,115 @@ public class QueueEntryServiceTest {
 		assertThat(daoCriteria, equalTo(criteria));
 	}
 	
+	@Test
+	public void shouldChangeQueueEntriesVersionOnlyForQueueOfSavedEntry() {
+		Queue queue1 = new Queue();
+		queue1.setQueueId(1);
+		Queue queue2 = new Queue();
+		queue2.setQueueId(2);
+		QueueEntry queueEntry = new QueueEntry();
+		queueEntry.setQueue(queue1);
+		long queue1Version = queueEntryService.getQueueEntriesVersion(queue1);
+		long queue2Version = queueEntryService.getQueueEntriesVersion(queue2);
+		
+		queueEntryService.saveQueueEntry(queueEntry);
+		assertThat(queueEntryService.getQueueEntriesVersion(queue1), greaterThan(queue1Version));
+		assertThat(queueEntryService.getQueueEntriesVersion(queue2), equalTo(queue2Version));
+		
+		queue1Version = queueEntryService.getQueueEntriesVersion(queue1);
+		queueEntryService.purgeQueueEntry(queueEntry);
+		assertThat(queueEntryService.getQueueEntriesVersion(queue1), greaterThan(queue1Version));
+	}
+	
+	@Test
+	public void shouldChangeQueueEntriesVersionOfQueueThatSavedEntryWasMovedOutOf() {
+		Queue queue1 = new Queue();
+		queue1.setQueueId(1);
+		Queue queue2 = new Queue();
+		queue2.setQueueId(2);
+		QueueEntry queueEntry = new QueueEntry();
+		queueEntry.setQueueEntryId(1);
+		queueEntry.setQueue(queue2);
+		when(dao.getPersistedQueue(queueEntry)).thenReturn(queue1);
+		long queue1Version = queueEntryService.getQueueEntriesVersion(queue1);
+		long queue2Version = queueEntryService.getQueueEntriesVersion(queue2);
+		
+		queueEntryService.saveQueueEntry(queueEntry);
+		assertThat(queueEntryService.getQueueEntriesVersion(queue1), greaterThan(queue1Version));
+		assertThat(queueEntryService.getQueueEntriesVersion(queue2), greaterThan(queue2Version));
+	}
+	
+	@Test
+	public void shouldRestoreJdbcBatchSizeAfterTransitioningQueueEntries() {
+		when(dao.getJdbcBatchSize()).thenReturn(20);
+		queueEntryService.transitionQueueEntries(Collections.emptyList());
+		verify(dao).setJdbcBatchSize(20);
+	}
+	
+	@Test
+	public void shouldCloseActiveQueueEntriesInChunksByQueueEntryId() {
+		List<QueueEntryReference> firstChunk = new ArrayList<>();
+		for (int i = 1; i <= QueueEntryService.BULK_UPDATE_BATCH_SIZE; i++) {
+			firstChunk.add(new QueueEntryReference(i, "uuid-" + i, 1, "queue-uuid"));
+		}
+		int lastQueueEntryId = QueueEntryService.BULK_UPDATE_BATCH_SIZE;
+		List<QueueEntryReference> secondChunk = Collections
+		        .singletonList(new QueueEntryReference(lastQueueEntryId + 1, "uuid-last", 1, "queue-uuid"));
+		when(dao.getQueueEntryReferences(any(), isNull(), eq(QueueEntryService.BULK_UPDATE_BATCH_SIZE)))
+		        .thenReturn(firstChunk);
+		when(dao.getQueueEntryReferences(any(), eq(lastQueueEntryId), eq(QueueEntryService.BULK_UPDATE_BATCH_SIZE)))
+		        .thenReturn(secondChunk);
+		when(dao.endQueueEntries(anyCollection(), any(), any()))
+		        .thenAnswer(invocation -> ((Collection<?>) invocation.getArgument(0)).size());
+		UserContext userContext = mock(UserContext.class);
+		Context.setUserContext(userContext);
+		
+		try {
+			int count = queueEntryService.closeActiveQueueEntries(null, null, null);
+			assertThat(count, is(QueueEntryService.BULK_UPDATE_BATCH_SIZE + 1));
+			verify(dao, times(2)).endQueueEntries(anyCollection(), any(), any());
+			verify(dao, times(2)).getQueueEntryReferences(queueEntrySearchCriteriaArgumentCaptor.capture(), any(),
+			    anyInt());
+			// Entries that start after the time at which they are closed are not closed
+			assertThat(queueEntrySearchCriteriaArgumentCaptor.getValue().getStartedOnOrBefore(), notNullValue());
+		}
+		finally {
+			Context.setUserContext(null);
+		}
+	}
+	
+	@Test
+	public void shouldOnlyUpdateActiveQueueEntriesWhoseSortWeightChanges() {
+		QueueEntry unchanged = new QueueEntry();
+		unchanged.setSortWeight(5.0);
+		QueueEntry changed = new QueueEntry();
+		changed.setSortWeight(1.0);
+		QueueEntry ended = new QueueEntry();
+		ended.setSortWeight(1.0);
+		ended.setEndedAt(new Date());
+		List<QueueEntryReference> queueEntries = Arrays.asList(QueueEntryReference.of(unchanged),
+		    QueueEntryReference.of(changed), QueueEntryReference.of(ended));
+		when(dao.getQueueEntriesByUuids(Arrays.asList(unchanged.getUuid(), changed.getUuid(), ended.getUuid())))
+		        .thenReturn(Arrays.asList(unchanged, changed, ended));
+		queueEntryService.setSortWeightGenerator(queueEntry -> 5.0);
+		
+		assertThat(queueEntryService.regenerateSortWeights(queueEntries), is(1));
+		assertThat(changed.getSortWeight(), is(5.0));
+		assertThat(ended.getSortWeight(), is(1.0));
+		verify(dao).flushSession();
+	}
+	
+	@Test
+	public void shouldCloseAllActiveQueueEntriesWhateverTheirStartDate() {
+		when(dao.getQueueEntryReferences(any(), any(), anyInt())).thenReturn(Collections.emptyList());
+		queueEntryService.closeActiveQueueEntries();
+		verify(dao).getQueueEntryReferences(queueEntrySearchCriteriaArgumentCaptor.capture(), isNull(),
+		    eq(QueueEntryService.BULK_UPDATE_BATCH_SIZE));
+		assertThat(queueEntrySearchCriteriaArgumentCaptor.getValue().getIsEnded(), is(false));
+		assertThat(queueEntrySearchCriteriaArgumentCaptor.getValue().getStartedOnOrBefore(), nullValue());
+		verify(dao, never()).endQueueEntries(anyCollection(), any(), any());
+	}
+	
 	@Test
 	public void shouldTransitionQueueEntry() {
 		Patient patient1 = new Patient();
@@ -227,7 +346,6 @@ public class QueueEntryServiceTest {
 			int id = invocation.getArgument(0);
 			return Optional.ofNullable(entryMap.get(id));
 		});
-		when(dao.updateIfUnmodified(any(), any())).thenReturn(true);
 		
 		// First transition test that no changes are required and all values will be pulled from existing queue entry
 		QueueEntryTransition transition1 = new QueueEntryTransition();
@@ -246,6 +364,7 @@ public class QueueEntryServiceTest {
 		assertThat(queueEntry2.getProviderWaitingFor(), equalTo(provider1));
 		assertThat(queueEntry2.getQueueComingFrom(), equalTo(queue1));
 		assertThat(queueEntry2.getStartedAt(), equalTo(date2));
+		assertThat(queueEntry2.getPreviousQueueEntry(), equalTo(queueEntry1));
 		assertNull(queueEntry2.getEndedAt());
 		
 		// Next transition test that appropriate fields can be changed
@@ -269,6 +388,7 @@ public class QueueEntryServiceTest {
 		assertThat(queueEntry3.getProviderWaitingFor(), equalTo(provider1));
 		assertThat(queueEntry3.getQueueComingFrom(), equalTo(queue1));
 		assertThat(queueEntry3.getStartedAt(), equalTo(date3));
+		assertThat(queueEntry3.getPreviousQueueEntry(), equalTo(queueEntry2));
 		assertNull(queueEntry3.getEndedAt());
 	}
 	
@@ -319,7 +439,6 @@ public class QueueEntryServiceTest {
 			int id = invocation.getArgument(0);
 			return Optional.ofNullable(entryMap.get(id));
 		});
-		when(dao.updateIfUnmodified(any(), any())).thenReturn(true);
 		
 		// Create transition
 		QueueEntryTransition transition1 = new QueueEntryTransition();
@@ -327,7 +446,7 @@ public class QueueEntryServiceTest {
 		transition1.setTransitionDate(date2);
 		QueueEntry queueEntry2 = queueEntryService.transitionQueueEntry(transition1);
 		
-		when(dao.getQueueEntries(any())).thenReturn(Arrays.asList(queueEntry1));
+		// The previous entry is found through the link set by the transition, without querying for it
 		User user = new User(1);
 		UserContext userContext = mock(UserContext.class);
 		when(userContext.getAuthenticatedUser()).thenReturn(user);
@@ -338,6 +457,7 @@ public class QueueEntryServiceTest {
 			
 			assertThat(queueEntry2.getVoided(), equalTo(true));
 			assertNull(queueEntry1.getEndedAt());
+			verify(dao, never()).getQueueEntries(any());
 		}
 		finally {
 			Context.setUserContext(null);
@@ -405,7 +525,7 @@ public class QueueEntryServiceTest {
 		queueEntryService.undoTransition(endedEntry);
 	}
 	
-	@Test(expected = IllegalStateException.class)
+	@Test(expected = ObjectOptimisticLockingFailureException.class)
 	public void shouldThrowWhenTransitioningConcurrentlyModifiedEntry() {
 		QueueEntry queueEntry = new QueueEntry();
 		queueEntry.setQueueEntryId(1);
@@ -414,8 +534,12 @@ public class QueueEntryServiceTest {
 		queueEntry.setStatus(new Concept());
 		queueEntry.setPriority(new Concept());
 		queueEntry.setStartedAt(new Date());
-		when(dao.get(1)).thenReturn(Optional.of(queueEntry));
-		when(dao.updateIfUnmodified(any(), any())).thenReturn(false);
+		queueEntry.setVersion(0);
+		QueueEntry currentState = new QueueEntry();
+		currentState.setQueueEntryId(1);
+		currentState.setStartedAt(queueEntry.getStartedAt());
+		currentState.setVersion(1);
+		when(dao.get(1)).thenReturn(Optional.of(currentState));
 		
 		QueueEntryTransition transition = new QueueEntryTransition();
 		transition.setQueueEntryToTransition(queueEntry);
@@ -423,7 +547,7 @@ public class QueueEntryServiceTest {
 		queueEntryService.transitionQueueEntry(transition);
 	}
 	
-	@Test(expected = IllegalStateException.class)
+	@Test(expected = ObjectOptimisticLockingFailureException.class)
 	public void shouldThrowWhenUndoingTransitionOnConcurrentlyModifiedPreviousEntry() {
 		Queue queue1 = new Queue();
 		Patient patient1 = new Patient();
@@ -456,7 +580,7 @@ public class QueueEntryServiceTest {
 		
 		when(dao.get(2)).thenReturn(Optional.of(currentEntry));
 		when(dao.getQueueEntries(any())).thenReturn(Arrays.asList(prevEntry));
-		when(dao.updateIfUnmodified(any(), any())).thenReturn(false);
+		doThrow(new ObjectOptimisticLockingFailureException(QueueEntry.class, 1)).when(dao).flushSession();
 		
 		queueEntryService.undoTransition(currentEntry);
 	}
@@ -480,7 +604,6 @@ public class QueueEntryServiceTest {
 			return entry;
 		});
 		when(dao.get(1)).thenReturn(Optional.of(queueEntry));
-		when(dao.updateIfUnmodified(any(), any())).thenReturn(true);
 		
 		// Sub-second precision; rounding to nearest second should give .000 ms.
 		Date suppliedTransitionDate = new Date(DateUtils.truncate(new Date(), Calendar.SECOND).getTime() + 499L);
@@ -517,7 +640,6 @@ public class QueueEntryServiceTest {
 			return entry;
 		});
 		when(dao.get(1)).thenReturn(Optional.of(queueEntry));
-		when(dao.updateIfUnmodified(any(), any())).thenReturn(true);
 		
 		QueueEntryTransition transition = new QueueEntryTransition();
 		transition.setQueueEntryToTransition(queueEntry);
@@ -541,8 +663,50 @@ public class QueueEntryServiceTest {
 		VisitAttributeType visitAttributeType = new VisitAttributeType();
 		when(visitService.saveVisit(visit)).thenReturn(visit);
 		when(queueEntryService.getCountOfQueueEntries(any())).thenReturn(52L);
+		when(dao.createTicketSequence(eq(queue), eq(location), any(), eq(53))).thenReturn(true);
 		String queueNumber = queueEntryService.generateVisitQueueNumber(location, queue, visit, visitAttributeType);
 		assertThat(queueNumber, notNullValue());
 		assertThat(queueNumber, equalTo("CON-053"));
 	}
+	
+	@Test
+	public void shouldGenerateVisitQueueNumberFromExistingSequenceWithoutCountingQueueEntries() {
+		Visit visit = new Visit();
+		Location location = new Location();
+		Queue queue = new Queue();
+		queue.setName("Triage");
+		VisitAttributeType visitAttributeType = new VisitAttributeType();
+		when(visitService.saveVisit(visit)).thenReturn(visit);
+		when(dao.incrementTicketSequence(eq(queue), eq(location), any())).thenReturn(8);
+		String queueNumber = queueEntryService.generateVisitQueueNumber(location, queue, visit, visitAttributeType);
+		assertThat(queueNumber, equalTo("TRI-008"));
+		verify(dao, never()).getCountOfQueueEntries(any());
+		verify(dao, never()).createTicketSequence(any(), any(), any(), anyInt());
+	}
+	
+	@Test
+	public void shouldGenerateVisitQueueNumberFromSequenceCreatedByConcurrentRegistration() {
+		Visit visit = new Visit();
+		Location location = new Location();
+		Queue queue = new Queue();
+		queue.setName("Consultation Queue");
+		VisitAttributeType visitAttributeType = new VisitAttributeType();
+		when(visitService.saveVisit(visit)).thenReturn(visit);
+		when(dao.getCountOfQueueEntries(any())).thenReturn(0L);
+		when(dao.incrementTicketSequence(eq(queue), eq(location), any())).thenReturn(null, 2);
+		when(dao.createTicketSequence(eq(queue), eq(location), any(), eq(1))).thenReturn(false);
+		String queueNumber = queueEntryService.generateVisitQueueNumber(location, queue, visit, visitAttributeType);
+		assertThat(queueNumber, equalTo("CON-002"));
+	}
+	
+	@Test(expected = APIException.class)
+	public void shouldFailToGenerateVisitQueueNumberIfSequenceCannotBeCreatedOrIncremented() {
+		Location location = new Location();
+		Queue queue = new Queue();
+		queue.setName("Consultation Queue");
+		when(dao.getCountOfQueueEntries(any())).thenReturn(0L);
+		when(dao.incrementTicketSequence(eq(queue), eq(location), any())).thenReturn(null, null);
+		when(dao.createTicketSequence(eq(queue), eq(location), any(), eq(1))).thenReturn(false);
+		queueEntryService.generateVisitQueueNumber(location, queue, new Visit(), new VisitAttributeType());
+	}
 }
@@ -10,10 +10,21 @@
 package org.openmrs.module.queue.api;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -22,6 +33,8 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.openmrs.Concept;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Location;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.LocationService;
@@ -86,6 +99,52 @@ public class QueueServicesWrapperTest {
 		queue = new Queue();
 	}
 	
+	@Test
+	public void getConcepts_shouldResolveConceptsByUuidWithSingleQuery() {
+		Concept concept1 = new Concept();
+		Concept concept2 = new Concept();
+		Concept concept3 = new Concept();
+		when(queueService.getObjectsByUuids(eq(Concept.class), anyCollection()))
+		        .thenReturn(Arrays.asList(concept1, concept2));
+		when(conceptService.getConceptByMapping("123", "CIEL")).thenReturn(concept3);
+		List<Concept> concepts = wrapper
+		        .getConcepts(new String[] { concept2.getUuid(), " CIEL:123", concept1.getUuid(), concept2.getUuid() });
+		assertThat(concepts, contains(concept2, concept3, concept1, concept2));
+		verify(queueService, times(1)).getObjectsByUuids(eq(Concept.class), anyCollection());
+		verify(conceptService, never()).getConceptByUuid(anyString());
+	}
+	
+	@Test
+	public void getConcepts_shouldResolveCachedConceptSetMembersWithSingleQuery() {
+		Concept concept1 = new Concept();
+		Concept concept2 = new Concept();
+		when(queueService.getObjectsByUuids(eq(Concept.class), anyCollection()))
+		        .thenReturn(Arrays.asList(concept1, concept2));
+		List<Concept> concepts = wrapper.getConcepts(new ConceptSetMembers(Arrays.asList(concept2, concept1)));
+		assertThat(concepts, contains(concept2, concept1));
+		verify(queueService, times(1)).getObjectsByUuids(eq(Concept.class), anyCollection());
+		verify(conceptService, never()).getConceptByUuid(anyString());
+	}
+	
+	@Test
+	public void getLocationsByRef_shouldResolveReferencesNotMatchingUuidByName() {
+		Location location = new Location();
+		when(queueService.getObjectsByUuids(eq(Location.class), anyCollection())).thenReturn(Collections.emptyList());
+		when(locationService.getLocations("Inpatient Ward")).thenReturn(Collections.singletonList(location));
+		Map<String, Location> locations = wrapper.getLocationsByRef(Arrays.asList("Inpatient Ward", " "));
+		assertThat(locations.size(), equalTo(1));
+		assertThat(locations.get("Inpatient Ward"), is(location));
+		verify(locationService, never()).getLocationByUuid(anyString());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void getQueues_shouldThrowErrorIfQueueNotFound() {
+		Queue queue1 = new Queue();
+		when(queueService.getObjectsByUuids(eq(Queue.class), anyCollection()))
+		        .thenReturn(Collections.singletonList(queue1));
+		wrapper.getQueues(new String[] { queue1.getUuid(), "missing-queue-uuid" });
+	}
+	
 	@Test(expected = IllegalStateException.class)
 	public void getAllowedServices_shouldThrowErrorIfNoGpConfigured() {
 		when(administrationService.getGlobalProperty(QueueModuleConstants.QUEUE_SERVICE)).thenReturn(null);
@@ -159,4 +218,52 @@ public class QueueServicesWrapperTest {
 		List<Concept> statuses = wrapper.getAllowedStatuses(queue);
 		assertThat(statuses.size(), equalTo(1));
 	}
+	
+	@Test
+	public void getAllowedStatusMembers_shouldCacheMembersOfConceptSetConfiguredByGp() {
+		String conceptSetUuid = conceptSet1.getUuid();
+		when(administrationService.getGlobalProperty(QueueModuleConstants.QUEUE_STATUS)).thenReturn(conceptSetUuid);
+		ConceptSetMembers statuses = wrapper.getAllowedStatusMembers(queue);
+		assertThat(statuses.size(), equalTo(2));
+		assertThat(statuses.contains(conceptSet1.getSetMembers().get(1)), is(true));
+		assertThat(statuses.indexOf(conceptSet1.getSetMembers().get(1)), equalTo(1));
+		assertThat(statuses.contains(conceptSet2.getSetMembers().get(0)), is(false));
+		assertThat(wrapper.getAllowedStatusMembers(queue), is(statuses));
+		verify(conceptService, times(1)).getConceptByUuid(conceptSetUuid);
+	}
+	
+	@Test
+	public void getAllowedPriorityMembers_shouldResolveConceptSetAgainIfGpValueChanges() {
+		when(conceptService.getConceptByUuid(conceptSet2.getUuid())).thenReturn(conceptSet2);
+		when(administrationService.getGlobalProperty(QueueModuleConstants.QUEUE_PRIORITY))
+		        .thenReturn(conceptSet1.getUuid());
+		assertThat(wrapper.getAllowedPriorityMembers(queue).size(), equalTo(2));
+		when(administrationService.getGlobalProperty(QueueModuleConstants.QUEUE_PRIORITY))
+		        .thenReturn(conceptSet2.getUuid());
+		assertThat(wrapper.getAllowedPriorityMembers(queue).size(), equalTo(1));
+	}
+	
+	@Test
+	public void getAllowedServiceMembers_shouldResolveConceptSetAgainIfGpChanged() {
+		String conceptSetUuid = conceptSet1.getUuid();
+		when(administrationService.getGlobalProperty(QueueModuleConstants.QUEUE_SERVICE)).thenReturn(conceptSetUuid);
+		assertThat(wrapper.getAllowedServiceMembers().size(), equalTo(2));
+		conceptSet1.addSetMember(new Concept());
+		assertThat(wrapper.getAllowedServiceMembers().size(), equalTo(2));
+		assertThat(wrapper.supportsPropertyName(QueueModuleConstants.QUEUE_SERVICE), is(true));
+		wrapper.globalPropertyChanged(new GlobalProperty(QueueModuleConstants.QUEUE_SERVICE, conceptSetUuid));
+		assertThat(wrapper.getAllowedServiceMembers().size(), equalTo(3));
+		verify(conceptService, times(2)).getConceptByUuid(conceptSetUuid);
+	}
+	
+	@Test
+	public void getAllowedStatusMembers_shouldCacheMembersOfConceptSetConfiguredOnQueueUntilCleared() {
+		conceptSet2.setConceptId(2);
+		queue.setStatusConceptSet(conceptSet2);
+		assertThat(wrapper.getAllowedStatusMembers(queue).size(), equalTo(1));
+		conceptSet2.addSetMember(new Concept());
+		assertThat(wrapper.getAllowedStatusMembers(queue).size(), equalTo(1));
+		wrapper.clearConceptSetMembers();
+		assertThat(wrapper.getAllowedStatusMembers(queue).size(), equalTo(2));
+	}
 }
@@ -0,0 +1,57 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.dao.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openmrs.module.queue.api.dao.impl.QueueMetadataCache.QueueMetadata;
+
+public class QueueMetadataCacheTest {
+	
+	private final QueueMetadataCache cache = new QueueMetadataCache();
+	
+	private final AtomicInteger loads = new AtomicInteger();
+	
+	@Test
+	public void getAll_shouldLoadQueuesOnlyOnceUntilInvalidated() {
+		assertThat(cache.getAll(this::load), hasSize(1));
+		assertThat(cache.getAll(this::load), hasSize(1));
+		assertThat(loads.get(), equalTo(1));
+		cache.invalidate();
+		assertThat(cache.getAll(this::load), hasSize(1));
+		assertThat(loads.get(), equalTo(2));
+	}
+	
+	@Test
+	public void getAll_shouldNotCacheQueuesLoadedWhileInvalidated() {
+		List<QueueMetadata> queues = cache.getAll(() -> {
+			cache.invalidate();
+			return load();
+		});
+		assertThat(queues, hasSize(1));
+		cache.getAll(this::load);
+		assertThat(loads.get(), equalTo(2));
+	}
+	
+	private List<QueueMetadata> load() {
+		loads.incrementAndGet();
+		QueueMetadata queue = new QueueMetadata();
+		queue.setQueueId(loads.get());
+		return new ArrayList<>(Collections.singletonList(queue));
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.digitalSignage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.openmrs.module.queue.api.digitalSignage.QueueTicketAssignments.TicketAssignment;
+
+public class QueueTicketAssignmentsTest {
+	
+	@Test
+	public void shouldAssignTicketToServicePoint() {
+		QueueTicketAssignments.updateTicketAssignment("Room A1", "A-001", "calling");
+		
+		TicketAssignment assignment = QueueTicketAssignments.getActiveTicketAssignments().get("Room A1");
+		assertThat(assignment.getTicketNumber(), equalTo("A-001"));
+		assertThat(assignment.getStatus(), equalTo("calling"));
+	}
+	
+	@Test
+	public void shouldMoveTicketFromItsPreviousServicePoint() {
+		QueueTicketAssignments.updateTicketAssignment("Room B1", "B-001", "calling");
+		QueueTicketAssignments.updateTicketAssignment("Room B2", "B-001", "serving");
+		
+		Map<String, TicketAssignment> assignments = QueueTicketAssignments.getActiveTicketAssignments();
+		assertThat(assignments, not(hasKey("Room B1")));
+		assertThat(assignments.get("Room B2").getTicketNumber(), equalTo("B-001"));
+		assertThat(assignments.get("Room B2").getStatus(), equalTo("serving"));
+	}
+	
+	@Test
+	public void shouldRemoveCompletedTicket() {
+		QueueTicketAssignments.updateTicketAssignment("Room C1", "C-001", "calling");
+		QueueTicketAssignments.updateTicketAssignment("Room C1", "C-001", QueueTicketAssignments.STATUS_COMPLETED);
+		
+		assertThat(QueueTicketAssignments.getActiveTicketAssignments().get("Room C1"), nullValue());
+	}
+	
+	@Test
+	public void shouldNotChangePreviouslyReturnedAssignments() {
+		QueueTicketAssignments.updateTicketAssignment("Room D1", "D-001", "calling");
+		Map<String, TicketAssignment> snapshot = QueueTicketAssignments.getActiveTicketAssignments();
+		
+		QueueTicketAssignments.updateTicketAssignment("Room D1", "D-002", "calling");
+		QueueTicketAssignments.updateTicketAssignment("Room D2", "D-001", "serving");
+		
+		assertThat(snapshot.get("Room D1").getTicketNumber(), equalTo("D-001"));
+		assertThat(snapshot, not(hasKey("Room D2")));
+		assertThat(QueueTicketAssignments.getActiveTicketAssignments().get("Room D1").getTicketNumber(),
+		    equalTo("D-002"));
+	}
+}
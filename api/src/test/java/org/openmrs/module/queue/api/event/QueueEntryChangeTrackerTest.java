@@ -0,0 +1,114 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.event;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.queue.model.Queue;
+import org.openmrs.module.queue.model.QueueEntry;
+
+public class QueueEntryChangeTrackerTest {
+	
+	private QueueEntryChangeTracker tracker;
+	
+	private Queue queue1;
+	
+	private Queue queue2;
+	
+	@Before
+	public void setup() {
+		tracker = new QueueEntryChangeTracker();
+		queue1 = new Queue();
+		queue1.setQueueId(1);
+		queue2 = new Queue();
+		queue2.setQueueId(2);
+	}
+	
+	@Test
+	public void shouldIncrementVersionOfQueueOfChangedEntry() {
+		long queue1Version = tracker.getVersion(queue1);
+		long queue2Version = tracker.getVersion(queue2);
+		tracker.queueEntryChanged(queueEntry(queue1), QueueEntryEvent.Type.CREATED);
+		assertThat(tracker.getVersion(queue1), greaterThan(queue1Version));
+		assertThat(tracker.getVersion(queue2), equalTo(queue2Version));
+	}
+	
+	@Test
+	public void shouldPublishEventsToListeners() {
+		List<QueueEntryEvent> received = new ArrayList<>();
+		Consumer<QueueEntryEvent> listener = received::add;
+		tracker.addListener(listener);
+		QueueEntry queueEntry = queueEntry(queue1);
+		tracker.queueEntryChanged(queueEntry, QueueEntryEvent.Type.CREATED);
+		tracker.queueEntryChanged(queueEntry, QueueEntryEvent.Type.ENDED);
+		tracker.removeListener(listener);
+		tracker.queueEntryChanged(queueEntry, QueueEntryEvent.Type.VOIDED);
+		
+		assertThat(received, hasSize(2));
+		assertThat(received.get(0).getType(), is(QueueEntryEvent.Type.CREATED));
+		assertThat(received.get(0).getQueueEntryUuid(), is(queueEntry.getUuid()));
+		assertThat(received.get(0).getQueueUuid(), is(queue1.getUuid()));
+		assertThat(received.get(1).getType(), is(QueueEntryEvent.Type.ENDED));
+		assertThat(received.get(1).getId(), greaterThan(received.get(0).getId()));
+	}
+	
+	@Test
+	public void shouldGetEventsAfterGivenEventId() {
+		List<QueueEntryEvent> received = new ArrayList<>();
+		tracker.addListener(received::add);
+		tracker.queueEntryChanged(queueEntry(queue1), QueueEntryEvent.Type.CREATED);
+		tracker.queueEntryChanged(queueEntry(queue2), QueueEntryEvent.Type.CREATED);
+		tracker.queueEntryChanged(queueEntry(queue1), QueueEntryEvent.Type.VOIDED);
+		
+		List<QueueEntryEvent> events = tracker.getEventsAfter(received.get(0).getId());
+		assertThat(events, hasSize(2));
+		assertThat(events.get(0).getId(), is(received.get(1).getId()));
+		assertThat(events.get(1).getId(), is(received.get(2).getId()));
+		assertThat(tracker.getEventsAfter(received.get(2).getId()), hasSize(0));
+	}
+	
+	@Test
+	public void shouldReturnNullIfEventsAfterGivenEventIdAreNoLongerAvailable() {
+		List<QueueEntryEvent> received = new ArrayList<>();
+		tracker.addListener(received::add);
+		for (int i = 0; i <= QueueEntryChangeTracker.MAX_RECENT_EVENTS; i++) {
+			tracker.queueEntryChanged(queueEntry(queue1), QueueEntryEvent.Type.CREATED);
+		}
+		assertThat(tracker.getEventsAfter(received.get(0).getId() - 1), nullValue());
+		assertThat(tracker.getEventsAfter(received.get(0).getId()), hasSize(QueueEntryChangeTracker.MAX_RECENT_EVENTS));
+		assertThat(tracker.getEventsAfter(-1), nullValue());
+	}
+	
+	@Test
+	public void shouldIgnoreEntriesWithoutSavedQueue() {
+		List<QueueEntryEvent> received = new ArrayList<>();
+		tracker.addListener(received::add);
+		tracker.queueEntryChanged(queueEntry(new Queue()), QueueEntryEvent.Type.CREATED);
+		tracker.queueEntryChanged(new QueueEntry(), QueueEntryEvent.Type.CREATED);
+		assertThat(received, hasSize(0));
+	}
+	
+	private QueueEntry queueEntry(Queue queue) {
+		QueueEntry queueEntry = new QueueEntry();
+		queueEntry.setQueue(queue);
+		return queueEntry;
+	}
+}
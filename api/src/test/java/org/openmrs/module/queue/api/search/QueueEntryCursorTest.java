@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.search;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.openmrs.module.queue.model.QueueEntry;
+import org.openmrs.module.queue.utils.QueueUtils;
+
+public class QueueEntryCursorTest {
+	
+	@Test
+	public void shouldRoundTripCursorThroughToken() {
+		QueueEntry queueEntry = new QueueEntry();
+		queueEntry.setQueueEntryId(12);
+		queueEntry.setSortWeight(10.5);
+		queueEntry.setStartedAt(QueueUtils.parseDate("2023-08-01 10:00:00"));
+		queueEntry.setDateCreated(new Date(QueueUtils.parseDate("2023-08-01 09:59:00").getTime() + 123));
+		QueueEntryCursor cursor = QueueEntryCursor.of(queueEntry);
+		QueueEntryCursor parsed = QueueEntryCursor.fromToken(cursor.toToken());
+		assertThat(parsed, equalTo(cursor));
+		assertThat(parsed.getQueueEntryId(), is(12));
+		assertThat(parsed.getDateCreated(), equalTo(queueEntry.getDateCreated()));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldFailToParseInvalidToken() {
+		QueueEntryCursor.fromToken("not a token");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldFailToParseTokenWithMissingValues() {
+		QueueEntryCursor.fromToken("MTAuMDox");
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.search;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.junit.Test;
+
+public class QueueEntryWaitTimeStatisticsTest {
+	
+	@Test
+	public void shouldComputeStatisticsOfWaitTimes() {
+		QueueEntryWaitTimeStatistics statistics = new QueueEntryWaitTimeStatistics(new long[] { 40, 10, 30, 20 });
+		assertThat(statistics.getCount(), equalTo(4));
+		assertThat(statistics.getAverageWaitTime(), equalTo(25.0));
+		assertThat(statistics.getMinWaitTime(), equalTo(10L));
+		assertThat(statistics.getMaxWaitTime(), equalTo(40L));
+		assertThat(statistics.getPercentileWaitTime(0), equalTo(10.0));
+		assertThat(statistics.getPercentileWaitTime(50), equalTo(25.0));
+		assertThat(statistics.getPercentileWaitTime(90), closeTo(37.0, 0.0001));
+		assertThat(statistics.getPercentileWaitTime(100), equalTo(40.0));
+	}
+	
+	@Test
+	public void shouldReturnEmptyStatisticsIfThereAreNoWaitTimes() {
+		QueueEntryWaitTimeStatistics statistics = new QueueEntryWaitTimeStatistics(new long[0]);
+		assertThat(statistics.getCount(), equalTo(0));
+		assertThat(statistics.getAverageWaitTime(), equalTo(0.0));
+		assertThat(statistics.getMinWaitTime(), nullValue());
+		assertThat(statistics.getMaxWaitTime(), nullValue());
+		assertThat(statistics.getPercentileWaitTime(50), nullValue());
+	}
+	
+	@Test
+	public void shouldComputeStatisticsOfAggregatedWaitTimes() {
+		QueueEntryWaitTimeStatistics statistics = new QueueEntryWaitTimeStatistics(4, 100, 10L, 40L);
+		assertThat(statistics.getCount(), equalTo(4));
+		assertThat(statistics.getAverageWaitTime(), equalTo(25.0));
+		assertThat(statistics.getMinWaitTime(), equalTo(10L));
+		assertThat(statistics.getMaxWaitTime(), equalTo(40L));
+		assertThat(statistics.hasWaitTimes(), is(false));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void shouldFailToComputePercentileOfAggregatedWaitTimes() {
+		new QueueEntryWaitTimeStatistics(1, 10, 10L, 10L).getPercentileWaitTime(50);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldFailForPercentileOutOfRange() {
+		new QueueEntryWaitTimeStatistics(new long[] { 10 }).getPercentileWaitTime(101);
+	}
+}
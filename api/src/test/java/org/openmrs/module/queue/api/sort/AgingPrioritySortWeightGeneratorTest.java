@@ -0,0 +1,98 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.sort;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.Concept;
+import org.openmrs.GlobalProperty;
+import org.openmrs.module.queue.QueueModuleConstants;
+import org.openmrs.module.queue.api.ConceptSetMembers;
+import org.openmrs.module.queue.api.QueueServicesWrapper;
+import org.openmrs.module.queue.model.Queue;
+import org.openmrs.module.queue.model.QueueEntry;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AgingPrioritySortWeightGeneratorTest {
+	
+	private static final long MINUTE = 60 * 1000;
+	
+	@Mock
+	private QueueServicesWrapper services;
+	
+	Concept normal = new Concept(1);
+	
+	Concept urgent = new Concept(2);
+	
+	Queue queue;
+	
+	AgingPrioritySortWeightGenerator generator;
+	
+	@Before
+	public void setup() {
+		queue = new Queue();
+		queue.setQueueId(1);
+		generator = new AgingPrioritySortWeightGenerator(services);
+	}
+	
+	@Test
+	public void shouldOrderEntriesThatHaveWaitedLongerThanAgingPeriodAheadOfHigherPriority() {
+		List<Concept> allowed = Arrays.asList(normal, urgent);
+		when(services.getAllowedPriorityMembers(queue)).thenReturn(new ConceptSetMembers(allowed));
+		when(services.getGlobalProperty(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES)).thenReturn("30");
+		long now = System.currentTimeMillis();
+		double urgentNow = generator.generateSortWeight(entry(urgent, now));
+		assertThat(generator.generateSortWeight(entry(normal, now)), lessThan(urgentNow));
+		assertThat(generator.generateSortWeight(entry(normal, now - 20 * MINUTE)), lessThan(urgentNow));
+		assertThat(generator.generateSortWeight(entry(normal, now - 40 * MINUTE)), greaterThan(urgentNow));
+	}
+	
+	@Test
+	public void shouldUseDefaultAgingPeriodIfGpIsNotValid() {
+		when(services.getGlobalProperty(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES)).thenReturn("invalid");
+		assertThat(generator.getAgingMinutes(), equalTo(AgingPrioritySortWeightGenerator.DEFAULT_AGING_MINUTES));
+	}
+	
+	@Test
+	public void shouldTakeAgingPeriodFromGpWhenItChanges() {
+		when(services.getGlobalProperty(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES)).thenReturn("30");
+		assertThat(generator.getAgingMinutes(), equalTo(30.0));
+		assertThat(generator.getAgingMinutes(), equalTo(30.0));
+		verify(services, times(1)).getGlobalProperty(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES);
+		// The new value is used without reading the GP again, as the change may not be committed yet
+		generator.globalPropertyChanged(new GlobalProperty(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES, "15"));
+		assertThat(generator.getAgingMinutes(), equalTo(15.0));
+		generator.globalPropertyDeleted(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES);
+		assertThat(generator.getAgingMinutes(), equalTo(AgingPrioritySortWeightGenerator.DEFAULT_AGING_MINUTES));
+	}
+	
+	private QueueEntry entry(Concept priority, long startedAt) {
+		QueueEntry queueEntry = new QueueEntry();
+		queueEntry.setQueue(queue);
+		queueEntry.setPriority(priority);
+		queueEntry.setStartedAt(new Date(startedAt));
+		return queueEntry;
+	}
+}
@@ -23,6 +23,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.openmrs.Concept;
+import org.openmrs.module.queue.api.ConceptSetMembers;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.model.QueueEntry;
 
@@ -32,14 +33,11 @@ public class BasicPrioritySortWeightGeneratorTest {
 	@Mock
 	private QueueServicesWrapper services;
 	
-	@Mock
-	Concept concept1;
+	Concept concept1 = new Concept();
 	
-	@Mock
-	Concept concept2;
+	Concept concept2 = new Concept();
 	
-	@Mock
-	Concept concept3;
+	Concept concept3 = new Concept();
 	
 	QueueEntry queueEntry;
 	
@@ -48,7 +46,8 @@ public class BasicPrioritySortWeightGeneratorTest {
 	@Before
 	public void setupMocks() {
 		MockitoAnnotations.openMocks(this);
-		when(services.getAllowedPriorities(any())).thenReturn(Arrays.asList(concept1, concept2, concept3));
+		when(services.getAllowedPriorityMembers(any()))
+		        .thenReturn(new ConceptSetMembers(Arrays.asList(concept1, concept2, concept3)));
 		queueEntry = new QueueEntry();
 		generator = new BasicPrioritySortWeightGenerator(services);
 	}
@@ -0,0 +1,91 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.api.sort;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.queue.QueueModuleConstants;
+import org.openmrs.module.queue.api.QueueEntryService;
+import org.openmrs.module.queue.utils.PrivilegeConstants;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SortWeightGeneratorListenerTest {
+	
+	@Mock
+	private QueueEntryService queueEntryService;
+	
+	@Mock
+	private AgingPrioritySortWeightGenerator agingPrioritySortWeightGenerator;
+	
+	private UserContext userContext;
+	
+	private SortWeightGeneratorListener listener;
+	
+	@Before
+	public void setup() {
+		userContext = mock(UserContext.class);
+		Context.setUserContext(userContext);
+		listener = new SortWeightGeneratorListener(queueEntryService, agingPrioritySortWeightGenerator);
+	}
+	
+	@After
+	public void tearDown() {
+		Context.setUserContext(null);
+	}
+	
+	@Test
+	public void shouldSupportSortWeightGeneratorAndAgingPeriodGps() {
+		assertThat(listener.supportsPropertyName(QueueModuleConstants.QUEUE_SORT_WEIGHT_GENERATOR), is(true));
+		assertThat(listener.supportsPropertyName(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES), is(true));
+		assertThat(listener.supportsPropertyName(QueueModuleConstants.QUEUE_PRIORITY), is(false));
+	}
+	
+	@Test
+	public void shouldSwitchGeneratorAndRegenerateSortWeightsWhenGeneratorChanges() {
+		listener.globalPropertyChanged(
+		    new GlobalProperty(QueueModuleConstants.QUEUE_SORT_WEIGHT_GENERATOR, "agingPrioritySortWeightGenerator"));
+		InOrder inOrder = inOrder(userContext, queueEntryService);
+		inOrder.verify(userContext).addProxyPrivilege(PrivilegeConstants.MANAGE_QUEUE_ENTRIES);
+		inOrder.verify(queueEntryService).setSortWeightGenerator(null);
+		inOrder.verify(queueEntryService).regenerateSortWeights();
+		inOrder.verify(userContext).removeProxyPrivilege(PrivilegeConstants.MANAGE_QUEUE_ENTRIES);
+		verify(agingPrioritySortWeightGenerator, never()).globalPropertyChanged(any());
+	}
+	
+	@Test
+	public void shouldUpdateAgingPeriodBeforeRegeneratingSortWeights() {
+		GlobalProperty gp = new GlobalProperty(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES, "30");
+		listener.globalPropertyChanged(gp);
+		InOrder inOrder = inOrder(agingPrioritySortWeightGenerator, queueEntryService);
+		inOrder.verify(agingPrioritySortWeightGenerator).globalPropertyChanged(gp);
+		inOrder.verify(queueEntryService).regenerateSortWeights();
+		
+		listener.globalPropertyDeleted(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES);
+		inOrder.verify(agingPrioritySortWeightGenerator)
+		        .globalPropertyDeleted(QueueModuleConstants.QUEUE_PRIORITY_AGING_MINUTES);
+		inOrder.verify(queueEntryService).regenerateSortWeights();
+	}
+}
@@ -22,21 +22,38 @@ import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.openmrs.Visit;
+import org.openmrs.api.ValidationException;
 import org.openmrs.module.queue.model.QueueEntry;
 
 public class AutoCloseVisitQueueEntryTaskTest {
 	
 	final List<QueueEntry> queueEntries = new ArrayList<>();
 	
+	final List<Integer> unsavableQueueEntryIds = new ArrayList<>();
+	
 	class TestAutoCloseVisitEntryTask extends AutoCloseVisitQueueEntryTask {
 		
+		int queries = 0;
+		
 		@Override
-		protected List<QueueEntry> getActiveVisitQueueEntries() {
-			return queueEntries.stream().filter(e -> e.getEndedAt() == null).collect(Collectors.toList());
+		protected List<QueueEntry> getActiveQueueEntriesWithStoppedVisits(Integer afterQueueEntryId, int maxResults) {
+			queries++;
+			return queueEntries.stream().filter(e -> e.getEndedAt() == null)
+			        .filter(e -> e.getVisit().getStopDatetime() != null)
+			        .filter(e -> afterQueueEntryId == null || e.getQueueEntryId() > afterQueueEntryId).limit(maxResults)
+			        .collect(Collectors.toList());
 		}
 		
 		@Override
 		protected void saveQueueEntry(QueueEntry queueEntry) {
+			if (unsavableQueueEntryIds.contains(queueEntry.getQueueEntryId())) {
+				queueEntry.setEndedAt(null);
+				throw new ValidationException("Unable to save queue entry");
+			}
+		}
+		
+		@Override
+		protected void clearSession() {
 			// Do nothing
 		}
 	}
@@ -47,6 +64,7 @@ public class AutoCloseVisitQueueEntryTaskTest {
 		Visit visit1 = new Visit();
 		visit1.setStartDatetime(getDate("2020-01-01 10:00"));
 		QueueEntry queueEntry1 = new QueueEntry();
+		queueEntry1.setQueueEntryId(1);
 		queueEntry1.setStartedAt(getDate("2020-01-01 10:10"));
 		queueEntry1.setVisit(visit1);
 		queueEntries.add(queueEntry1);
@@ -54,6 +72,7 @@ public class AutoCloseVisitQueueEntryTaskTest {
 		Visit visit2 = new Visit();
 		visit2.setStartDatetime(getDate("2021-01-01 10:00"));
 		QueueEntry queueEntry2 = new QueueEntry();
+		queueEntry2.setQueueEntryId(2);
 		queueEntry2.setStartedAt(getDate("2021-01-01 10:20"));
 		queueEntry2.setVisit(visit2);
 		queueEntries.add(queueEntry2);
@@ -74,6 +93,30 @@ public class AutoCloseVisitQueueEntryTaskTest {
 		assertThat(queueEntry2.getEndedAt(), equalTo(visit2.getStopDatetime()));
 	}
 	
+	@Test
+	public void shouldProcessQueueEntriesInBatchesAndSkipThoseThatCannotBeClosed() throws Exception {
+		int numEntries = AutoCloseVisitQueueEntryTask.BATCH_SIZE * 2 + 1;
+		Visit visit = new Visit();
+		visit.setStartDatetime(getDate("2020-01-01 10:00"));
+		visit.setStopDatetime(getDate("2020-01-01 23:15"));
+		for (int i = 1; i <= numEntries; i++) {
+			QueueEntry queueEntry = new QueueEntry();
+			queueEntry.setQueueEntryId(i);
+			queueEntry.setStartedAt(getDate("2020-01-01 10:10"));
+			queueEntry.setVisit(visit);
+			queueEntries.add(queueEntry);
+		}
+		unsavableQueueEntryIds.add(1);
+		
+		TestAutoCloseVisitEntryTask task = new TestAutoCloseVisitEntryTask();
+		task.run();
+		assertThat(task.queries, equalTo(3));
+		assertThat(queueEntries.get(0).getEndedAt(), nullValue());
+		for (QueueEntry queueEntry : queueEntries.subList(1, numEntries)) {
+			assertThat(queueEntry.getEndedAt(), equalTo(visit.getStopDatetime()));
+		}
+	}
+	
 	Date getDate(String dateStr) throws Exception {
 		DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm");
 		return df.parse(dateStr);
@@ -12,9 +12,12 @@ package org.openmrs.module.queue.utils;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 
 import org.junit.Test;
+import org.openmrs.module.queue.model.QueueEntry;
 
 public class QueueUtilsTest {
 	
@@ -52,4 +55,23 @@ public class QueueUtilsTest {
 		assertThat(QueueUtils.datesOverlap(AUG_3, AUG_4, AUG_1, AUG_2), is(false)); // one after two
 		assertThat(QueueUtils.datesOverlap(AUG_1, AUG_2, AUG_1, AUG_3), is(true)); // one starts when two starts
 	}
+	
+	@Test
+	@SuppressWarnings("deprecation")
+	public void shouldComputeAverageWaitTimeOfEndedEntries() {
+		assertThat(QueueUtils.computeAverageWaitTimeInMinutes(null), is(0.0));
+		assertThat(QueueUtils.computeAverageWaitTimeInMinutes(Collections.emptyList()), is(0.0));
+		QueueEntry oneDay = queueEntry(AUG_1, AUG_2);
+		QueueEntry twoDays = queueEntry(AUG_2, AUG_4);
+		QueueEntry notEnded = queueEntry(AUG_3, NULL);
+		assertThat(QueueUtils.computeAverageWaitTimeInMinutes(Arrays.asList(oneDay, twoDays, notEnded)), is(2160.0));
+		assertThat(QueueUtils.computeAverageWaitTimeInMinutes(Collections.singletonList(notEnded)), is(0.0));
+	}
+	
+	private QueueEntry queueEntry(Date startedAt, Date endedAt) {
+		QueueEntry queueEntry = new QueueEntry();
+		queueEntry.setStartedAt(startedAt);
+		queueEntry.setEndedAt(endedAt);
+		return queueEntry;
+	}
 }
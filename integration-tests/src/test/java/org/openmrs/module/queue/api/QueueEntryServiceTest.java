@@ -17,25 +17,32 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.time.DateUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Concept;
 import org.openmrs.Patient;
+import org.openmrs.Provider;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.ValidationException;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.queue.SpringTestConfiguration;
+import org.openmrs.module.queue.api.search.QueueEntryReference;
 import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
 import org.openmrs.module.queue.model.QueueEntryTransition;
+import org.openmrs.module.queue.model.QueueEntryTransitionResult;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.util.AopTestUtils;
 
 @ContextConfiguration(classes = SpringTestConfiguration.class, inheritLocations = false)
 public class QueueEntryServiceTest extends BaseModuleContextSensitiveTest {
@@ -117,4 +124,146 @@ public class QueueEntryServiceTest extends BaseModuleContextSensitiveTest {
 		queueEntryService.transitionQueueEntry(transition);
 		assertThat(queueEntryService.getQueueEntryById(2).get().getEndedAt(), is(notNullValue()));
 	}
+	
+	@Test
+	public void transitionQueueEntriesShouldReportOutcomeOfEachTransition() {
+		Date transitionDate = new Date();
+		QueueEntryTransition transition = new QueueEntryTransition();
+		transition.setQueueEntryToTransition(queueEntryService.getQueueEntryById(2).get());
+		transition.setTransitionDate(transitionDate);
+		QueueEntryTransition alreadyEnded = new QueueEntryTransition();
+		alreadyEnded.setQueueEntryToTransition(queueEntryService.getQueueEntryById(1).get());
+		alreadyEnded.setTransitionDate(transitionDate);
+		// Entry 3 is for the same patient, so moving it to the queue of entry 2 duplicates the first transition
+		QueueEntryTransition duplicate = new QueueEntryTransition();
+		duplicate.setQueueEntryToTransition(queueEntryService.getQueueEntryById(3).get());
+		duplicate.setNewQueue(queueService.getQueueById(2).get());
+		duplicate.setTransitionDate(transitionDate);
+		Integer duplicateVersion = duplicate.getQueueEntryToTransition().getVersion();
+		
+		List<QueueEntryTransitionResult> results = queueEntryService
+		        .transitionQueueEntries(Arrays.asList(transition, alreadyEnded, duplicate));
+		assertThat(results.size(), is(3));
+		assertThat(results.get(0).isSuccessful(), is(true));
+		assertThat(results.get(0).getNewQueueEntry().getId(), is(notNullValue()));
+		assertThat(results.get(0).getNewQueueEntry().getQueueComingFrom().getId(), is(2));
+		assertThat(results.get(1).isSuccessful(), is(false));
+		assertThat(results.get(1).getError(), containsString("already ended"));
+		assertThat(results.get(2).isSuccessful(), is(false));
+		assertThat(results.get(2).getError(), containsString("already in this queue"));
+		
+		assertThat(queueEntryService.getQueueEntryById(2).get().getEndedAt(), is(notNullValue()));
+		assertThat(queueEntryService.getQueueEntryById(3).get().getEndedAt(), is(nullValue()));
+		// The entry of a failed transition is not ended and re-opened, so it is not updated at all
+		assertThat(queueEntryService.getQueueEntryById(3).get().getVersion(), is(duplicateVersion));
+	}
+	
+	@Test
+	public void closeQueueEntriesShouldEndReferencedActiveEntries() {
+		// Called on the target rather than the proxy, so that the chunk is closed in the transaction of the
+		// test instead of a new one that cannot see the test data
+		QueueEntryService target = AopTestUtils.getTargetObject(queueEntryService);
+		QueueEntry activeQueueEntry = queueEntryService.getQueueEntryById(2).get();
+		QueueEntry endedQueueEntry = queueEntryService.getQueueEntryById(1).get();
+		Date endedAt = new Date();
+		
+		int count = target.closeQueueEntries(
+		    Arrays.asList(QueueEntryReference.of(activeQueueEntry), QueueEntryReference.of(endedQueueEntry)), endedAt);
+		assertThat(count, is(1));
+		assertThat(queueEntryService.getQueueEntryById(2).get().getEndedAt(), is(notNullValue()));
+		assertThat(queueEntryService.getQueueEntryById(2).get() == activeQueueEntry, is(false));
+		assertThat(queueEntryService.getQueueEntryById(3).get().getEndedAt(), is(nullValue()));
+	}
+	
+	@Test
+	public void getPreviousQueueEntriesShouldResolvePreviousEntriesOfAllGivenEntries() {
+		QueueEntry queueEntry = queueEntryService.getQueueEntryById(2).get();
+		QueueEntryTransition transition = new QueueEntryTransition();
+		transition.setQueueEntryToTransition(queueEntry);
+		transition.setTransitionDate(new Date());
+		QueueEntry newQueueEntry = queueEntryService.transitionQueueEntry(transition);
+		
+		List<QueueEntry> queueEntries = Arrays.asList(queueEntryService.getQueueEntryById(1).get(),
+		    queueEntryService.getQueueEntryById(2).get(), queueEntryService.getQueueEntryById(3).get(), newQueueEntry);
+		Map<Integer, QueueEntry> previousQueueEntries = queueEntryService.getPreviousQueueEntries(queueEntries);
+		assertThat(previousQueueEntries.size(), is(4));
+		assertThat(previousQueueEntries.get(1), is(nullValue()));
+		assertThat(previousQueueEntries.get(2).getQueueEntryId(), is(1));
+		assertThat(previousQueueEntries.get(3), is(nullValue()));
+		assertThat(previousQueueEntries.get(newQueueEntry.getQueueEntryId()).getQueueEntryId(), is(2));
+		for (QueueEntry entry : queueEntries) {
+			assertThat(previousQueueEntries.get(entry.getQueueEntryId()),
+			    is(queueEntryService.getPreviousQueueEntry(entry)));
+		}
+	}
+	
+	@Test
+	public void transitionQueueEntryShouldLinkNewEntryToTransitionedEntry() {
+		QueueEntryTransition transition = new QueueEntryTransition();
+		transition.setQueueEntryToTransition(queueEntryService.getQueueEntryById(2).get());
+		transition.setTransitionDate(new Date());
+		Integer newQueueEntryId = queueEntryService.transitionQueueEntry(transition).getQueueEntryId();
+		Context.flushSession();
+		Context.clearSession();
+		
+		QueueEntry newQueueEntry = queueEntryService.getQueueEntryById(newQueueEntryId).get();
+		assertThat(newQueueEntry.getPreviousQueueEntry().getQueueEntryId(), is(2));
+		assertThat(queueEntryService.getPreviousQueueEntry(newQueueEntry).getQueueEntryId(), is(2));
+		QueueEntry reopened = queueEntryService.undoTransition(newQueueEntry);
+		assertThat(reopened.getQueueEntryId(), is(2));
+		assertThat(reopened.getEndedAt(), is(nullValue()));
+	}
+	
+	@Test
+	public void purgeQueueEntryShouldUnlinkEntryTransitionedFromIt() {
+		QueueEntryTransition transition = new QueueEntryTransition();
+		transition.setQueueEntryToTransition(queueEntryService.getQueueEntryById(2).get());
+		transition.setTransitionDate(new Date());
+		Integer newQueueEntryId = queueEntryService.transitionQueueEntry(transition).getQueueEntryId();
+		Context.flushSession();
+		Context.clearSession();
+		
+		queueEntryService.purgeQueueEntry(queueEntryService.getQueueEntryById(2).get());
+		Context.flushSession();
+		Context.clearSession();
+		
+		assertThat(queueEntryService.getQueueEntryById(2).isPresent(), is(false));
+		QueueEntry newQueueEntry = queueEntryService.getQueueEntryById(newQueueEntryId).get();
+		assertThat(newQueueEntry.getPreviousQueueEntry(), is(nullValue()));
+	}
+	
+	@Test
+	public void getQueueEntryJourneyShouldReturnEntriesInOrderStarted() {
+		QueueEntry queueEntry = queueEntryService.getQueueEntryById(2).get();
+		List<QueueEntry> journey = queueEntryService.getQueueEntryJourney(queueEntry.getVisit());
+		assertThat(journey.size(), is(2));
+		assertThat(journey.get(0).getQueueEntryId(), is(1));
+		assertThat(journey.get(1).getQueueEntryId(), is(2));
+		
+		journey = queueEntryService.getQueueEntryJourney(queueEntry.getPatient(), queueEntry.getStartedAt());
+		assertThat(journey.size(), is(2));
+		assertThat(journey.get(0).getQueueEntryId(), is(1));
+		assertThat(journey.get(1).getQueueEntryId(), is(2));
+		Date nextDay = DateUtils.addDays(queueEntry.getStartedAt(), 1);
+		assertThat(queueEntryService.getQueueEntryJourney(queueEntry.getPatient(), nextDay).get(0).getQueueEntryId(),
+		    is(3));
+	}
+	
+	@Test
+	public void callNextShouldTransitionEntryWithHighestSortWeightThatIsWaiting() {
+		Concept waiting = conceptService.getConcept(3001);
+		Concept inService = conceptService.getConcept(3002);
+		Provider provider = Context.getProviderService().getProvider(1);
+		Queue queue = queueService.getQueueById(3).get();
+		QueueEntry queueEntry = queueEntryService.getQueueEntryById(3).get();
+		queueEntry.setStatus(waiting);
+		queueEntryService.saveQueueEntry(queueEntry);
+		
+		QueueEntry calledQueueEntry = queueEntryService.callNext(queue, waiting, inService, provider);
+		assertThat(calledQueueEntry.getPreviousQueueEntry().getQueueEntryId(), is(3));
+		assertThat(calledQueueEntry.getStatus(), is(inService));
+		assertThat(calledQueueEntry.getProviderWaitingFor(), is(provider));
+		assertThat(queueEntryService.getQueueEntryById(3).get().getEndedAt(), is(notNullValue()));
+		assertThat(queueEntryService.callNext(queue, waiting, inService, provider), is(nullValue()));
+	}
 }
@@ -83,7 +83,8 @@ public class VisitWithQueueEntriesSaveHandlerTest extends BaseModuleContextSensi
 		visit = visitService.saveVisit(visit);
 		queueEntry = queueEntryService.getQueueEntryById(queueEntry.getId()).get();
 		assertThat(visit.getStopDatetime(), equalTo(stopDate));
-		assertThat(queueEntry.getEndedAt(), equalTo(stopDate));
+		// The entry is ended with a bulk update, so it is reloaded with a timestamp rather than the same date
+		assertThat(queueEntry.getEndedAt().getTime(), equalTo(stopDate.getTime()));
 	}
 	
 	@Test
@@ -111,7 +112,15 @@ public class VisitWithQueueEntriesSaveHandlerTest extends BaseModuleContextSensi
 		assertNotNull(visit.getVoidedBy());
 		assertTrue(queueEntry.getVoided());
 		assertThat(queueEntry.getVoidReason(), equalTo(voidReason));
-		assertThat(queueEntry.getDateVoided(), equalTo(visit.getDateVoided()));
+		assertThat(queueEntry.getDateVoided().getTime(), equalTo(visit.getDateVoided().getTime()));
 		assertThat(queueEntry.getVoidedBy(), equalTo(visit.getVoidedBy()));
 	}
+	
+	@Test
+	public void shouldNotEndQueueEntriesThatStartedAfterVisitIsStopped() {
+		visit.setStopDatetime(DateUtils.addMinutes(queueEntry.getStartedAt(), -1));
+		visitService.saveVisit(visit);
+		queueEntry = queueEntryService.getQueueEntryById(queueEntry.getId()).get();
+		assertNull(queueEntry.getEndedAt());
+	}
 }
@@ -156,6 +156,31 @@ public class QueueDaoTest extends BaseModuleContextSensitiveTest {
 		assertThat(result.isPresent(), is(false));
 	}
 	
+	@Test
+	public void shouldNotGetQueueRetiredAfterItWasLookedUp() {
+		assertThat(dao.get(QUEUE_UUID).isPresent(), is(true));
+		Queue queue = dao.get(QUEUE_UUID).get();
+		queue.setRetired(true);
+		dao.createOrUpdate(queue);
+		assertThat(dao.get(QUEUE_UUID).isPresent(), is(false));
+		assertThat(dao.findAll(), hasSize(2));
+	}
+	
+	@Test
+	public void shouldGetQueuesByUuidsExcludingRetired() {
+		List<Queue> queues = dao.getObjectsByUuids(Queue.class,
+		    Arrays.asList(QUEUE_UUID, RETIRED_QUEUE_UUID, EMPTY_QUEUE_UUID, "missing-queue-uuid"), false);
+		assertThat(queues, hasSize(2));
+		assertThat(dao.getObjectsByUuids(Queue.class, Collections.singletonList(RETIRED_QUEUE_UUID), true), hasSize(1));
+	}
+	
+	@Test
+	public void shouldGetConceptsByUuids() {
+		List<Concept> concepts = dao.getObjectsByUuids(Concept.class, Collections.singletonList(CONCEPT_UUID), true);
+		assertThat(concepts, hasSize(1));
+		assertThat(concepts.get(0).getUuid(), is(CONCEPT_UUID));
+	}
+	
 	@Test
 	public void shouldGetQueuesByLocation() {
 		Location location1 = services.getLocationService().getLocation(1);
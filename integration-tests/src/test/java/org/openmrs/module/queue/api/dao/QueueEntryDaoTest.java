@@ -16,6 +16,7 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 
+import java.sql.Statement;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -23,6 +24,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
+import org.hibernate.Hibernate;
 import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Concept;
@@ -33,13 +35,19 @@ import org.openmrs.Visit;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.queue.SpringTestConfiguration;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
+import org.openmrs.module.queue.api.search.QueueEntryCursor;
+import org.openmrs.module.queue.api.search.QueueEntryFetchPlan;
+import org.openmrs.module.queue.api.search.QueueEntryReference;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.api.search.QueueEntrySummary;
+import org.openmrs.module.queue.api.search.QueueEntryWaitTimeStatistics;
 import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
 import org.openmrs.module.queue.utils.QueueUtils;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ContextConfiguration;
 
 @ContextConfiguration(classes = SpringTestConfiguration.class, inheritLocations = false)
@@ -218,6 +226,23 @@ public class QueueEntryDaoTest extends BaseModuleContextSensitiveTest {
 		assertResults(criteria, 2, 3, 4, 10);
 	}
 	
+	@Test
+	public void shouldGetQueueEntriesWithAssociationsOfFetchPlan() {
+		criteria.setFetchPlan(QueueEntryFetchPlan.FULL);
+		assertResults(criteria, 1, 2, 3, 4);
+		Context.clearSession();
+		List<QueueEntry> queueEntries = dao.getQueueEntries(criteria);
+		assertThat(queueEntries, hasSize(4));
+		for (QueueEntry queueEntry : queueEntries) {
+			assertThat(Hibernate.isInitialized(queueEntry.getPatient()), is(true));
+			assertThat(Hibernate.isInitialized(queueEntry.getPatient().getNames()), is(true));
+			assertThat(Hibernate.isInitialized(queueEntry.getPatient().getIdentifiers()), is(true));
+			assertThat(Hibernate.isInitialized(queueEntry.getPatient().getAddresses()), is(true));
+			assertThat(Hibernate.isInitialized(queueEntry.getStatus()), is(true));
+			assertThat(Hibernate.isInitialized(queueEntry.getStatus().getNames()), is(true));
+		}
+	}
+	
 	@Test
 	public void shouldSearchAndCountQueueEntriesByQueueLocation() {
 		Location location1 = services.getLocationService().getLocation(1);
@@ -409,35 +434,157 @@ public class QueueEntryDaoTest extends BaseModuleContextSensitiveTest {
 		assertResults(criteria, 2, 3);
 	}
 	
-	@Test(expected = IllegalArgumentException.class)
-	public void updateIfUnmodified_shouldRejectEndedAtBeforeStartedAt() {
-		QueueEntry queueEntry = dao.get(QUEUE_ENTRY_UUID).orElseThrow(IllegalStateException::new);
-		Date startedAt = queueEntry.getStartedAt();
-		queueEntry.setEndedAt(new Date(startedAt.getTime() - 1000L));
-		dao.updateIfUnmodified(queueEntry, queueEntry.getDateChanged());
+	@Test
+	// Ordered by sortWeight desc, then startedAt: 3 (20), 2 (10), 1 (0, 2022-02-02), 4 (0, 2022-03-02)
+	public void shouldLimitQueueEntriesByStartIndexAndLimit() {
+		criteria.setStartIndex(1);
+		criteria.setLimit(2);
+		assertResultIds(dao.getQueueEntries(criteria), 2, 1);
+		assertThat(dao.getCountOfQueueEntries(criteria).intValue(), equalTo(4));
+		criteria.setStartIndex(3);
+		assertResultIds(dao.getQueueEntries(criteria), 4);
 	}
 	
-	@Test(expected = IllegalArgumentException.class)
-	public void updateIfUnmodified_shouldRejectEndedAtEqualToStartedAt() {
-		QueueEntry queueEntry = dao.get(QUEUE_ENTRY_UUID).orElseThrow(IllegalStateException::new);
-		queueEntry.setEndedAt(new Date(queueEntry.getStartedAt().getTime()));
-		dao.updateIfUnmodified(queueEntry, queueEntry.getDateChanged());
+	@Test
+	public void shouldSeekToQueueEntriesAfterCursor() {
+		criteria.setLimit(2);
+		List<QueueEntry> firstPage = dao.getQueueEntries(criteria);
+		assertResultIds(firstPage, 3, 2);
+		criteria.setAfter(QueueEntryCursor.of(firstPage.get(1)));
+		List<QueueEntry> secondPage = dao.getQueueEntries(criteria);
+		assertResultIds(secondPage, 1, 4);
+		criteria.setAfter(QueueEntryCursor.of(secondPage.get(1)));
+		assertResultIds(dao.getQueueEntries(criteria));
+		assertThat(dao.getCountOfQueueEntries(criteria).intValue(), equalTo(4));
 	}
 	
 	@Test
-	public void updateIfUnmodified_shouldClearEndedAtWhenSetToNull() {
+	public void shouldSeekPastQueueEntriesWithEqualSortWeightAndStartedAt() {
+		QueueEntry queueEntry = dao.get(1).orElse(null);
+		assertThat(queueEntry, notNullValue());
+		criteria.setAfter(new QueueEntryCursor(0.0, queueEntry.getStartedAt(), queueEntry.getDateCreated(), 0));
+		assertResultIds(dao.getQueueEntries(criteria), 1, 4);
+		criteria.setAfter(QueueEntryCursor.of(queueEntry));
+		assertResultIds(dao.getQueueEntries(criteria), 4);
+	}
+	
+	@Test
+	// Only entries 1 (120 minutes) and 4 (121 minutes) have ended
+	public void shouldComputeWaitTimeStatisticsOfEndedQueueEntries() {
+		for (boolean includeWaitTimes : new boolean[] { true, false }) {
+			criteria = new QueueEntrySearchCriteria();
+			QueueEntryWaitTimeStatistics statistics = dao.getQueueEntryWaitTimeStatistics(criteria, includeWaitTimes);
+			assertThat(statistics.getCount(), equalTo(2));
+			assertThat(statistics.getAverageWaitTime(), equalTo(120.5));
+			assertThat(statistics.getMinWaitTime(), equalTo(120L));
+			assertThat(statistics.getMaxWaitTime(), equalTo(121L));
+			// The wait times are only aggregated by the database if these are not included
+			assertThat(statistics.hasWaitTimes(), is(includeWaitTimes));
+			criteria.setStartedOnOrAfter(date("2022-03-01 00:00:00"));
+			statistics = dao.getQueueEntryWaitTimeStatistics(criteria, includeWaitTimes);
+			assertThat(statistics.getCount(), equalTo(1));
+			assertThat(statistics.getAverageWaitTime(), equalTo(121.0));
+			criteria.setIsEnded(false);
+			statistics = dao.getQueueEntryWaitTimeStatistics(criteria, includeWaitTimes);
+			assertThat(statistics.getCount(), equalTo(0));
+			assertThat(statistics.getAverageWaitTime(), equalTo(0.0));
+			assertThat(statistics.getMinWaitTime(), nullValue());
+		}
+		assertThat(dao.getQueueEntryWaitTimeStatistics(new QueueEntrySearchCriteria(), true).getPercentileWaitTime(50),
+		    equalTo(120.5));
+	}
+	
+	@Test
+	public void flushSession_shouldIncrementVersionOfUpdatedQueueEntry() {
 		// Entry 1 has ended_at set; this mirrors what undoTransition does when re-opening a previous entry
 		QueueEntry queueEntry = dao.get(QUEUE_ENTRY_UUID).orElseThrow(IllegalStateException::new);
 		assertThat(queueEntry.getEndedAt(), notNullValue());
+		assertThat(queueEntry.getVersion(), equalTo(0));
 		
 		queueEntry.setEndedAt(null);
+		dao.flushSession();
+		Context.clearSession();
 		
-		// date_changed is null in the dataset, so expectedDateChanged is null
-		boolean updated = dao.updateIfUnmodified(queueEntry, queueEntry.getDateChanged());
-		
-		assertThat(updated, is(true));
 		QueueEntry reloaded = dao.get(QUEUE_ENTRY_UUID).orElseThrow(IllegalStateException::new);
 		assertThat(reloaded.getEndedAt(), nullValue());
+		assertThat(reloaded.getVersion(), equalTo(1));
+	}
+	
+	@Test
+	public void getQueueEntriesByUuids_shouldReturnQueueEntriesWithGivenUuids() {
+		List<QueueEntry> queueEntries = dao
+		        .getQueueEntriesByUuids(Arrays.asList(QUEUE_ENTRY_UUID, VOIDED_QUEUE_ENTRY_UUID, "unknown"));
+		assertThat(queueEntries.size(), equalTo(2));
+		assertThat(dao.getQueueEntriesByUuids(Collections.emptyList()).size(), equalTo(0));
+	}
+	
+	@Test
+	public void getPersistedQueue_shouldReturnQueueThatEntryIsInInDatabase() {
+		QueueEntry queueEntry = dao.get(1).orElseThrow(IllegalStateException::new);
+		assertThat(queueEntry.getQueue().getQueueId(), equalTo(1));
+		queueEntry.setQueue(services.getQueueService().getQueueById(2).orElseThrow(IllegalStateException::new));
+		assertThat(dao.getPersistedQueue(queueEntry).getQueueId(), equalTo(1));
+		
+		Context.evictFromSession(queueEntry);
+		assertThat(dao.getPersistedQueue(queueEntry).getQueueId(), equalTo(1));
+		assertThat(dao.getPersistedQueue(new QueueEntry()), nullValue());
+	}
+	
+	@Test(expected = ObjectOptimisticLockingFailureException.class)
+	public void flushSession_shouldRejectQueueEntryModifiedByAnotherTransaction() throws Exception {
+		QueueEntry queueEntry = dao.get(QUEUE_ENTRY_UUID).orElseThrow(IllegalStateException::new);
+		try (Statement statement = getConnection().createStatement()) {
+			statement.executeUpdate("update queue_entry set version = version + 1 where queue_entry_id = 1");
+		}
+		queueEntry.setEndedAt(null);
+		dao.flushSession();
+	}
+	
+	@Test
+	public void getQueueEntryReferences_shouldReturnChunksOfMatchingEntriesAfterGivenId() {
+		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
+		criteria.setIsEnded(false);
+		// The voided entry 10 is not included
+		List<QueueEntryReference> references = dao.getQueueEntryReferences(criteria, null, 1);
+		assertThat(references, hasSize(1));
+		assertThat(references.get(0).getQueueEntryId(), equalTo(2));
+		references = dao.getQueueEntryReferences(criteria, 2, 1);
+		assertThat(references, hasSize(1));
+		assertThat(references.get(0).getQueueEntryId(), equalTo(3));
+		assertThat(dao.getQueueEntryReferences(criteria, 3, 1), hasSize(0));
+		
+		criteria.setQueues(Collections.singletonList(
+		    services.getQueueService().getQueueById(3).orElseThrow(IllegalStateException::new)));
+		references = dao.getQueueEntryReferences(criteria, null, 10);
+		assertThat(references, hasSize(1));
+		assertThat(references.get(0).getQueueEntryId(), equalTo(3));
+	}
+	
+	@Test
+	public void endQueueEntries_shouldIncrementVersionOfEndedQueueEntries() {
+		QueueEntry activeQueueEntry = dao.get(2).orElseThrow(IllegalStateException::new);
+		assertThat(activeQueueEntry.getEndedAt(), nullValue());
+		
+		int ended = dao.endQueueEntries(Arrays.asList(1, 2), new Date(), Context.getAuthenticatedUser());
+		
+		assertThat(ended, equalTo(1));
+		assertThat(dao.get(1).orElseThrow(IllegalStateException::new).getVersion(), equalTo(0));
+		assertThat(dao.get(2).orElseThrow(IllegalStateException::new).getVersion(), equalTo(1));
+	}
+	
+	@Test
+	public void incrementTicketSequence_shouldIncrementSequenceCreatedForQueueLocationAndDay() {
+		Queue queue = services.getQueueService().getQueueById(1).orElseThrow(IllegalStateException::new);
+		Location location = Context.getLocationService().getLocation(1);
+		Date day = date("2022-02-02 00:00:00");
+		assertThat(dao.incrementTicketSequence(queue, location, day), nullValue());
+		
+		assertThat(dao.createTicketSequence(queue, location, day, 5), is(true));
+		assertThat(dao.createTicketSequence(queue, location, day, 1), is(false));
+		
+		assertThat(dao.incrementTicketSequence(queue, location, day), equalTo(6));
+		assertThat(dao.incrementTicketSequence(queue, location, day), equalTo(7));
+		assertThat(dao.incrementTicketSequence(queue, location, date("2022-02-03 00:00:00")), nullValue());
 	}
 	
 	@Test
@@ -457,6 +604,24 @@ public class QueueEntryDaoTest extends BaseModuleContextSensitiveTest {
 		assertResults(criteria, 2, 3);
 	}
 	
+	@Test
+	public void getActiveQueueEntriesWithStoppedVisits_shouldReturnActiveEntriesOfStoppedVisitsAfterWatermark() {
+		assertThat(dao.getActiveQueueEntriesWithStoppedVisits(null, 10), hasSize(0));
+		Visit visit = Context.getVisitService().getVisit(101);
+		visit.setStopDatetime(date("2022-02-03 10:00:00"));
+		Context.flushSession();
+		// Entry 1 of this visit has already ended, so only entry 2 is returned
+		assertResultIds(dao.getActiveQueueEntriesWithStoppedVisits(null, 10), 2);
+		assertThat(dao.getActiveQueueEntriesWithStoppedVisits(2, 10), hasSize(0));
+		
+		visit = Context.getVisitService().getVisit(102);
+		visit.setStopDatetime(date("2022-02-04 10:00:00"));
+		Context.flushSession();
+		assertResultIds(dao.getActiveQueueEntriesWithStoppedVisits(null, 10), 2, 3);
+		assertResultIds(dao.getActiveQueueEntriesWithStoppedVisits(null, 1), 2);
+		assertResultIds(dao.getActiveQueueEntriesWithStoppedVisits(2, 1), 3);
+	}
+	
 	@Test
 	// Dataset entries for queue=3, patient=2: only entry 4 [2022-03-02 16:40:56 → 2022-03-02 18:41:56]
 	public void getOverlappingQueueEntries_shouldReturnEntriesOverlappingWithGivenRange() {
@@ -486,6 +651,50 @@ public class QueueEntryDaoTest extends BaseModuleContextSensitiveTest {
 		assertThat(noOverlapResults, hasSize(0));
 	}
 	
+	@Test
+	public void getQueueEntrySummaries_shouldReturnSummariesInSameOrderAsQueueEntries() {
+		List<QueueEntry> queueEntries = dao.getQueueEntries(criteria);
+		List<QueueEntrySummary> summaries = dao.getQueueEntrySummaries(criteria);
+		assertThat(summaries, hasSize(queueEntries.size()));
+		for (int i = 0; i < queueEntries.size(); i++) {
+			QueueEntry queueEntry = queueEntries.get(i);
+			QueueEntrySummary summary = summaries.get(i);
+			assertThat(summary.getQueueEntryId(), is(queueEntry.getQueueEntryId()));
+			assertThat(summary.getUuid(), is(queueEntry.getUuid()));
+			assertThat(summary.getQueueUuid(), is(queueEntry.getQueue().getUuid()));
+			assertThat(summary.getPatientUuid(), is(queueEntry.getPatient().getUuid()));
+			assertThat(summary.getStatusUuid(), is(queueEntry.getStatus().getUuid()));
+			assertThat(summary.getPriorityUuid(), is(queueEntry.getPriority().getUuid()));
+			assertThat(summary.getSortWeight(), is(queueEntry.getSortWeight()));
+		}
+		
+		criteria.setLimit(1);
+		criteria.setAfter(QueueEntryCursor.of(summaries.get(0)));
+		assertThat(dao.getQueueEntrySummaries(criteria).get(0).getUuid(), is(summaries.get(1).getUuid()));
+	}
+	
+	@Test
+	public void hasOverlappingQueueEntries_shouldProbeForOtherNonVoidedOverlappingEntries() {
+		Queue queue3 = services.getQueueService().getQueueById(3).orElseThrow(IllegalStateException::new);
+		Patient patient2 = services.getPatientService().getPatient(2);
+		QueueEntrySearchCriteria overlapCriteria = QueueEntrySearchCriteria.builder()
+		        .queues(Collections.singletonList(queue3)).patient(patient2).startedOn(date("2022-03-02 10:00:00"))
+		        .endedOn(date("2022-03-02 17:00:00")).build();
+		assertThat(dao.hasOverlappingQueueEntries(overlapCriteria, Collections.emptyList()), is(true));
+		assertThat(dao.hasOverlappingQueueEntries(overlapCriteria, Collections.singletonList(3)), is(true));
+		// entry 4 is the only overlapping entry, so it does not overlap with anything other than itself
+		assertThat(dao.hasOverlappingQueueEntries(overlapCriteria, Collections.singletonList(4)), is(false));
+		
+		QueueEntrySearchCriteria noOverlapCriteria = QueueEntrySearchCriteria.builder()
+		        .queues(Collections.singletonList(queue3)).patient(patient2).startedOn(date("2022-03-02 10:00:00"))
+		        .endedOn(date("2022-03-02 15:00:00")).build();
+		assertThat(dao.hasOverlappingQueueEntries(noOverlapCriteria, Collections.emptyList()), is(false));
+		
+		// voided in the session, but not yet flushed
+		dao.get(4).orElseThrow(IllegalStateException::new).setVoided(true);
+		assertThat(dao.hasOverlappingQueueEntries(overlapCriteria, Collections.emptyList()), is(false));
+	}
+	
 	/**
 	 * Utility method that tests criteria against both DAO methods to getQueueEntries and
 	 * getCountOfQueueEntries
@@ -513,6 +722,16 @@ public class QueueEntryDaoTest extends BaseModuleContextSensitiveTest {
 		assertThat(numResults.intValue(), equalTo(queueEntryIds.length));
 	}
 	
+	/**
+	 * Utility method that asserts the given queue entries have the given ids, in order
+	 */
+	private void assertResultIds(List<QueueEntry> queueEntries, Integer... queueEntryIds) {
+		assertThat(queueEntries, hasSize(queueEntryIds.length));
+		for (int i = 0; i < queueEntryIds.length; i++) {
+			assertThat(queueEntries.get(i).getQueueEntryId(), is(queueEntryIds[i]));
+		}
+	}
+	
 	/**
 	 * @return the date for the given string value
 	 */
@@ -41,7 +41,7 @@ import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.api.digitalSignage.QueueTicketAssignments;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
 import org.openmrs.module.queue.model.Queue;
-import org.openmrs.module.queue.model.QueueEntry;
+import org.openmrs.module.queue.web.resources.QueueEntryPage;
 import org.openmrs.module.queue.web.resources.QueueEntryResource;
 import org.openmrs.module.queue.web.resources.QueueRoomResource;
 import org.openmrs.module.queue.web.resources.RoomProviderMapResource;
@@ -55,7 +55,6 @@ import org.openmrs.module.webservices.rest.web.RestUtil;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.Converter;
 import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
-import org.openmrs.module.webservices.rest.web.resource.impl.NeedsPaging;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -116,8 +115,7 @@ public class Legacy1xRestController extends BaseRestController {
 			parameters.put("isEnded", new String[] { "false" });
 		}
 		QueueEntrySearchCriteria criteria = queueEntryResource.getSearchCriteriaParser().constructFromRequest(parameters);
-		List<QueueEntry> queueEntryList = services.getQueueEntryService().getQueueEntries(criteria);
-		PageableResult pageableResult = new NeedsPaging<>(queueEntryList, requestContext);
+		PageableResult pageableResult = QueueEntryPage.fetch(services.getQueueEntryService(), criteria, requestContext);
 		Map<String, Object> searchResult = pageableResult.toSimpleObject(queueEntryResource);
 		List<Map<String, Object>> queueEntries = (List<Map<String, Object>>) PropertyUtils.getProperty(searchResult,
 		    "results");
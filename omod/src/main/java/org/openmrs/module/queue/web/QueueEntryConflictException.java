@@ -0,0 +1,30 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web;
+
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a queue entry could not be changed because it was modified concurrently, which is
+ * returned to clients as 409 Conflict, so that they can reload the entry and try again
+ */
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class QueueEntryConflictException extends ResponseException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public static final String MESSAGE = "The queue entry was modified by another user, reload it and try again";
+	
+	public QueueEntryConflictException(Throwable cause) {
+		super(MESSAGE, cause);
+	}
+}
@@ -0,0 +1,290 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.queue.QueueModuleConstants;
+import org.openmrs.module.queue.api.QueueServicesWrapper;
+import org.openmrs.module.queue.api.event.QueueEntryChangeTracker;
+import org.openmrs.module.queue.api.event.QueueEntryEvent;
+import org.openmrs.module.queue.model.Queue;
+import org.openmrs.module.queue.utils.PrivilegeConstants;
+import org.openmrs.module.queue.web.resources.parser.QueueEntrySearchCriteriaParser;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.response.IllegalRequestException;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Streams changes to queue entries as server-sent events, so that clients can be notified of
+ * changes instead of repeatedly polling the queue entry endpoints. Each response streams events for
+ * up to {@link #STREAM_DURATION_MILLIS} before it is completed, after which clients such as the
+ * browser EventSource reconnect automatically and pass the id of the last event received in the
+ * Last-Event-ID header, so that no events are missed. If events since that id are no longer
+ * available, a "reset" event is sent first, indicating that the client should reload the entries.
+ * <p>
+ * Each stream holds a request thread of the servlet container for as long as it is open, as the
+ * OpenMRS filter chain does not support asynchronous requests and the authenticated user is bound to
+ * the request thread. The number of concurrent streams is therefore limited by the
+ * queue.maxEventStreams global property, beyond which requests are answered with 503 Service
+ * Unavailable. Such a response has a Retry-After header, and a Link header to the active queue entries
+ * of the requested queues, which clients should poll with If-None-Match until a stream becomes
+ * available, see {@link org.openmrs.module.queue.web.resources.QueueEntryETag}.
+ */
+@Slf4j
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/queue-entry-event")
+public class QueueEntryEventStreamController extends BaseRestController {
+	
+	public static final String QUEUE = "queue";
+	
+	public static final String LAST_EVENT_ID = "Last-Event-ID";
+	
+	public static final String RESET = "reset";
+	
+	public static final long STREAM_DURATION_MILLIS = 2 * 60 * 1000;
+	
+	public static final long HEARTBEAT_MILLIS = 15 * 1000;
+	
+	public static final long RECONNECT_MILLIS = 1000;
+	
+	public static final int DEFAULT_MAX_STREAMS = 50;
+	
+	private final QueueServicesWrapper services;
+	
+	private final QueueEntryChangeTracker changeTracker;
+	
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	
+	private final AtomicInteger openStreams = new AtomicInteger();
+	
+	@Autowired
+	public QueueEntryEventStreamController(QueueServicesWrapper services,
+	    @Qualifier("queue.QueueEntryChangeTracker") QueueEntryChangeTracker changeTracker) {
+		this.services = services;
+		this.changeTracker = changeTracker;
+	}
+	
+	/**
+	 * @param queueRefs the queues to stream events for, or all queues if none are specified
+	 * @param lastEventId the id of the last event received by the client, if reconnecting
+	 * @param request the request for the events
+	 * @param response the response to stream the events to
+	 * @throws IllegalRequestException if any of the given queues cannot be found
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	public void streamEvents(@RequestParam(value = QUEUE, required = false) String[] queueRefs,
+	        @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId, HttpServletRequest request,
+	        HttpServletResponse response) throws IOException {
+		Context.requirePrivilege(PrivilegeConstants.GET_QUEUE_ENTRIES);
+		Set<String> queueUuids = getQueueUuids(queueRefs);
+		if (!openStream()) {
+			response.setHeader("Retry-After", String.valueOf(STREAM_DURATION_MILLIS / 1000));
+			response.setHeader("Link", "<" + getPollingUrl(request, queueUuids) + ">; rel=\"alternate\"");
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+			    "Too many queue entry event streams, poll the queue entries instead");
+			return;
+		}
+		try {
+			writeEvents(queueUuids, lastEventId, response);
+		}
+		finally {
+			openStreams.decrementAndGet();
+		}
+	}
+	
+	@Override
+	public String getNamespace() {
+		return "v1/queue-entry-event";
+	}
+	
+	/**
+	 * @return the uuids of the given queues, or an empty set, matching all queues, if none are given
+	 * @throws IllegalRequestException if any of the given queues cannot be found, so that a client never
+	 *             receives the events of all queues instead of those it asked for
+	 */
+	private Set<String> getQueueUuids(String[] queueRefs) {
+		Set<String> queueUuids = new HashSet<>();
+		if (queueRefs == null || queueRefs.length == 0) {
+			return queueUuids;
+		}
+		try {
+			for (Queue queue : services.getQueues(queueRefs)) {
+				if (queue != null) {
+					queueUuids.add(queue.getUuid());
+				}
+			}
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalRequestException(e.getMessage());
+		}
+		if (queueUuids.isEmpty()) {
+			throw new IllegalRequestException("No queues specified in parameter " + QUEUE);
+		}
+		return queueUuids;
+	}
+	
+	/**
+	 * @return true if another stream may be opened without exceeding the maximum number of streams, in
+	 *         which case it is counted as open
+	 */
+	private boolean openStream() {
+		int maxStreams = getMaxStreams();
+		while (true) {
+			int streams = openStreams.get();
+			if (streams >= maxStreams) {
+				return false;
+			}
+			if (openStreams.compareAndSet(streams, streams + 1)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * @return the maximum number of concurrent streams configured by global property, which is read for
+	 *         each request so that it can be lowered without a restart when request threads run short
+	 */
+	int getMaxStreams() {
+		String value = services.getGlobalProperty(QueueModuleConstants.QUEUE_MAX_EVENT_STREAMS);
+		if (StringUtils.isBlank(value)) {
+			return DEFAULT_MAX_STREAMS;
+		}
+		try {
+			int ret = Integer.parseInt(value.trim());
+			if (ret >= 0) {
+				return ret;
+			}
+		}
+		catch (NumberFormatException e) {
+			// Logged below
+		}
+		log.warn("Invalid value for " + QueueModuleConstants.QUEUE_MAX_EVENT_STREAMS + ": " + value + ", using "
+		        + DEFAULT_MAX_STREAMS);
+		return DEFAULT_MAX_STREAMS;
+	}
+	
+	/**
+	 * @return the url of the active queue entries of the given queues, or of all queues if none are given
+	 */
+	static String getPollingUrl(HttpServletRequest request, Set<String> queueUuids) {
+		StringBuilder url = new StringBuilder(request.getContextPath());
+		url.append("/ws/rest/").append(RestConstants.VERSION_1).append("/queue-entry?");
+		url.append(QueueEntrySearchCriteriaParser.SEARCH_PARAM_IS_ENDED).append("=false");
+		for (String queueUuid : queueUuids) {
+			url.append("&").append(QueueEntrySearchCriteriaParser.SEARCH_PARAM_QUEUE).append("=").append(queueUuid);
+		}
+		return url.toString();
+	}
+	
+	private void writeEvents(Set<String> queueUuids, String lastEventId, HttpServletResponse response)
+	        throws IOException {
+		BlockingQueue<QueueEntryEvent> pendingEvents = new LinkedBlockingQueue<>();
+		Consumer<QueueEntryEvent> listener = event -> {
+			if (queueUuids.isEmpty() || queueUuids.contains(event.getQueueUuid())) {
+				pendingEvents.offer(event);
+			}
+		};
+		changeTracker.addListener(listener);
+		try {
+			response.setContentType("text/event-stream");
+			response.setCharacterEncoding("UTF-8");
+			response.setHeader("Cache-Control", "no-cache");
+			PrintWriter writer = response.getWriter();
+			writer.write("retry: " + RECONNECT_MILLIS + "\n\n");
+			
+			long lastSentEventId = 0;
+			if (StringUtils.isNotBlank(lastEventId)) {
+				lastSentEventId = parseEventId(lastEventId);
+				List<QueueEntryEvent> missedEvents = changeTracker.getEventsAfter(lastSentEventId);
+				if (missedEvents == null) {
+					writer.write("event: " + RESET + "\ndata: {}\n\n");
+				} else {
+					for (QueueEntryEvent event : missedEvents) {
+						if (queueUuids.isEmpty() || queueUuids.contains(event.getQueueUuid())) {
+							writeEvent(writer, event);
+							lastSentEventId = event.getId();
+						}
+					}
+				}
+			}
+			writer.flush();
+			
+			long endTime = System.currentTimeMillis() + STREAM_DURATION_MILLIS;
+			while (!writer.checkError()) {
+				long remaining = endTime - System.currentTimeMillis();
+				if (remaining <= 0) {
+					break;
+				}
+				QueueEntryEvent event = pendingEvents.poll(Math.min(remaining, HEARTBEAT_MILLIS), TimeUnit.MILLISECONDS);
+				if (event == null) {
+					writer.write(": heartbeat\n\n");
+				} else if (event.getId() > lastSentEventId) {
+					writeEvent(writer, event);
+					lastSentEventId = event.getId();
+				}
+				writer.flush();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			changeTracker.removeListener(listener);
+		}
+	}
+	
+	private void writeEvent(PrintWriter writer, QueueEntryEvent event) throws IOException {
+		SimpleObject data = new SimpleObject();
+		data.add("type", event.getType().name());
+		data.add("queueEntry", event.getQueueEntryUuid());
+		data.add("queue", event.getQueueUuid());
+		data.add("date", ConversionUtil.convertToRepresentation(event.getDate(), Representation.DEFAULT));
+		writer.write("id: " + event.getId() + "\n");
+		writer.write("event: " + event.getType().name().toLowerCase() + "\n");
+		writer.write("data: " + objectMapper.writeValueAsString(data) + "\n\n");
+	}
+	
+	private long parseEventId(String lastEventId) {
+		try {
+			return Long.parseLong(lastEventId.trim());
+		}
+		catch (NumberFormatException e) {
+			log.debug("Ignoring invalid " + LAST_EVENT_ID + ": " + lastEventId);
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.Patient;
+import org.openmrs.Visit;
+import org.openmrs.module.queue.api.QueueServicesWrapper;
+import org.openmrs.module.queue.model.QueueEntry;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Exposes the journey of a patient through queues, being the chain of queue entries for a visit, or
+ * for a patient on a given day, in the order they started. Each step includes how long the patient
+ * waited in that queue and the previous step it was transitioned from, so that the whole journey can
+ * be reviewed with a single request rather than by following previousQueueEntry from entry to entry.
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/queue-entry-journey")
+public class QueueEntryJourneyRestController extends BaseRestController {
+	
+	public static final String VISIT = "visit";
+	
+	public static final String PATIENT = "patient";
+	
+	public static final String DATE = "date";
+	
+	private static final long MILLIS_PER_MINUTE = 60 * 1000;
+	
+	private final QueueServicesWrapper services;
+	
+	@Autowired
+	public QueueEntryJourneyRestController(QueueServicesWrapper services) {
+		this.services = services;
+	}
+	
+	/**
+	 * @param visitRef the visit to retrieve the journey for
+	 * @param patientRef the patient to retrieve the journey for, if no visit is specified
+	 * @param date the day to retrieve the patient's journey for, defaulting to today
+	 * @return the steps of the journey, in the order they started
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	@ResponseBody
+	public Object getJourney(@RequestParam(value = VISIT, required = false) String visitRef,
+	        @RequestParam(value = PATIENT, required = false) String patientRef,
+	        @RequestParam(value = DATE, required = false) String date) {
+		List<QueueEntry> queueEntries;
+		if (StringUtils.isNotBlank(visitRef)) {
+			Visit visit = services.getVisit(visitRef);
+			queueEntries = services.getQueueEntryService().getQueueEntryJourney(visit);
+		} else if (StringUtils.isNotBlank(patientRef)) {
+			Patient patient = services.getPatient(patientRef);
+			Date onDate = StringUtils.isBlank(date) ? new Date() : (Date) ConversionUtil.convert(date, Date.class);
+			queueEntries = services.getQueueEntryService().getQueueEntryJourney(patient, onDate);
+		} else {
+			throw new IllegalArgumentException("Either " + VISIT + " or " + PATIENT + " must be specified");
+		}
+		
+		Date now = new Date();
+		List<SimpleObject> steps = new ArrayList<>();
+		for (int i = 0; i < queueEntries.size(); i++) {
+			QueueEntry queueEntry = queueEntries.get(i);
+			QueueEntry previousQueueEntry = getPreviousQueueEntry(queueEntries.subList(0, i), queueEntry);
+			Date endedAt = queueEntry.getEndedAt() == null ? now : queueEntry.getEndedAt();
+			SimpleObject step = new SimpleObject();
+			step.add("uuid", queueEntry.getUuid());
+			step.add("queue", ConversionUtil.convertToRepresentation(queueEntry.getQueue(), Representation.REF));
+			step.add("status", ConversionUtil.convertToRepresentation(queueEntry.getStatus(), Representation.REF));
+			step.add("priority", ConversionUtil.convertToRepresentation(queueEntry.getPriority(), Representation.REF));
+			step.add("startedAt", toRepresentation(queueEntry.getStartedAt()));
+			step.add("endedAt", toRepresentation(queueEntry.getEndedAt()));
+			step.add("waitTime", (endedAt.getTime() - queueEntry.getStartedAt().getTime()) / MILLIS_PER_MINUTE);
+			step.add("previousQueueEntry", previousQueueEntry == null ? null : previousQueueEntry.getUuid());
+			steps.add(step);
+		}
+		return new SimpleObject().add("results", steps);
+	}
+	
+	@Override
+	public String getNamespace() {
+		return "v1/queue-entry-journey";
+	}
+	
+	private Object toRepresentation(Date date) {
+		return date == null ? null : ConversionUtil.convertToRepresentation(date, Representation.DEFAULT);
+	}
+	
+	/**
+	 * @return the previous queue entry of the given queue entry, from its link if it has one, and
+	 *         otherwise from the preceding steps of the journey, as for
+	 *         {@link org.openmrs.module.queue.api.QueueEntryService#getPreviousQueueEntry(QueueEntry)},
+	 *         but without any further queries
+	 */
+	private QueueEntry getPreviousQueueEntry(List<QueueEntry> precedingQueueEntries, QueueEntry queueEntry) {
+		if (queueEntry.getPreviousQueueEntry() != null) {
+			return queueEntry.getPreviousQueueEntry();
+		}
+		if (queueEntry.getQueueComingFrom() == null) {
+			return null;
+		}
+		for (QueueEntry candidate : precedingQueueEntries) {
+			boolean sameQueue = candidate.getQueue().getQueueId().equals(queueEntry.getQueueComingFrom().getQueueId());
+			if (sameQueue && candidate.getEndedAt() != null
+			        && candidate.getEndedAt().getTime() == queueEntry.getStartedAt().getTime()) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+}
@@ -13,13 +13,13 @@ import javax.servlet.http.HttpServletRequest;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
-import org.openmrs.module.queue.model.QueueEntry;
-import org.openmrs.module.queue.utils.QueueUtils;
+import org.openmrs.module.queue.api.search.QueueEntryWaitTimeStatistics;
 import org.openmrs.module.queue.web.resources.parser.QueueEntrySearchCriteriaParser;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RestConstants;
@@ -43,6 +43,19 @@ public class QueueEntryMetricRestController extends BaseRestController {
 	
 	public static final String AVERAGE_WAIT_TIME = "averageWaitTime";
 	
+	public static final String MIN_WAIT_TIME = "minWaitTime";
+	
+	public static final String MAX_WAIT_TIME = "maxWaitTime";
+	
+	public static final String WAIT_TIME_PERCENTILES = "waitTimePercentiles";
+	
+	public static final String PERCENTILE = "percentile";
+	
+	public static final List<String> DEFAULT_PERCENTILES = Arrays.asList("50", "90");
+	
+	private static final List<String> WAIT_TIME_METRICS = Arrays.asList(AVERAGE_WAIT_TIME, MIN_WAIT_TIME, MAX_WAIT_TIME,
+	    WAIT_TIME_PERCENTILES);
+	
 	private final QueueEntrySearchCriteriaParser searchCriteriaParser;
 	
 	private final QueueServicesWrapper services;
@@ -66,16 +79,32 @@ public class QueueEntryMetricRestController extends BaseRestController {
 		
 		QueueEntrySearchCriteria criteria = searchCriteriaParser.constructFromRequest(parameters);
 		
-		// If we only want count, then use the ore efficient service to get counts
-		if (metrics.size() == 1 && metrics.get(0).equals(COUNT)) {
+		// Metrics are computed from a count and the projected start and end times, rather than by loading entries
+		if (metrics.isEmpty() || metrics.contains(COUNT)) {
 			ret.add(COUNT, services.getQueueEntryService().getCountOfQueueEntries(criteria).intValue());
-		} else {
-			List<QueueEntry> queueEntries = services.getQueueEntryService().getQueueEntries(criteria);
-			if (metrics.isEmpty() || metrics.contains(COUNT)) {
-				ret.add(COUNT, queueEntries.size());
-			}
+		}
+		if (metrics.isEmpty() || !Collections.disjoint(metrics, WAIT_TIME_METRICS)) {
+			// The wait time of each entry is only retrieved if percentiles are needed, and otherwise aggregated
+			QueueEntryWaitTimeStatistics statistics = services.getQueueEntryService()
+			        .getQueueEntryWaitTimeStatistics(criteria, metrics.contains(WAIT_TIME_PERCENTILES));
 			if (metrics.isEmpty() || metrics.contains(AVERAGE_WAIT_TIME)) {
-				ret.add(AVERAGE_WAIT_TIME, QueueUtils.computeAverageWaitTimeInMinutes(queueEntries));
+				ret.add(AVERAGE_WAIT_TIME, statistics.getAverageWaitTime());
+			}
+			if (metrics.contains(MIN_WAIT_TIME)) {
+				ret.add(MIN_WAIT_TIME, statistics.getMinWaitTime());
+			}
+			if (metrics.contains(MAX_WAIT_TIME)) {
+				ret.add(MAX_WAIT_TIME, statistics.getMaxWaitTime());
+			}
+			if (metrics.contains(WAIT_TIME_PERCENTILES)) {
+				String[] percentileArray = parameters.get(PERCENTILE);
+				List<String> percentiles = (percentileArray == null ? DEFAULT_PERCENTILES : Arrays.asList(percentileArray));
+				SimpleObject waitTimePercentiles = new SimpleObject();
+				for (String percentile : percentiles) {
+					Double waitTime = statistics.getPercentileWaitTime(parsePercentile(percentile));
+					waitTimePercentiles.add(percentile.trim(), waitTime);
+				}
+				ret.add(WAIT_TIME_PERCENTILES, waitTimePercentiles);
 			}
 		}
 		
@@ -86,4 +115,13 @@ public class QueueEntryMetricRestController extends BaseRestController {
 	public String getNamespace() {
 		return "v1/queue-entry-metric";
 	}
+	
+	private double parsePercentile(String percentile) {
+		try {
+			return Double.parseDouble(percentile.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + PERCENTILE + ": " + percentile);
+		}
+	}
 }
@@ -9,23 +9,38 @@
  */
 package org.openmrs.module.queue.web;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
+import lombok.extern.slf4j.Slf4j;
 import org.openmrs.Concept;
+import org.openmrs.Provider;
 import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.queue.api.QueueEntryService;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
 import org.openmrs.module.queue.model.QueueEntryTransition;
+import org.openmrs.module.queue.model.QueueEntryTransitionResult;
+import org.openmrs.module.queue.web.dto.CallNextQueueEntryRequest;
 import org.openmrs.module.queue.web.dto.QueueEntryTransitionRequest;
 import org.openmrs.module.queue.web.dto.UndoQueueEntryTransitionRequest;
+import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.ConversionUtil;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -35,9 +50,12 @@ import org.springframework.web.bind.annotation.ResponseBody;
 /**
  * The main controller that exposes additional end points for order entry
  */
+@Slf4j
 @Controller
 public class QueueEntryTransitionRestController extends BaseRestController {
 	
+	public static final int MAX_CONFLICT_RETRIES = 2;
+	
 	private final QueueServicesWrapper services;
 	
 	@Autowired
@@ -49,6 +67,12 @@ public class QueueEntryTransitionRestController extends BaseRestController {
 	        RequestMethod.POST })
 	@ResponseBody
 	public Object transitionQueueEntry(@RequestBody QueueEntryTransitionRequest body) {
+		QueueEntry newQueueEntry = withConflictRetry(
+		    () -> services.getQueueEntryService().transitionQueueEntry(toQueueEntryTransition(body)));
+		return ConversionUtil.convertToRepresentation(newQueueEntry, Representation.REF);
+	}
+	
+	private QueueEntryTransition toQueueEntryTransition(QueueEntryTransitionRequest body) {
 		QueueEntryTransition transition = new QueueEntryTransition();
 		
 		// Queue Entry to Transition
@@ -90,22 +114,178 @@ public class QueueEntryTransitionRestController extends BaseRestController {
 		}
 		
 		transition.setNewPriorityComment(body.getNewPriorityComment());
+		return transition;
+	}
+	
+	/**
+	 * Transitions many queue entries in a single transaction, resolving the queue entries with a single
+	 * query, and each referenced queue and concept only once. Each transition succeeds or fails
+	 * independently, and the response contains the outcome of each, in the order requested.
+	 */
+	@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/queue-entry/transition/batch", method = {
+	        RequestMethod.PUT, RequestMethod.POST })
+	@ResponseBody
+	public Object transitionQueueEntries(@RequestBody List<QueueEntryTransitionRequest> body) {
+		Date transitionDate = new Date();
+		Map<String, QueueEntry> queueEntries = getQueueEntriesByUuid(body);
+		Map<String, Queue> queues = new HashMap<>();
+		Map<String, Concept> concepts = new HashMap<>();
+		List<QueueEntryTransitionResult> results = new ArrayList<>();
+		List<QueueEntryTransition> transitions = new ArrayList<>();
+		for (QueueEntryTransitionRequest item : body) {
+			QueueEntryTransition transition = new QueueEntryTransition();
+			QueueEntryTransitionResult result = new QueueEntryTransitionResult(transition);
+			try {
+				String queueEntryUuid = item.getQueueEntryToTransition();
+				QueueEntry queueEntry = queueEntryUuid == null ? null : queueEntries.get(queueEntryUuid);
+				if (queueEntry == null) {
+					throw new APIException("queueEntryToTransition not specified or found");
+				}
+				transition.setQueueEntryToTransition(queueEntry);
+				transition.setTransitionDate(transitionDate);
+				if (item.getNewQueue() != null) {
+					Queue queue = queues.computeIfAbsent(item.getNewQueue(),
+					    uuid -> services.getQueueService().getQueueByUuid(uuid).orElse(null));
+					if (queue == null) {
+						throw new APIException("Invalid queue specified: " + item.getNewQueue());
+					}
+					transition.setNewQueue(queue);
+				}
+				if (item.getNewStatus() != null) {
+					Concept concept = concepts.computeIfAbsent(item.getNewStatus(), services::getConcept);
+					if (concept == null) {
+						throw new APIException("Invalid status specified: " + item.getNewStatus());
+					}
+					transition.setNewStatus(concept);
+				}
+				if (item.getNewPriority() != null) {
+					Concept concept = concepts.computeIfAbsent(item.getNewPriority(), services::getConcept);
+					if (concept == null) {
+						throw new APIException("Invalid priority specified: " + item.getNewPriority());
+					}
+					transition.setNewPriority(concept);
+				}
+				transition.setNewPriorityComment(item.getNewPriorityComment());
+				transitions.add(transition);
+			}
+			catch (APIException | IllegalArgumentException e) {
+				result.setError(e.getMessage());
+			}
+			results.add(result);
+		}
 		
-		// Execute transition
-		QueueEntry newQueueEntry = services.getQueueEntryService().transitionQueueEntry(transition);
-		return ConversionUtil.convertToRepresentation(newQueueEntry, Representation.REF);
+		// Execute transitions, and merge their outcomes with those that could not be resolved
+		Iterator<QueueEntryTransitionResult> transitionResults = services.getQueueEntryService()
+		        .transitionQueueEntries(transitions).iterator();
+		List<SimpleObject> ret = new ArrayList<>();
+		for (int i = 0; i < results.size(); i++) {
+			QueueEntryTransitionResult result = results.get(i);
+			if (result.getError() == null) {
+				result = transitionResults.next();
+			}
+			SimpleObject outcome = new SimpleObject();
+			outcome.add("queueEntryToTransition", body.get(i).getQueueEntryToTransition());
+			outcome.add("successful", result.isSuccessful());
+			if (result.isSuccessful()) {
+				outcome.add("queueEntry", ConversionUtil.convertToRepresentation(result.getNewQueueEntry(),
+				    Representation.REF));
+			} else {
+				outcome.add("error", result.getError());
+			}
+			ret.add(outcome);
+		}
+		return new SimpleObject().add("results", ret);
+	}
+	
+	/**
+	 * @return the queue entries to transition in the given requests, retrieved with a single query and
+	 *         mapped by their uuids
+	 */
+	private Map<String, QueueEntry> getQueueEntriesByUuid(List<QueueEntryTransitionRequest> body) {
+		Set<String> queueEntryUuids = new HashSet<>();
+		for (QueueEntryTransitionRequest item : body) {
+			if (item.getQueueEntryToTransition() != null) {
+				queueEntryUuids.add(item.getQueueEntryToTransition());
+			}
+		}
+		Map<String, QueueEntry> ret = new HashMap<>();
+		for (QueueEntry queueEntry : services.getQueueEntryService().getQueueEntriesByUuids(queueEntryUuids)) {
+			ret.put(queueEntry.getUuid(), queueEntry);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Calls the next patient waiting in a queue, claiming and transitioning the entry with the highest
+	 * sort weight in a single request, so that concurrent callers never call the same patient. The
+	 * response contains the new queue entry, or null if there are no patients waiting.
+	 */
+	@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/queue-entry/call-next", method = RequestMethod.POST)
+	@ResponseBody
+	public Object callNext(@RequestBody CallNextQueueEntryRequest body) {
+		QueueEntry newQueueEntry = withConflictRetry(() -> callNextQueueEntry(body));
+		Object queueEntry = newQueueEntry == null ? null
+		        : ConversionUtil.convertToRepresentation(newQueueEntry, Representation.REF);
+		return new SimpleObject().add("queueEntry", queueEntry);
+	}
+	
+	private QueueEntry callNextQueueEntry(CallNextQueueEntryRequest body) {
+		Queue queue = services.getQueueService().getQueueByUuid(body.getQueue())
+		        .orElseThrow(() -> new APIException("Invalid queue specified: " + body.getQueue()));
+		Concept waitingStatus = services.getConcept(body.getWaitingStatus());
+		if (waitingStatus == null) {
+			throw new APIException("Invalid waitingStatus specified: " + body.getWaitingStatus());
+		}
+		Concept newStatus = services.getConcept(body.getNewStatus());
+		if (newStatus == null) {
+			throw new APIException("Invalid newStatus specified: " + body.getNewStatus());
+		}
+		Provider provider = services.getProvider(body.getProvider());
+		return services.getQueueEntryService().callNext(queue, waitingStatus, newStatus, provider);
 	}
 	
 	@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/queue-entry/transition", method = RequestMethod.DELETE)
 	@ResponseBody
 	public Object undoTransition(@RequestBody UndoQueueEntryTransitionRequest body) {
-		QueueEntryService qes = services.getQueueEntryService();
-		Optional<QueueEntry> queueEntry = qes.getQueueEntryByUuid(body.getQueueEntry());
-		if (queueEntry.isPresent()) {
-			QueueEntry unEndedQueueEntry = services.getQueueEntryService().undoTransition(queueEntry.get());
-			return ConversionUtil.convertToRepresentation(unEndedQueueEntry, Representation.REF);
-		} else {
-			throw new APIException("Invalid queue entry");
+		QueueEntry unEndedQueueEntry = withConflictRetry(() -> {
+			QueueEntryService qes = services.getQueueEntryService();
+			QueueEntry queueEntry = qes.getQueueEntryByUuid(body.getQueueEntry())
+			        .orElseThrow(() -> new APIException("Invalid queue entry"));
+			return qes.undoTransition(queueEntry);
+		});
+		return ConversionUtil.convertToRepresentation(unEndedQueueEntry, Representation.REF);
+	}
+	
+	/**
+	 * Performs the given operation, retrying it up to {@link #MAX_CONFLICT_RETRIES} times if it fails
+	 * because a queue entry it changes was modified concurrently. The session is cleared before each
+	 * retry, so that the operation resolves the current state of the entries it changes. If a retry
+	 * then finds that the change is no longer valid, such as the entry having already been ended by
+	 * the concurrent change, the concurrent change won, and the operation is reported as a conflict.
+	 *
+	 * @param operation the operation to perform, which must resolve any entities it uses itself
+	 * @return the result of the operation
+	 * @throws QueueEntryConflictException if the operation still conflicts after the last retry, or is
+	 *             no longer valid once retried
+	 */
+	<T> T withConflictRetry(Supplier<T> operation) {
+		for (int attempt = 1;; attempt++) {
+			try {
+				return operation.get();
+			}
+			catch (IllegalStateException e) {
+				if (attempt > 1) {
+					throw new QueueEntryConflictException(e);
+				}
+				throw e;
+			}
+			catch (OptimisticLockingFailureException e) {
+				if (attempt > MAX_CONFLICT_RETRIES) {
+					throw new QueueEntryConflictException(e);
+				}
+				log.debug("Retrying after concurrent modification of a queue entry, attempt {}", attempt, e);
+				Context.clearSession();
+			}
 		}
 	}
 }
@@ -0,0 +1,114 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web.resources;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.queue.api.QueueEntryService;
+import org.openmrs.module.queue.model.Queue;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+
+/**
+ * Supports conditional requests for lists of queue entries, so that screens which repeatedly poll
+ * the same list are answered with 304 Not Modified, without querying or converting the entries, for
+ * as long as the list is unchanged. The entity tag combines the latest version of the entries in the
+ * queues the list is drawn from (see {@link QueueEntryService#getQueueEntriesVersion}) with the
+ * requested URL, representation and locale. As for {@link QueueEntryPageCache}, a tag is replaced
+ * at least every {@link QueueEntryPageCache#MAX_AGE_MILLIS}, which bounds how stale related data
+ * such as patient names can be.
+ */
+public class QueueEntryETag {
+	
+	public static final String HEADER_ETAG = "ETag";
+	
+	public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	
+	private static final String WEAK_PREFIX = "W/";
+	
+	/**
+	 * Sets the entity tag of the entries of the given queues requested by the given context on the
+	 * response, and sets the status of the response to 304 if the request's If-None-Match header
+	 * matches it. The tag is only computed for GET requests that have a response.
+	 *
+	 * @param queueEntryService the service to retrieve the versions of the entries in each queue
+	 * @param queues the queues that the requested entries are drawn from
+	 * @param context the request context
+	 * @return true if the requested entries have not been modified, in which case they need not be
+	 *         retrieved, as no body is sent with the response
+	 */
+	public static boolean checkNotModified(QueueEntryService queueEntryService, Collection<Queue> queues,
+	        RequestContext context) {
+		HttpServletRequest request = context.getRequest();
+		HttpServletResponse response = context.getResponse();
+		if (request == null || response == null || !"GET".equalsIgnoreCase(request.getMethod())) {
+			return false;
+		}
+		String eTag = getETag(queueEntryService, queues, context);
+		response.setHeader(HEADER_ETAG, eTag);
+		if (matches(request.getHeader(HEADER_IF_NONE_MATCH), eTag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return a weak entity tag for the entries of the given queues requested by the given context
+	 */
+	static String getETag(QueueEntryService queueEntryService, Collection<Queue> queues, RequestContext context) {
+		long version = 0;
+		List<Integer> queueIds = new ArrayList<>();
+		for (Queue queue : queues) {
+			version = Math.max(version, queueEntryService.getQueueEntriesVersion(queue));
+			if (queue.getQueueId() != null) {
+				queueIds.add(queue.getQueueId());
+			}
+		}
+		Collections.sort(queueIds);
+		StringBuilder key = new StringBuilder(queueIds.toString());
+		HttpServletRequest request = context.getRequest();
+		key.append("|").append(request.getRequestURL()).append("?").append(request.getQueryString());
+		Representation representation = context.getRepresentation();
+		if (representation != null) {
+			key.append("|").append(representation.getRepresentation());
+		}
+		key.append("|").append(Context.getLocale());
+		long period = System.currentTimeMillis() / QueueEntryPageCache.MAX_AGE_MILLIS;
+		return WEAK_PREFIX + "\"" + Long.toHexString(version) + "-" + Long.toHexString(period) + "-"
+		        + Integer.toHexString(key.toString().hashCode()) + "\"";
+	}
+	
+	/**
+	 * @return whether the given If-None-Match header value matches the given entity tag, using the weak
+	 *         comparison that applies to If-None-Match
+	 */
+	static boolean matches(String ifNoneMatch, String eTag) {
+		if (StringUtils.isBlank(ifNoneMatch)) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if ("*".equals(candidate)
+			        || StringUtils.removeStart(candidate, WEAK_PREFIX).equals(StringUtils.removeStart(eTag, WEAK_PREFIX))) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
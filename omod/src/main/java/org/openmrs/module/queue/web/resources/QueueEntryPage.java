@@ -0,0 +1,179 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.module.queue.api.QueueEntryService;
+import org.openmrs.module.queue.api.search.QueueEntryCursor;
+import org.openmrs.module.queue.api.search.QueueEntryFetchPlan;
+import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.model.QueueEntry;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.Hyperlink;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.representation.CustomRepresentation;
+import org.openmrs.module.webservices.rest.web.representation.DefaultRepresentation;
+import org.openmrs.module.webservices.rest.web.representation.FullRepresentation;
+import org.openmrs.module.webservices.rest.web.representation.RefRepresentation;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.api.Converter;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
+import org.openmrs.module.webservices.rest.web.response.IllegalRequestException;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * A page of queue entries that has been limited in the database, rather than by loading all
+ * matching entries into memory and paging them afterwards. If there are more results, the page
+ * includes a continuationToken which can be passed back as a request parameter to retrieve the next
+ * page by seeking directly to it, instead of using a startIndex which requires the database to scan
+ * past all preceding entries. The next link of the page also carries the continuationToken rather
+ * than a startIndex. When converted by a {@link QueueEntryResource}, the previous queue
+ * entries of the page are retrieved together rather than one at a time, and the associations
+ * rendered by the requested representation are loaded along with the page.
+ */
+public class QueueEntryPage extends AlreadyPaged<QueueEntry> {
+	
+	public static final String PARAM_CONTINUATION_TOKEN = "continuationToken";
+	
+	@Getter
+	private final String continuationToken;
+	
+	private final List<QueueEntry> queueEntries;
+	
+	private final Representation representation;
+	
+	private final RequestContext requestContext;
+	
+	public QueueEntryPage(RequestContext context, List<QueueEntry> results, boolean hasMoreResults, Long totalCount) {
+		super(context, results, hasMoreResults, totalCount);
+		this.queueEntries = results;
+		this.representation = context.getRepresentation();
+		this.requestContext = context;
+		QueueEntry last = results.isEmpty() ? null : results.get(results.size() - 1);
+		this.continuationToken = hasMoreResults && last != null ? QueueEntryCursor.of(last).toToken() : null;
+	}
+	
+	/**
+	 * Retrieves the page of queue entries requested by the given request context. If the request
+	 * contains a continuationToken, the page starts after the entry it identifies and any startIndex
+	 * is ignored. One more entry than the requested limit is fetched in order to determine whether there
+	 * are more results, and the total count is only queried if it is requested.
+	 *
+	 * @param queueEntryService the service to use to retrieve the queue entries
+	 * @param criteria the criteria to limit the queue entries by
+	 * @param context the request context containing the requested startIndex and limit
+	 * @return the requested page of queue entries
+	 */
+	public static QueueEntryPage fetch(QueueEntryService queueEntryService, QueueEntrySearchCriteria criteria,
+	        RequestContext context) {
+		Integer limit = limitToRequestedPage(criteria, context);
+		criteria.setFetchPlan(getFetchPlan(context.getRepresentation()));
+		List<QueueEntry> queueEntries = new ArrayList<>(queueEntryService.getQueueEntries(criteria));
+		boolean hasMoreResults = limit != null && queueEntries.size() > limit;
+		if (hasMoreResults) {
+			queueEntries = new ArrayList<>(queueEntries.subList(0, limit));
+		}
+		Long totalCount = null;
+		if (Boolean.TRUE.equals(context.getIncludeTotalCount())) {
+			totalCount = queueEntryService.getCountOfQueueEntries(criteria);
+		}
+		return new QueueEntryPage(context, queueEntries, hasMoreResults, totalCount);
+	}
+	
+	/**
+	 * Limits the given criteria to the page requested by the given request context, fetching one more
+	 * entry than the requested limit in order to determine whether there are more results
+	 *
+	 * @param criteria the criteria to limit
+	 * @param context the request context containing the requested continuationToken, startIndex and
+	 *            limit
+	 * @return the requested limit
+	 * @throws IllegalRequestException if the continuationToken is not valid
+	 */
+	static Integer limitToRequestedPage(QueueEntrySearchCriteria criteria, RequestContext context) {
+		Integer limit = context.getLimit();
+		String continuationToken = context.getParameter(PARAM_CONTINUATION_TOKEN);
+		if (StringUtils.isNotBlank(continuationToken)) {
+			try {
+				criteria.setAfter(QueueEntryCursor.fromToken(continuationToken));
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalRequestException(e.getMessage(), e);
+			}
+		} else {
+			criteria.setStartIndex(context.getStartIndex());
+		}
+		criteria.setLimit(limit == null ? null : limit + 1);
+		return limit;
+	}
+	
+	/**
+	 * @param representation the requested representation
+	 * @return the fetch plan that loads the associations rendered by the given representation along
+	 *         with the page, rather than one entry at a time
+	 */
+	static QueueEntryFetchPlan getFetchPlan(Representation representation) {
+		if (representation instanceof FullRepresentation) {
+			return QueueEntryFetchPlan.FULL;
+		}
+		if (representation instanceof RefRepresentation || representation instanceof DefaultRepresentation
+		        || representation instanceof CustomRepresentation) {
+			return QueueEntryFetchPlan.DEFAULT;
+		}
+		return QueueEntryFetchPlan.NONE;
+	}
+	
+	@Override
+	public SimpleObject toSimpleObject(Converter preferredConverter) throws ResponseException {
+		SimpleObject ret;
+		if (preferredConverter instanceof QueueEntryResource) {
+			QueueEntryResource resource = (QueueEntryResource) preferredConverter;
+			ret = resource.withPreviousQueueEntries(queueEntries, representation,
+			    () -> super.toSimpleObject(preferredConverter));
+		} else {
+			ret = super.toSimpleObject(preferredConverter);
+		}
+		ret.remove("links");
+		List<Hyperlink> links = getLinks();
+		if (!links.isEmpty()) {
+			ret.add("links", links);
+		}
+		if (continuationToken != null) {
+			ret.add(PARAM_CONTINUATION_TOKEN, continuationToken);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return the links to the adjacent pages, where the next link carries the continuationToken, and
+	 *         the previous link is only included when paging by startIndex, as the startIndex is ignored
+	 *         when paging by continuationToken
+	 */
+	List<Hyperlink> getLinks() {
+		List<Hyperlink> ret = new ArrayList<>();
+		if (continuationToken != null) {
+			String nextLink = ServletUriComponentsBuilder.fromRequest(requestContext.getRequest())
+			        .replaceQueryParam(RestConstants.REQUEST_PROPERTY_FOR_START_INDEX)
+			        .replaceQueryParam(PARAM_CONTINUATION_TOKEN, continuationToken).build().toUriString();
+			ret.add(new Hyperlink("next", nextLink));
+		}
+		boolean pagedByToken = StringUtils.isNotBlank(requestContext.getParameter(PARAM_CONTINUATION_TOKEN));
+		if (!pagedByToken && requestContext.getStartIndex() > 0) {
+			ret.add(new Hyperlink("prev", requestContext.getPreviousLink()));
+		}
+		return ret;
+	}
+}
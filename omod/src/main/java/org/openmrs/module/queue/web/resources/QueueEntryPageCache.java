@@ -0,0 +1,94 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web.resources;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import lombok.AllArgsConstructor;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.resource.api.Converter;
+import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+
+/**
+ * Caches converted pages of queue entries, so that screens which repeatedly poll the entries of a
+ * queue can be served without querying and converting those entries again. A cached page is only
+ * used while the version of the queue's entries is unchanged (see
+ * {@link org.openmrs.module.queue.api.QueueEntryService#getQueueEntriesVersion}), and for no longer
+ * than {@link #MAX_AGE_MILLIS}, which bounds how stale related data such as patient names can be.
+ * At most {@link #MAX_SIZE} pages are cached, evicting the least recently used page first, so that
+ * clients requesting many distinct pages do not evict the pages polled by other clients.
+ */
+public class QueueEntryPageCache {
+	
+	public static final long MAX_AGE_MILLIS = 60 * 1000;
+	
+	public static final int MAX_SIZE = 1000;
+	
+	private final Map<String, CachedPage> pages = Collections.synchronizedMap(new RecentPages());
+	
+	/**
+	 * @param key the key identifying the requested page
+	 * @param version the current version of the entries in the page
+	 * @param loader used to retrieve and convert the page if there is no current cached page
+	 * @return the cached page for the given key and version, loading it if necessary
+	 */
+	public PageableResult get(String key, long version, Supplier<SimpleObject> loader) {
+		long now = System.currentTimeMillis();
+		CachedPage page = pages.get(key);
+		if (page == null || page.version != version || now - page.createdAt > MAX_AGE_MILLIS) {
+			page = new CachedPage(version, now, loader.get());
+			pages.put(key, page);
+		}
+		return page;
+	}
+	
+	/**
+	 * Removes all cached pages
+	 */
+	public void clear() {
+		pages.clear();
+	}
+	
+	/**
+	 * Cached pages in order of access, removing the least recently used page once there are more than
+	 * {@link #MAX_SIZE}
+	 */
+	private static class RecentPages extends LinkedHashMap<String, CachedPage> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private RecentPages() {
+			super(16, 0.75f, true);
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+			return size() > MAX_SIZE;
+		}
+	}
+	
+	@AllArgsConstructor
+	private static class CachedPage implements PageableResult {
+		
+		private final long version;
+		
+		private final long createdAt;
+		
+		private final SimpleObject simpleObject;
+		
+		@Override
+		public SimpleObject toSimpleObject(Converter preferredConverter) {
+			return simpleObject;
+		}
+	}
+}
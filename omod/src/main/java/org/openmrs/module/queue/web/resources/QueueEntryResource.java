@@ -11,10 +11,11 @@ package org.openmrs.module.queue.web.resources;
 
 import javax.validation.constraints.NotNull;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import io.swagger.models.Model;
 import io.swagger.models.ModelImpl;
@@ -27,10 +28,16 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.openmrs.PersonName;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.queue.api.QueueEntryService;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.api.search.QueueEntrySummary;
+import org.openmrs.module.queue.api.search.QueueSearchCriteria;
+import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
+import org.openmrs.module.queue.web.QueueEntryConflictException;
 import org.openmrs.module.queue.web.resources.parser.QueueEntrySearchCriteriaParser;
+import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.annotation.PropertyGetter;
@@ -43,10 +50,12 @@ import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
-import org.openmrs.module.webservices.rest.web.resource.impl.NeedsPaging;
+import org.openmrs.module.webservices.rest.web.resource.impl.EmptySearchResult;
+import org.openmrs.module.webservices.rest.web.response.ConversionException;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.springframework.dao.OptimisticLockingFailureException;
 
 /**
  * REST resource for Queue Entries
@@ -58,10 +67,18 @@ import org.openmrs.module.webservices.rest.web.response.ResponseException;
 @Setter
 public class QueueEntryResource extends DelegatingCrudResource<QueueEntry> {
 	
+	/**
+	 * The name of a representation that contains only the fields needed to list queue entries, which
+	 * are retrieved without loading the queue entries when searching
+	 */
+	public static final String REPRESENTATION_COMPACT = "compact";
+	
 	private QueueServicesWrapper services;
 	
 	private QueueEntrySearchCriteriaParser searchCriteriaParser;
 	
+	private final ThreadLocal<Map<Integer, QueueEntry>> previousQueueEntries = new ThreadLocal<>();
+	
 	public QueueEntryResource() {
 	}
 	
@@ -81,7 +98,12 @@ public class QueueEntryResource extends DelegatingCrudResource<QueueEntry> {
 	
 	@Override
 	protected void delete(QueueEntry qe, String reason, RequestContext requestContext) throws ResponseException {
-		getServices().getQueueEntryService().voidQueueEntry(qe, reason);
+		try {
+			getServices().getQueueEntryService().voidQueueEntry(qe, reason);
+		}
+		catch (OptimisticLockingFailureException e) {
+			throw new QueueEntryConflictException(e);
+		}
 	}
 	
 	@Override
@@ -91,7 +113,12 @@ public class QueueEntryResource extends DelegatingCrudResource<QueueEntry> {
 	
 	@Override
 	public QueueEntry save(QueueEntry queueEntry) {
-		return getServices().getQueueEntryService().saveQueueEntry(queueEntry);
+		try {
+			return getServices().getQueueEntryService().saveQueueEntry(queueEntry);
+		}
+		catch (OptimisticLockingFailureException e) {
+			throw new QueueEntryConflictException(e);
+		}
 	}
 	
 	@Override
@@ -102,8 +129,7 @@ public class QueueEntryResource extends DelegatingCrudResource<QueueEntry> {
 	@Override
 	protected PageableResult doGetAll(RequestContext requestContext) throws ResponseException {
 		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
-		List<QueueEntry> activeEntries = getServices().getQueueEntryService().getQueueEntries(criteria);
-		return new NeedsPaging<>(new ArrayList<>(activeEntries), requestContext);
+		return fetch(criteria, requestContext);
 	}
 	
 	@Override
@@ -111,8 +137,51 @@ public class QueueEntryResource extends DelegatingCrudResource<QueueEntry> {
 	protected PageableResult doSearch(RequestContext requestContext) {
 		Map<String, String[]> parameters = requestContext.getRequest().getParameterMap();
 		QueueEntrySearchCriteria criteria = getSearchCriteriaParser().constructFromRequest(parameters);
-		List<QueueEntry> queueEntries = getServices().getQueueEntryService().getQueueEntries(criteria);
-		return new NeedsPaging<>(queueEntries, requestContext);
+		return fetch(criteria, requestContext);
+	}
+	
+	/**
+	 * @return the page of queue entries requested by the given request context, retrieved as summaries
+	 *         if the compact representation is requested, or an empty result if the entries have not
+	 *         been modified since they were last retrieved, see {@link QueueEntryETag}
+	 */
+	private PageableResult fetch(QueueEntrySearchCriteria criteria, RequestContext requestContext) {
+		QueueEntryService queueEntryService = getServices().getQueueEntryService();
+		if (requestContext.getResponse() != null
+		        && QueueEntryETag.checkNotModified(queueEntryService, getQueues(criteria), requestContext)) {
+			return new EmptySearchResult();
+		}
+		if (isCompact(requestContext.getRepresentation())) {
+			return QueueEntrySummaryPage.fetch(queueEntryService, criteria, requestContext);
+		}
+		return QueueEntryPage.fetch(queueEntryService, criteria, requestContext);
+	}
+	
+	/**
+	 * @return the queues that the entries matching the given criteria may be in, which are looked up
+	 *         from the queue metadata cache if the criteria do not specify them
+	 */
+	private Collection<Queue> getQueues(QueueEntrySearchCriteria criteria) {
+		if (criteria.getQueues() != null) {
+			return criteria.getQueues();
+		}
+		QueueSearchCriteria queueSearchCriteria = new QueueSearchCriteria();
+		queueSearchCriteria.setLocations(criteria.getLocations());
+		queueSearchCriteria.setServices(criteria.getServices());
+		queueSearchCriteria.setIncludeRetired(true);
+		return getServices().getQueueService().getQueues(queueSearchCriteria);
+	}
+	
+	@Override
+	public SimpleObject asRepresentation(QueueEntry queueEntry, Representation representation) throws ConversionException {
+		if (isCompact(representation)) {
+			return QueueEntrySummaryPage.toSimpleObject(QueueEntrySummary.of(queueEntry));
+		}
+		return super.asRepresentation(queueEntry, representation);
+	}
+	
+	private boolean isCompact(Representation representation) {
+		return representation != null && REPRESENTATION_COMPACT.equals(representation.getRepresentation());
 	}
 	
 	@Override
@@ -287,9 +356,39 @@ public class QueueEntryResource extends DelegatingCrudResource<QueueEntry> {
 	
 	@PropertyGetter("previousQueueEntry")
 	public QueueEntry getPreviousQueueEntry(QueueEntry queueEntry) {
+		Map<Integer, QueueEntry> preloaded = previousQueueEntries.get();
+		if (preloaded != null && preloaded.containsKey(queueEntry.getQueueEntryId())) {
+			return preloaded.get(queueEntry.getQueueEntryId());
+		}
 		return getServices().getQueueEntryService().getPreviousQueueEntry(queueEntry);
 	}
 	
+	/**
+	 * Performs the given conversion of a page of queue entries with the previous queue entries of all
+	 * of them retrieved together beforehand, if the given representation includes them, so that the
+	 * previousQueueEntry property does not need a separate query for each entry
+	 *
+	 * @param queueEntries the page of queue entries being converted
+	 * @param representation the representation the queue entries are being converted to
+	 * @param conversion the conversion to perform
+	 * @return the result of the conversion
+	 */
+	public <T> T withPreviousQueueEntries(List<QueueEntry> queueEntries, Representation representation,
+	        Supplier<T> conversion) {
+		boolean includesPreviousQueueEntry = representation instanceof DefaultRepresentation
+		        || representation instanceof FullRepresentation;
+		if (!includesPreviousQueueEntry || queueEntries.isEmpty()) {
+			return conversion.get();
+		}
+		previousQueueEntries.set(getServices().getQueueEntryService().getPreviousQueueEntries(queueEntries));
+		try {
+			return conversion.get();
+		}
+		finally {
+			previousQueueEntries.remove();
+		}
+	}
+	
 	@Override
 	public String getResourceVersion() {
 		return "2.3";
@@ -9,22 +9,25 @@
  */
 package org.openmrs.module.queue.web.resources;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 import io.swagger.models.Model;
 import io.swagger.models.ModelImpl;
 import io.swagger.models.properties.*;
 import lombok.Setter;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.queue.api.QueueEntryService;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
 import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
+import org.openmrs.module.queue.web.QueueEntryConflictException;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.annotation.PropertyGetter;
@@ -37,10 +40,11 @@ import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingSubResource;
-import org.openmrs.module.webservices.rest.web.resource.impl.NeedsPaging;
+import org.openmrs.module.webservices.rest.web.resource.impl.EmptySearchResult;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.springframework.dao.OptimisticLockingFailureException;
 
 @SuppressWarnings("unused")
 @SubResource(parent = QueueResource.class, path = "entry", supportedClass = QueueEntry.class, supportedOpenmrsVersions = {
@@ -50,6 +54,8 @@ public class QueueEntrySubResource extends DelegatingSubResource<QueueEntry, Que
 	
 	private QueueServicesWrapper services;
 	
+	private final QueueEntryPageCache pageCache = new QueueEntryPageCache();
+	
 	public QueueEntrySubResource() {
 	}
 	
@@ -67,13 +73,46 @@ public class QueueEntrySubResource extends DelegatingSubResource<QueueEntry, Que
 		queueEntry.setQueue(queue);
 	}
 	
+	/**
+	 * Active queue entries are polled frequently by waiting room screens, so converted pages are cached
+	 * until an entry in the queue changes, and polls for pages that have not changed since they were
+	 * last retrieved are answered with 304 Not Modified, see {@link QueueEntryETag}
+	 */
 	@Override
 	public PageableResult doGetAll(Queue queue, RequestContext requestContext) throws ResponseException {
-		QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
-		criteria.setQueues(Collections.singletonList(queue));
-		criteria.setIsEnded(false);
-		Collection<QueueEntry> queueEntries = getServices().getQueueEntryService().getQueueEntries(criteria);
-		return new NeedsPaging<>(new ArrayList<>(queueEntries), requestContext);
+		QueueEntryService queueEntryService = getServices().getQueueEntryService();
+		if (QueueEntryETag.checkNotModified(queueEntryService, Collections.singletonList(queue), requestContext)) {
+			return new EmptySearchResult();
+		}
+		long version = queueEntryService.getQueueEntriesVersion(queue);
+		return pageCache.get(getPageCacheKey(queue, requestContext), version, () -> {
+			QueueEntrySearchCriteria criteria = new QueueEntrySearchCriteria();
+			criteria.setQueues(Collections.singletonList(queue));
+			criteria.setIsEnded(false);
+			return QueueEntryPage.fetch(queueEntryService, criteria, requestContext).toSimpleObject(this);
+		});
+	}
+	
+	/**
+	 * @return a key that identifies the page requested for the given queue, including the
+	 *         representation, paging parameters and locale that the converted page depends on. The
+	 *         parameters are sorted by name, so that the same page is requested regardless of their order.
+	 */
+	String getPageCacheKey(Queue queue, RequestContext requestContext) {
+		StringBuilder key = new StringBuilder(queue.getUuid());
+		HttpServletRequest request = requestContext.getRequest();
+		if (request != null) {
+			Map<String, String[]> parameters = new TreeMap<>(request.getParameterMap());
+			for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+				key.append("|").append(parameter.getKey()).append("=").append(String.join(",", parameter.getValue()));
+			}
+		}
+		Representation representation = requestContext.getRepresentation();
+		if (representation != null) {
+			key.append("|").append(representation.getRepresentation());
+		}
+		key.append("|").append(Context.getLocale());
+		return key.toString();
 	}
 	
 	@Override
@@ -97,7 +136,12 @@ public class QueueEntrySubResource extends DelegatingSubResource<QueueEntry, Que
 	
 	@Override
 	public QueueEntry save(QueueEntry queueEntry) {
-		return getServices().getQueueEntryService().saveQueueEntry(queueEntry);
+		try {
+			return getServices().getQueueEntryService().saveQueueEntry(queueEntry);
+		}
+		catch (OptimisticLockingFailureException e) {
+			throw new QueueEntryConflictException(e);
+		}
 	}
 	
 	@Override
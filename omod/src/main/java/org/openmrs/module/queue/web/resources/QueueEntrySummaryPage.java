@@ -0,0 +1,128 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web.resources;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import lombok.Getter;
+import org.openmrs.PersonName;
+import org.openmrs.module.queue.api.QueueEntryService;
+import org.openmrs.module.queue.api.search.QueueEntryCursor;
+import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.api.search.QueueEntrySummary;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.api.Converter;
+import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+
+/**
+ * A page of queue entries in the compact representation, which contains only the fields that are
+ * needed to list queue entries. The page is retrieved as {@link QueueEntrySummary} projections, so
+ * the queue entries and the objects they refer to are never loaded, and each entry refers to these
+ * objects only by uuid. As with {@link QueueEntryPage}, if there are more results, the page includes
+ * a continuationToken which can be passed back to retrieve the next page.
+ */
+public class QueueEntrySummaryPage implements PageableResult {
+	
+	@Getter
+	private final List<QueueEntrySummary> results;
+	
+	private final Long totalCount;
+	
+	@Getter
+	private final String continuationToken;
+	
+	public QueueEntrySummaryPage(List<QueueEntrySummary> results, boolean hasMoreResults, Long totalCount) {
+		this.results = results;
+		this.totalCount = totalCount;
+		QueueEntrySummary last = results.isEmpty() ? null : results.get(results.size() - 1);
+		this.continuationToken = hasMoreResults && last != null ? QueueEntryCursor.of(last).toToken() : null;
+	}
+	
+	/**
+	 * Retrieves the page of queue entry summaries requested by the given request context, in the same
+	 * way as {@link QueueEntryPage#fetch(QueueEntryService, QueueEntrySearchCriteria, RequestContext)}
+	 *
+	 * @param queueEntryService the service to use to retrieve the queue entry summaries
+	 * @param criteria the criteria to limit the queue entries by
+	 * @param context the request context containing the requested startIndex and limit
+	 * @return the requested page of queue entry summaries
+	 */
+	public static QueueEntrySummaryPage fetch(QueueEntryService queueEntryService, QueueEntrySearchCriteria criteria,
+	        RequestContext context) {
+		Integer limit = QueueEntryPage.limitToRequestedPage(criteria, context);
+		List<QueueEntrySummary> summaries = new ArrayList<>(queueEntryService.getQueueEntrySummaries(criteria));
+		boolean hasMoreResults = limit != null && summaries.size() > limit;
+		if (hasMoreResults) {
+			summaries = new ArrayList<>(summaries.subList(0, limit));
+		}
+		Long totalCount = null;
+		if (Boolean.TRUE.equals(context.getIncludeTotalCount())) {
+			totalCount = queueEntryService.getCountOfQueueEntries(criteria);
+		}
+		return new QueueEntrySummaryPage(summaries, hasMoreResults, totalCount);
+	}
+	
+	@Override
+	public SimpleObject toSimpleObject(Converter preferredConverter) {
+		List<SimpleObject> convertedResults = new ArrayList<>();
+		for (QueueEntrySummary summary : results) {
+			convertedResults.add(toSimpleObject(summary));
+		}
+		SimpleObject ret = new SimpleObject().add("results", convertedResults);
+		if (totalCount != null) {
+			ret.add("totalCount", totalCount);
+		}
+		if (continuationToken != null) {
+			ret.add(QueueEntryPage.PARAM_CONTINUATION_TOKEN, continuationToken);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @param summary the queue entry summary to convert
+	 * @return the compact representation of the summarized queue entry
+	 */
+	public static SimpleObject toSimpleObject(QueueEntrySummary summary) {
+		PersonName patientName = summary.getPatientName();
+		String display = patientName == null ? summary.getPatientUuid() : patientName.getFullName();
+		SimpleObject patient = ref(summary.getPatientUuid());
+		if (patient != null) {
+			patient.add("display", display);
+		}
+		SimpleObject ret = new SimpleObject();
+		ret.add("uuid", summary.getUuid());
+		ret.add("display", display);
+		ret.add("queue", ref(summary.getQueueUuid()));
+		ret.add("patient", patient);
+		ret.add("visit", ref(summary.getVisitUuid()));
+		ret.add("status", ref(summary.getStatusUuid()));
+		ret.add("priority", ref(summary.getPriorityUuid()));
+		ret.add("sortWeight", summary.getSortWeight());
+		ret.add("startedAt", toRepresentation(summary.getStartedAt()));
+		ret.add("endedAt", toRepresentation(summary.getEndedAt()));
+		ret.add("locationWaitingFor", ref(summary.getLocationWaitingForUuid()));
+		ret.add("providerWaitingFor", ref(summary.getProviderWaitingForUuid()));
+		ret.add("queueComingFrom", ref(summary.getQueueComingFromUuid()));
+		return ret;
+	}
+	
+	private static SimpleObject ref(String uuid) {
+		return uuid == null ? null : new SimpleObject().add("uuid", uuid);
+	}
+	
+	private static Object toRepresentation(Date date) {
+		return date == null ? null : ConversionUtil.convertToRepresentation(date, Representation.DEFAULT);
+	}
+}
@@ -217,12 +217,12 @@ public class QueueResource extends DelegatingCrudResource<Queue> {
 	
 	@PropertyGetter("allowedPriorities")
 	public Object getAllowedPriorities(Queue delegate) {
-		return getServices().getAllowedPriorities(delegate);
+		return getServices().getConcepts(getServices().getAllowedPriorityMembers(delegate));
 	}
 	
 	@PropertyGetter("allowedStatuses")
 	public Object getAllowedStatuses(Queue delegate) {
-		return getServices().getAllowedStatuses(delegate);
+		return getServices().getConcepts(getServices().getAllowedStatusMembers(delegate));
 	}
 	
 	@Override
@@ -9,16 +9,22 @@
  */
 package org.openmrs.module.queue.web.resources.parser;
 
+import static org.openmrs.module.queue.api.QueueServicesWrapper.listByRef;
+
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.openmrs.Concept;
 import org.openmrs.Location;
 import org.openmrs.Provider;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.utils.QueueUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -95,6 +101,10 @@ public class QueueEntrySearchCriteriaParser {
 	}
 	
 	/**
+	 * The queues, locations, concepts and providers referenced by all parameters are each resolved
+	 * once, so that each type takes a single query by uuid however many parameters and values refer to
+	 * it, and a reference used by several parameters is only resolved once.
+	 *
 	 * @param parameterMap a Map from parameter name to array of parameter values
 	 * @return QueueEntrySearchCriteria that is configured based on the parameters in the request
 	 */
@@ -103,18 +113,26 @@ public class QueueEntrySearchCriteriaParser {
 		if (parameterMap == null) {
 			return criteria;
 		}
+		Map<String, Queue> queues = services
+		        .getQueuesByRef(getRefs(parameterMap, SEARCH_PARAM_QUEUE, SEARCH_PARAM_QUEUE_COMING_FROM));
+		Map<String, Location> locations = services
+		        .getLocationsByRef(getRefs(parameterMap, SEARCH_PARAM_LOCATION, SEARCH_PARAM_LOCATION_WAITING_FOR));
+		Map<String, Concept> concepts = services.getConceptsByRef(
+		    getRefs(parameterMap, SEARCH_PARAM_SERVICE, SEARCH_PARAM_PRIORITY, SEARCH_PARAM_STATUS));
+		Map<String, Provider> providers = services
+		        .getProvidersByRef(getRefs(parameterMap, SEARCH_PARAM_PROVIDER_WAITING_FOR));
 		for (String parameterName : parameterMap.keySet()) {
 			switch (parameterName) {
 				case SEARCH_PARAM_QUEUE: {
-					criteria.setQueues(services.getQueues(parameterMap.get(SEARCH_PARAM_QUEUE)));
+					criteria.setQueues(listByRef(parameterMap.get(SEARCH_PARAM_QUEUE), queues));
 					break;
 				}
 				case SEARCH_PARAM_LOCATION: {
-					criteria.setLocations(services.getLocations(parameterMap.get(SEARCH_PARAM_LOCATION)));
+					criteria.setLocations(listByRef(parameterMap.get(SEARCH_PARAM_LOCATION), locations));
 					break;
 				}
 				case SEARCH_PARAM_SERVICE: {
-					criteria.setServices(services.getConcepts(parameterMap.get(SEARCH_PARAM_SERVICE)));
+					criteria.setServices(listByRef(parameterMap.get(SEARCH_PARAM_SERVICE), concepts));
 					break;
 				}
 				case SEARCH_PARAM_PATIENT: {
@@ -130,25 +148,25 @@ public class QueueEntrySearchCriteriaParser {
 					break;
 				}
 				case SEARCH_PARAM_PRIORITY: {
-					criteria.setPriorities(services.getConcepts(parameterMap.get(SEARCH_PARAM_PRIORITY)));
+					criteria.setPriorities(listByRef(parameterMap.get(SEARCH_PARAM_PRIORITY), concepts));
 					break;
 				}
 				case SEARCH_PARAM_STATUS: {
-					criteria.setStatuses(services.getConcepts(parameterMap.get(SEARCH_PARAM_STATUS)));
+					criteria.setStatuses(listByRef(parameterMap.get(SEARCH_PARAM_STATUS), concepts));
 					break;
 				}
 				case SEARCH_PARAM_LOCATION_WAITING_FOR: {
-					List<Location> l = services.getLocations(parameterMap.get(SEARCH_PARAM_LOCATION_WAITING_FOR));
+					List<Location> l = listByRef(parameterMap.get(SEARCH_PARAM_LOCATION_WAITING_FOR), locations);
 					criteria.setLocationsWaitingFor(l);
 					break;
 				}
 				case SEARCH_PARAM_PROVIDER_WAITING_FOR: {
-					List<Provider> l = services.getProviders(parameterMap.get(SEARCH_PARAM_PROVIDER_WAITING_FOR));
+					List<Provider> l = listByRef(parameterMap.get(SEARCH_PARAM_PROVIDER_WAITING_FOR), providers);
 					criteria.setProvidersWaitingFor(l);
 					break;
 				}
 				case SEARCH_PARAM_QUEUE_COMING_FROM: {
-					criteria.setQueuesComingFrom(services.getQueues(parameterMap.get(SEARCH_PARAM_QUEUE_COMING_FROM)));
+					criteria.setQueuesComingFrom(listByRef(parameterMap.get(SEARCH_PARAM_QUEUE_COMING_FROM), queues));
 					break;
 				}
 				case SEARCH_PARAM_STARTED_ON_OR_AFTER: {
@@ -197,6 +215,20 @@ public class QueueEntrySearchCriteriaParser {
 		return criteria;
 	}
 	
+	/**
+	 * @return the values of all the given parameters that are present
+	 */
+	private List<String> getRefs(Map<String, String[]> parameterMap, String... parameterNames) {
+		List<String> ret = new ArrayList<>();
+		for (String parameterName : parameterNames) {
+			String[] refs = parameterMap.get(parameterName);
+			if (refs != null) {
+				Collections.addAll(ret, refs);
+			}
+		}
+		return ret;
+	}
+	
 	private Boolean parseBoolean(String value) {
 		if (StringUtils.isBlank(value)) {
 			return null;
@@ -0,0 +1,116 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.queue.QueueModuleConstants;
+import org.openmrs.module.queue.api.QueueServicesWrapper;
+import org.openmrs.module.queue.api.event.QueueEntryChangeTracker;
+import org.openmrs.module.queue.model.Queue;
+import org.openmrs.module.webservices.rest.web.response.IllegalRequestException;
+
+@ExtendWith(MockitoExtension.class)
+public class QueueEntryEventStreamControllerTest {
+	
+	private static final String[] QUEUE_REFS = { "unknown-queue" };
+	
+	@Mock
+	private QueueServicesWrapper queueServicesWrapper;
+	
+	@Mock
+	private QueueEntryChangeTracker changeTracker;
+	
+	private MockedStatic<Context> context;
+	
+	private QueueEntryEventStreamController controller;
+	
+	@BeforeEach
+	public void setup() {
+		context = mockStatic(Context.class);
+		controller = new QueueEntryEventStreamController(queueServicesWrapper, changeTracker);
+	}
+	
+	@AfterEach
+	public void cleanup() {
+		context.close();
+	}
+	
+	@Test
+	public void shouldRejectQueuesThatCannotBeFound() {
+		when(queueServicesWrapper.getQueues(QUEUE_REFS))
+		        .thenThrow(new IllegalArgumentException("Unable to find queue: unknown-queue"));
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		assertThrows(IllegalRequestException.class, () -> controller.streamEvents(QUEUE_REFS, null, request, response));
+		verify(changeTracker, never()).addListener(any());
+	}
+	
+	@Test
+	public void shouldRejectQueueParameterWithoutQueues() {
+		String[] blankRefs = { " " };
+		when(queueServicesWrapper.getQueues(blankRefs)).thenReturn(Collections.<Queue> singletonList(null));
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		assertThrows(IllegalRequestException.class, () -> controller.streamEvents(blankRefs, null, request, response));
+		verify(changeTracker, never()).addListener(any());
+	}
+	
+	@Test
+	public void shouldDirectClientsToPollQueueEntriesWhenStreamsAreUnavailable() throws Exception {
+		String[] queueRefs = { "triage" };
+		Queue queue = new Queue();
+		queue.setUuid("triage-uuid");
+		when(queueServicesWrapper.getQueues(queueRefs)).thenReturn(Collections.singletonList(queue));
+		when(queueServicesWrapper.getGlobalProperty(QueueModuleConstants.QUEUE_MAX_EVENT_STREAMS)).thenReturn("0");
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getContextPath()).thenReturn("/openmrs");
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		controller.streamEvents(queueRefs, null, request, response);
+		verify(response).setHeader("Retry-After", "120");
+		verify(response).setHeader("Link",
+		    "</openmrs/ws/rest/v1/queue-entry?isEnded=false&queue=triage-uuid>; rel=\"alternate\"");
+		verify(response).sendError(eq(HttpServletResponse.SC_SERVICE_UNAVAILABLE), anyString());
+		verify(changeTracker, never()).addListener(any());
+	}
+	
+	@Test
+	public void shouldTakeMaxStreamsFromGlobalProperty() {
+		when(queueServicesWrapper.getGlobalProperty(QueueModuleConstants.QUEUE_MAX_EVENT_STREAMS)).thenReturn(" 10 ",
+		    null, "-1", "many");
+		assertThat(controller.getMaxStreams(), equalTo(10));
+		assertThat(controller.getMaxStreams(), equalTo(QueueEntryEventStreamController.DEFAULT_MAX_STREAMS));
+		assertThat(controller.getMaxStreams(), equalTo(QueueEntryEventStreamController.DEFAULT_MAX_STREAMS));
+		assertThat(controller.getMaxStreams(), equalTo(QueueEntryEventStreamController.DEFAULT_MAX_STREAMS));
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openmrs.Patient;
+import org.openmrs.Visit;
+import org.openmrs.module.queue.api.QueueEntryService;
+import org.openmrs.module.queue.api.QueueServicesWrapper;
+import org.openmrs.module.queue.model.Queue;
+import org.openmrs.module.queue.model.QueueEntry;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+
+@ExtendWith(MockitoExtension.class)
+public class QueueEntryJourneyRestControllerTest {
+	
+	private static final long MILLIS_PER_MINUTE = 60 * 1000;
+	
+	@Mock
+	private QueueServicesWrapper queueServicesWrapper;
+	
+	@Mock
+	private QueueEntryService queueEntryService;
+	
+	private MockedStatic<ConversionUtil> conversionUtil;
+	
+	private QueueEntryJourneyRestController controller;
+	
+	private Queue triage;
+	
+	private Queue consultation;
+	
+	private Queue pharmacy;
+	
+	@BeforeEach
+	public void setup() {
+		conversionUtil = mockStatic(ConversionUtil.class);
+		controller = new QueueEntryJourneyRestController(queueServicesWrapper);
+		triage = newQueue(1);
+		consultation = newQueue(2);
+		pharmacy = newQueue(3);
+	}
+	
+	@AfterEach
+	public void cleanup() {
+		conversionUtil.close();
+	}
+	
+	@Test
+	public void shouldGetJourneyOfVisitWithWaitTimesAndPreviousEntries() {
+		Visit visit = new Visit();
+		Date start = new Date(System.currentTimeMillis() - 60 * MILLIS_PER_MINUTE);
+		Date transferredToConsultation = new Date(start.getTime() + 15 * MILLIS_PER_MINUTE);
+		Date transferredToPharmacy = new Date(start.getTime() + 40 * MILLIS_PER_MINUTE);
+		QueueEntry triageEntry = newQueueEntry(triage, null, start, transferredToConsultation);
+		QueueEntry consultationEntry = newQueueEntry(consultation, triage, transferredToConsultation,
+		    transferredToPharmacy);
+		consultationEntry.setPreviousQueueEntry(triageEntry);
+		QueueEntry pharmacyEntry = newQueueEntry(pharmacy, consultation, transferredToPharmacy, null);
+		when(queueServicesWrapper.getVisit("visit-uuid")).thenReturn(visit);
+		when(queueServicesWrapper.getQueueEntryService()).thenReturn(queueEntryService);
+		when(queueEntryService.getQueueEntryJourney(visit))
+		        .thenReturn(Arrays.asList(triageEntry, consultationEntry, pharmacyEntry));
+		
+		List<SimpleObject> steps = getSteps(controller.getJourney("visit-uuid", null, null));
+		
+		assertThat(steps, hasSize(3));
+		assertThat(steps.get(0).get("uuid"), equalTo(triageEntry.getUuid()));
+		assertThat(steps.get(0).get("waitTime"), equalTo(15L));
+		assertThat(steps.get(0).get("previousQueueEntry"), nullValue());
+		assertThat(steps.get(1).get("waitTime"), equalTo(25L));
+		assertThat(steps.get(1).get("previousQueueEntry"), equalTo(triageEntry.getUuid()));
+		assertThat((Long) steps.get(2).get("waitTime"), greaterThanOrEqualTo(20L));
+		assertThat(steps.get(2).get("previousQueueEntry"), equalTo(consultationEntry.getUuid()));
+		verify(queueEntryService, never()).getPreviousQueueEntry(any());
+	}
+	
+	@Test
+	public void shouldNotMatchPreviousEntryThatDidNotEndWhenEntryStarted() {
+		Visit visit = new Visit();
+		Date start = new Date(System.currentTimeMillis() - 60 * MILLIS_PER_MINUTE);
+		Date endedAt = new Date(start.getTime() + 15 * MILLIS_PER_MINUTE);
+		QueueEntry triageEntry = newQueueEntry(triage, null, start, endedAt);
+		QueueEntry consultationEntry = newQueueEntry(consultation, triage, new Date(endedAt.getTime() + 1000), null);
+		when(queueServicesWrapper.getVisit("visit-uuid")).thenReturn(visit);
+		when(queueServicesWrapper.getQueueEntryService()).thenReturn(queueEntryService);
+		when(queueEntryService.getQueueEntryJourney(visit)).thenReturn(Arrays.asList(triageEntry, consultationEntry));
+		
+		List<SimpleObject> steps = getSteps(controller.getJourney("visit-uuid", null, null));
+		
+		assertThat(steps.get(1).get("previousQueueEntry"), nullValue());
+	}
+	
+	@Test
+	public void shouldGetJourneyOfPatientOnDate() {
+		Patient patient = new Patient();
+		Date date = new Date(System.currentTimeMillis() - 24 * 60 * MILLIS_PER_MINUTE);
+		when(queueServicesWrapper.getPatient("patient-uuid")).thenReturn(patient);
+		when(queueServicesWrapper.getQueueEntryService()).thenReturn(queueEntryService);
+		conversionUtil.when(() -> ConversionUtil.convert("2023-08-01", Date.class)).thenReturn(date);
+		when(queueEntryService.getQueueEntryJourney(patient, date)).thenReturn(Collections.emptyList());
+		
+		List<SimpleObject> steps = getSteps(controller.getJourney(null, "patient-uuid", "2023-08-01"));
+		
+		assertThat(steps, hasSize(0));
+		verify(queueEntryService).getQueueEntryJourney(eq(patient), eq(date));
+	}
+	
+	@Test
+	public void shouldRejectRequestWithoutVisitOrPatient() {
+		assertThrows(IllegalArgumentException.class, () -> controller.getJourney(" ", null, null));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<SimpleObject> getSteps(Object journey) {
+		return (List<SimpleObject>) ((SimpleObject) journey).get("results");
+	}
+	
+	private Queue newQueue(int queueId) {
+		Queue queue = new Queue();
+		queue.setQueueId(queueId);
+		return queue;
+	}
+	
+	private QueueEntry newQueueEntry(Queue queue, Queue queueComingFrom, Date startedAt, Date endedAt) {
+		QueueEntry queueEntry = new QueueEntry();
+		queueEntry.setQueue(queue);
+		queueEntry.setQueueComingFrom(queueComingFrom);
+		queueEntry.setStartedAt(startedAt);
+		queueEntry.setEndedAt(endedAt);
+		return queueEntry;
+	}
+}
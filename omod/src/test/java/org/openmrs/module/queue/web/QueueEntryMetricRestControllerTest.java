@@ -14,12 +14,18 @@ import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.openmrs.module.queue.web.QueueEntryMetricRestController.AVERAGE_WAIT_TIME;
 import static org.openmrs.module.queue.web.QueueEntryMetricRestController.COUNT;
+import static org.openmrs.module.queue.web.QueueEntryMetricRestController.MAX_WAIT_TIME;
+import static org.openmrs.module.queue.web.QueueEntryMetricRestController.MIN_WAIT_TIME;
+import static org.openmrs.module.queue.web.QueueEntryMetricRestController.WAIT_TIME_PERCENTILES;
 import static org.openmrs.module.queue.web.resources.parser.QueueEntrySearchCriteriaParser.SEARCH_PARAM_STATUS;
 
 import javax.servlet.http.HttpServletRequest;
@@ -49,6 +55,7 @@ import org.openmrs.module.queue.api.QueueService;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.api.RoomProviderMapService;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.api.search.QueueEntryWaitTimeStatistics;
 import org.openmrs.module.queue.web.resources.parser.QueueEntrySearchCriteriaParser;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RestUtil;
@@ -135,7 +142,7 @@ public class QueueEntryMetricRestControllerTest {
 		String[] refs = new String[] { "ref1", "ref2" };
 		parameterMap.put(SEARCH_PARAM_STATUS, refs);
 		parameterMap.put(QueueEntryMetricRestController.METRIC, new String[] { COUNT });
-		when(queueServicesWrapper.getConcepts(refs)).thenReturn(vals);
+		when(queueServicesWrapper.getConceptsByRef(Arrays.asList(refs))).thenReturn(mapByRef(refs, vals));
 		SimpleObject result = (SimpleObject) controller.handleRequest(request);
 		assertThat(result.get(COUNT), equalTo(50));
 		verify(queueEntryService).getCountOfQueueEntries(queueEntryArgumentCaptor.capture());
@@ -143,4 +150,40 @@ public class QueueEntryMetricRestControllerTest {
 		assertThat(criteria.getStatuses(), hasSize(2));
 		assertThat(criteria.getStatuses(), containsInAnyOrder(vals.get(0), vals.get(1)));
 	}
+	
+	@Test
+	public void shouldRetrieveWaitTimeMetricsWithoutLoadingQueueEntries() {
+		parameterMap.put(QueueEntryMetricRestController.METRIC,
+		    new String[] { COUNT, AVERAGE_WAIT_TIME, MAX_WAIT_TIME, WAIT_TIME_PERCENTILES });
+		parameterMap.put(QueueEntryMetricRestController.PERCENTILE, new String[] { "50" });
+		when(queueEntryService.getQueueEntryWaitTimeStatistics(any(), eq(true)))
+		        .thenReturn(new QueueEntryWaitTimeStatistics(new long[] { 30, 10, 20 }));
+		SimpleObject result = (SimpleObject) controller.handleRequest(request);
+		assertThat(result.get(COUNT), equalTo(50));
+		assertThat(result.get(AVERAGE_WAIT_TIME), equalTo(20.0));
+		assertThat(result.get(MAX_WAIT_TIME), equalTo(30L));
+		assertThat(((SimpleObject) result.get(WAIT_TIME_PERCENTILES)).get("50"), equalTo(20.0));
+		assertThat(result.containsKey(MIN_WAIT_TIME), equalTo(false));
+		verify(queueEntryService, never()).getQueueEntries(any());
+	}
+	
+	@Test
+	public void shouldNotRetrieveWaitTimeOfEachEntryUnlessPercentilesAreRequested() {
+		parameterMap.put(QueueEntryMetricRestController.METRIC,
+		    new String[] { COUNT, AVERAGE_WAIT_TIME, MIN_WAIT_TIME });
+		when(queueEntryService.getQueueEntryWaitTimeStatistics(any(), eq(false)))
+		        .thenReturn(new QueueEntryWaitTimeStatistics(3, 60, 10L, 30L));
+		SimpleObject result = (SimpleObject) controller.handleRequest(request);
+		assertThat(result.get(AVERAGE_WAIT_TIME), equalTo(20.0));
+		assertThat(result.get(MIN_WAIT_TIME), equalTo(10L));
+		assertThat(result.get(COUNT), equalTo(50));
+	}
+	
+	private static <T> Map<String, T> mapByRef(String[] refs, List<T> vals) {
+		Map<String, T> ret = new HashMap<>();
+		for (int i = 0; i < refs.length; i++) {
+			ret.put(refs[i], vals.get(i));
+		}
+		return ret;
+	}
 }
@@ -0,0 +1,95 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mockStatic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.queue.api.QueueServicesWrapper;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+@ExtendWith(MockitoExtension.class)
+public class QueueEntryTransitionRestControllerTest {
+	
+	@Mock
+	private QueueServicesWrapper queueServicesWrapper;
+	
+	private MockedStatic<Context> context;
+	
+	private QueueEntryTransitionRestController controller;
+	
+	@BeforeEach
+	public void setup() {
+		context = mockStatic(Context.class);
+		controller = new QueueEntryTransitionRestController(queueServicesWrapper);
+	}
+	
+	@AfterEach
+	public void cleanup() {
+		context.close();
+	}
+	
+	@Test
+	public void shouldRetryOperationThatConflicts() {
+		AtomicInteger attempts = new AtomicInteger();
+		String result = controller.withConflictRetry(() -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new ObjectOptimisticLockingFailureException("QueueEntry", 1);
+			}
+			return "transitioned";
+		});
+		assertThat(result, equalTo("transitioned"));
+		assertThat(attempts.get(), equalTo(2));
+	}
+	
+	@Test
+	public void shouldReportConflictWhenRetriedOperationIsNoLongerValid() {
+		AtomicInteger attempts = new AtomicInteger();
+		Supplier<String> operation = () -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new ObjectOptimisticLockingFailureException("QueueEntry", 1);
+			}
+			throw new IllegalStateException("Cannot transition a queue entry that has already ended");
+		};
+		QueueEntryConflictException e = assertThrows(QueueEntryConflictException.class,
+		    () -> controller.withConflictRetry(operation));
+		assertThat(e.getCause().getMessage(), equalTo("Cannot transition a queue entry that has already ended"));
+	}
+	
+	@Test
+	public void shouldNotReportConflictWhenOperationIsInvalidWithoutConflicting() {
+		assertThrows(IllegalStateException.class, () -> controller.withConflictRetry(() -> {
+			throw new IllegalStateException("Cannot transition a voided queue entry");
+		}));
+	}
+	
+	@Test
+	public void shouldReportConflictWhenRetriesAreExhausted() {
+		AtomicInteger attempts = new AtomicInteger();
+		assertThrows(QueueEntryConflictException.class, () -> controller.withConflictRetry(() -> {
+			attempts.incrementAndGet();
+			throw new ObjectOptimisticLockingFailureException("QueueEntry", 1);
+		}));
+		assertThat(attempts.get(), equalTo(QueueEntryTransitionRestController.MAX_CONFLICT_RETRIES + 1));
+	}
+}
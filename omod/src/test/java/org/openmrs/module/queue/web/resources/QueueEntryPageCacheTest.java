@@ -0,0 +1,84 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.queue.web.resources;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openmrs.module.webservices.rest.SimpleObject;
+
+public class QueueEntryPageCacheTest {
+	
+	private QueueEntryPageCache cache;
+	
+	private AtomicInteger numLoads;
+	
+	private Supplier<SimpleObject> loader;
+	
+	@BeforeEach
+	public void setup() {
+		cache = new QueueEntryPageCache();
+		numLoads = new AtomicInteger();
+		loader = () -> new SimpleObject().add("load", numLoads.incrementAndGet());
+	}
+	
+	@Test
+	public void shouldReuseCachedPageWhileVersionIsUnchanged() {
+		SimpleObject first = cache.get("queue1", 1L, loader).toSimpleObject(null);
+		SimpleObject second = cache.get("queue1", 1L, loader).toSimpleObject(null);
+		assertThat(second, sameInstance(first));
+		assertThat(numLoads.get(), is(1));
+	}
+	
+	@Test
+	public void shouldReloadPageWhenVersionChanges() {
+		cache.get("queue1", 1L, loader);
+		SimpleObject reloaded = cache.get("queue1", 2L, loader).toSimpleObject(null);
+		assertThat(reloaded.get("load"), is(2));
+		assertThat(numLoads.get(), is(2));
+	}
+	
+	@Test
+	public void shouldCachePagesSeparatelyByKey() {
+		cache.get("queue1", 1L, loader);
+		cache.get("queue2", 1L, loader);
+		cache.get("queue1", 1L, loader);
+		assertThat(numLoads.get(), is(2));
+	}
+	
+	@Test
+	public void shouldEvictLeastRecentlyUsedPageWhenFull() {
+		for (int i = 0; i < QueueEntryPageCache.MAX_SIZE; i++) {
+			cache.get("queue" + i, 1L, loader);
+		}
+		cache.get("queue0", 1L, loader);
+		cache.get("queue" + QueueEntryPageCache.MAX_SIZE, 1L, loader);
+		assertThat(numLoads.get(), is(QueueEntryPageCache.MAX_SIZE + 1));
+		
+		cache.get("queue0", 1L, loader);
+		assertThat(numLoads.get(), is(QueueEntryPageCache.MAX_SIZE + 1));
+		cache.get("queue1", 1L, loader);
+		assertThat(numLoads.get(), is(QueueEntryPageCache.MAX_SIZE + 2));
+	}
+	
+	@Test
+	public void shouldReloadPagesAfterClear() {
+		cache.get("queue1", 1L, loader);
+		cache.clear();
+		cache.get("queue1", 1L, loader);
+		assertThat(numLoads.get(), is(2));
+	}
+}
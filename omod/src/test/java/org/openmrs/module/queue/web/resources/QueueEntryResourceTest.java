@@ -16,9 +16,12 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.openmrs.module.queue.web.resources.parser.QueueEntrySearchCriteriaParser.SEARCH_PARAM_ENDED_ON_OR_AFTER;
@@ -43,6 +46,7 @@ import javax.servlet.http.HttpServletRequest;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -68,17 +72,27 @@ import org.openmrs.module.queue.api.QueueRoomService;
 import org.openmrs.module.queue.api.QueueService;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.api.RoomProviderMapService;
+import org.openmrs.module.queue.api.search.QueueEntryCursor;
+import org.openmrs.module.queue.api.search.QueueEntryFetchPlan;
 import org.openmrs.module.queue.api.search.QueueEntrySearchCriteria;
+import org.openmrs.module.queue.api.search.QueueEntrySummary;
 import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
 import org.openmrs.module.queue.utils.QueueUtils;
+import org.openmrs.module.queue.web.QueueEntryConflictException;
 import org.openmrs.module.queue.web.resources.parser.QueueEntrySearchCriteriaParser;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.Hyperlink;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestUtil;
 import org.openmrs.module.webservices.rest.web.representation.CustomRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.DefaultRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.FullRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.RefRepresentation;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.response.IllegalRequestException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 @ExtendWith(MockitoExtension.class)
 public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, QueueEntryResource> {
@@ -206,12 +220,19 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		assertThat(newlyCreatedObject.getUuid(), is(QUEUE_ENTRY_UUID));
 	}
 	
+	@Test
+	public void shouldReportConflictWhenSavingConcurrentlyModifiedResource() {
+		when(queueEntryService.saveQueueEntry(getObject()))
+		        .thenThrow(new ObjectOptimisticLockingFailureException(QueueEntry.class, 1));
+		assertThrows(QueueEntryConflictException.class, () -> getResource().save(getObject()));
+	}
+	
 	@Test
 	public void shouldSearchQueueEntriesByQueue() {
 		List<Queue> vals = Arrays.asList(new Queue(), new Queue());
 		String[] refs = new String[] { "ref1", "ref2" };
 		parameterMap.put(SEARCH_PARAM_QUEUE, refs);
-		when(queueServicesWrapper.getQueues(refs)).thenReturn(vals);
+		when(queueServicesWrapper.getQueuesByRef(Arrays.asList(refs))).thenReturn(mapByRef(refs, vals));
 		resource.doSearch(requestContext);
 		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
 		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
@@ -224,7 +245,7 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		List<Location> vals = Arrays.asList(new Location(), new Location());
 		String[] refs = new String[] { "ref1", "ref2" };
 		parameterMap.put(SEARCH_PARAM_LOCATION, refs);
-		when(queueServicesWrapper.getLocations(refs)).thenReturn(vals);
+		when(queueServicesWrapper.getLocationsByRef(Arrays.asList(refs))).thenReturn(mapByRef(refs, vals));
 		resource.doSearch(requestContext);
 		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
 		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
@@ -237,7 +258,7 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		List<Concept> vals = Arrays.asList(new Concept(), new Concept());
 		String[] refs = new String[] { "ref1", "ref2" };
 		parameterMap.put(SEARCH_PARAM_SERVICE, refs);
-		when(queueServicesWrapper.getConcepts(refs)).thenReturn(vals);
+		when(queueServicesWrapper.getConceptsByRef(Arrays.asList(refs))).thenReturn(mapByRef(refs, vals));
 		resource.doSearch(requestContext);
 		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
 		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
@@ -292,7 +313,7 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		List<Concept> vals = Arrays.asList(new Concept(), new Concept());
 		String[] refs = new String[] { "ref1", "ref2" };
 		parameterMap.put(SEARCH_PARAM_PRIORITY, refs);
-		when(queueServicesWrapper.getConcepts(refs)).thenReturn(vals);
+		when(queueServicesWrapper.getConceptsByRef(Arrays.asList(refs))).thenReturn(mapByRef(refs, vals));
 		resource.doSearch(requestContext);
 		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
 		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
@@ -305,7 +326,7 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		List<Concept> vals = Arrays.asList(new Concept(), new Concept());
 		String[] refs = new String[] { "ref1", "ref2" };
 		parameterMap.put(SEARCH_PARAM_STATUS, refs);
-		when(queueServicesWrapper.getConcepts(refs)).thenReturn(vals);
+		when(queueServicesWrapper.getConceptsByRef(Arrays.asList(refs))).thenReturn(mapByRef(refs, vals));
 		resource.doSearch(requestContext);
 		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
 		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
@@ -318,7 +339,7 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		List<Location> vals = Arrays.asList(new Location(), new Location());
 		String[] refs = new String[] { "ref1", "ref2" };
 		parameterMap.put(SEARCH_PARAM_LOCATION_WAITING_FOR, refs);
-		when(queueServicesWrapper.getLocations(refs)).thenReturn(vals);
+		when(queueServicesWrapper.getLocationsByRef(Arrays.asList(refs))).thenReturn(mapByRef(refs, vals));
 		resource.doSearch(requestContext);
 		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
 		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
@@ -331,7 +352,7 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		List<Provider> vals = Arrays.asList(new Provider(), new Provider());
 		String[] refs = new String[] { "ref1", "ref2" };
 		parameterMap.put(SEARCH_PARAM_PROVIDER_WAITING_FOR, refs);
-		when(queueServicesWrapper.getProviders(refs)).thenReturn(vals);
+		when(queueServicesWrapper.getProvidersByRef(Arrays.asList(refs))).thenReturn(mapByRef(refs, vals));
 		resource.doSearch(requestContext);
 		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
 		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
@@ -344,7 +365,7 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		List<Queue> vals = Arrays.asList(new Queue(), new Queue());
 		String[] refs = new String[] { "ref1", "ref2" };
 		parameterMap.put(SEARCH_PARAM_QUEUE_COMING_FROM, refs);
-		when(queueServicesWrapper.getQueues(refs)).thenReturn(vals);
+		when(queueServicesWrapper.getQueuesByRef(Arrays.asList(refs))).thenReturn(mapByRef(refs, vals));
 		resource.doSearch(requestContext);
 		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
 		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
@@ -352,6 +373,14 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		assertThat(criteria.getQueuesComingFrom(), containsInAnyOrder(vals.get(0), vals.get(1)));
 	}
 	
+	@Test
+	public void shouldSearchQueueEntriesWithFetchPlanOfRepresentation() {
+		when(requestContext.getRepresentation()).thenReturn(new FullRepresentation());
+		resource.doSearch(requestContext);
+		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
+		assertThat(queueEntryArgumentCaptor.getValue().getFetchPlan(), equalTo(QueueEntryFetchPlan.FULL));
+	}
+	
 	@Test
 	public void shouldSearchQueueEntriesByStartedOnOrAfter() {
 		String dateStr = "2023-09-10 11:12:13";
@@ -428,6 +457,117 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 		assertThat(criteria.isIncludedVoided(), equalTo(false));
 	}
 	
+	@Test
+	public void shouldLimitSearchResultsInDatabase() {
+		when(requestContext.getStartIndex()).thenReturn(10);
+		when(requestContext.getLimit()).thenReturn(5);
+		resource.doSearch(requestContext);
+		verify(queueEntryService).getQueueEntries(queueEntryArgumentCaptor.capture());
+		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
+		assertThat(criteria.getStartIndex(), equalTo(10));
+		assertThat(criteria.getLimit(), equalTo(6));
+	}
+	
+	@Test
+	public void shouldSeekToNextPageWithContinuationToken() {
+		QueueEntryCursor cursor = new QueueEntryCursor(10.0, new Date(1000), new Date(2000), 5);
+		when(requestContext.getParameter(QueueEntryPage.PARAM_CONTINUATION_TOKEN)).thenReturn(cursor.toToken());
+		when(requestContext.getLimit()).thenReturn(1);
+		QueueEntry nextEntry = new QueueEntry();
+		nextEntry.setQueueEntryId(6);
+		nextEntry.setSortWeight(10.0);
+		nextEntry.setStartedAt(new Date(1000));
+		nextEntry.setDateCreated(new Date(3000));
+		when(queueEntryService.getQueueEntries(queueEntryArgumentCaptor.capture()))
+		        .thenReturn(Arrays.asList(nextEntry, new QueueEntry()));
+		QueueEntryPage page = (QueueEntryPage) resource.doSearch(requestContext);
+		QueueEntrySearchCriteria criteria = queueEntryArgumentCaptor.getValue();
+		assertThat(criteria.getAfter(), equalTo(cursor));
+		assertThat(criteria.getStartIndex(), nullValue());
+		assertThat(criteria.getLimit(), equalTo(2));
+		assertThat(page.getContinuationToken(), equalTo(QueueEntryCursor.of(nextEntry).toToken()));
+	}
+	
+	@Test
+	public void shouldLinkToNextPageWithContinuationTokenRatherThanStartIndex() {
+		QueueEntryCursor cursor = new QueueEntryCursor(10.0, new Date(1000), new Date(2000), 5);
+		MockHttpServletRequest httpRequest = new MockHttpServletRequest("GET", "/openmrs/ws/rest/v1/queue-entry");
+		httpRequest.setQueryString("v=default&startIndex=1&limit=1&continuationToken=" + cursor.toToken());
+		when(requestContext.getRequest()).thenReturn(httpRequest);
+		when(requestContext.getParameter(QueueEntryPage.PARAM_CONTINUATION_TOKEN)).thenReturn(cursor.toToken());
+		QueueEntry nextEntry = new QueueEntry();
+		nextEntry.setQueueEntryId(6);
+		nextEntry.setSortWeight(10.0);
+		nextEntry.setStartedAt(new Date(1000));
+		nextEntry.setDateCreated(new Date(3000));
+		QueueEntryPage page = new QueueEntryPage(requestContext, Collections.singletonList(nextEntry), true, null);
+		List<Hyperlink> links = page.getLinks();
+		assertThat(links, hasSize(1));
+		assertThat(links.get(0).getRel(), equalTo("next"));
+		assertThat(links.get(0).getUri(), equalTo("http://localhost/openmrs/ws/rest/v1/queue-entry?v=default&limit=1"
+		        + "&continuationToken=" + QueueEntryCursor.of(nextEntry).toToken()));
+	}
+	
+	@Test
+	public void shouldRejectInvalidContinuationToken() {
+		when(requestContext.getParameter(QueueEntryPage.PARAM_CONTINUATION_TOKEN)).thenReturn("not-a-token");
+		assertThrows(IllegalRequestException.class, () -> resource.doSearch(requestContext));
+		verify(queueEntryService, never()).getQueueEntries(any());
+	}
+	
+	@Test
+	public void shouldSearchQueueEntrySummariesForCompactRepresentation() {
+		Representation compact = mock(Representation.class);
+		when(compact.getRepresentation()).thenReturn(QueueEntryResource.REPRESENTATION_COMPACT);
+		when(requestContext.getRepresentation()).thenReturn(compact);
+		when(requestContext.getLimit()).thenReturn(1);
+		QueueEntrySummary summary = new QueueEntrySummary();
+		summary.setQueueEntryId(6);
+		summary.setUuid(QUEUE_ENTRY_UUID);
+		summary.setPatientUuid("patient-uuid");
+		summary.setStatusUuid("status-uuid");
+		summary.setSortWeight(10.0);
+		summary.setStartedAt(new Date(1000));
+		summary.setDateCreated(new Date(3000));
+		when(queueEntryService.getQueueEntrySummaries(queueEntryArgumentCaptor.capture()))
+		        .thenReturn(Arrays.asList(summary, new QueueEntrySummary()));
+		QueueEntrySummaryPage page = (QueueEntrySummaryPage) resource.doSearch(requestContext);
+		assertThat(queueEntryArgumentCaptor.getValue().getLimit(), equalTo(2));
+		assertThat(page.getResults(), hasSize(1));
+		assertThat(page.getContinuationToken(), equalTo(QueueEntryCursor.of(summary).toToken()));
+		
+		summary.setStartedAt(null);
+		SimpleObject compactEntry = QueueEntrySummaryPage.toSimpleObject(summary);
+		assertThat(compactEntry.get("uuid"), is(QUEUE_ENTRY_UUID));
+		assertThat(compactEntry.get("display"), is("patient-uuid"));
+		assertThat(((SimpleObject) compactEntry.get("status")).get("uuid"), is("status-uuid"));
+		assertThat(compactEntry.get("visit"), nullValue());
+	}
+	
+	@Test
+	public void shouldServePreviousQueueEntriesOfPageFromSingleQuery() {
+		queueEntry.setQueueEntryId(6);
+		QueueEntry otherQueueEntry = new QueueEntry();
+		otherQueueEntry.setQueueEntryId(7);
+		QueueEntry previousQueueEntry = new QueueEntry();
+		previousQueueEntry.setQueueEntryId(5);
+		List<QueueEntry> queueEntries = Arrays.asList(queueEntry, otherQueueEntry);
+		Map<Integer, QueueEntry> previousQueueEntries = new HashMap<>();
+		previousQueueEntries.put(6, previousQueueEntry);
+		previousQueueEntries.put(7, null);
+		when(queueEntryService.getPreviousQueueEntries(queueEntries)).thenReturn(previousQueueEntries);
+		
+		List<QueueEntry> resolved = resource.withPreviousQueueEntries(queueEntries, new DefaultRepresentation(),
+		    () -> Arrays.asList(resource.getPreviousQueueEntry(queueEntry),
+		        resource.getPreviousQueueEntry(otherQueueEntry)));
+		assertThat(resolved.get(0), is(previousQueueEntry));
+		assertThat(resolved.get(1), nullValue());
+		verify(queueEntryService, never()).getPreviousQueueEntry(any());
+		
+		resource.getPreviousQueueEntry(queueEntry);
+		verify(queueEntryService).getPreviousQueueEntry(queueEntry);
+	}
+	
 	@Test
 	public void shouldInstantiateNewDelegate() {
 		assertThat(getResource().newDelegate(), notNullValue());
@@ -437,4 +577,12 @@ public class QueueEntryResourceTest extends BaseQueueResourceTest<QueueEntry, Qu
 	public void verifyResourceVersion() {
 		assertThat(getResource().getResourceVersion(), is("2.3"));
 	}
+	
+	private static <T> Map<String, T> mapByRef(String[] refs, List<T> vals) {
+		Map<String, T> ret = new HashMap<>();
+		for (int i = 0; i < refs.length; i++) {
+			ret.put(refs[i], vals.get(i));
+		}
+		return ret;
+	}
 }
@@ -10,14 +10,24 @@
 package org.openmrs.module.queue.web.resources;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -34,17 +44,26 @@ import org.openmrs.module.queue.api.QueueRoomService;
 import org.openmrs.module.queue.api.QueueService;
 import org.openmrs.module.queue.api.QueueServicesWrapper;
 import org.openmrs.module.queue.api.RoomProviderMapService;
+import org.openmrs.module.queue.api.dao.QueueEntryDao;
+import org.openmrs.module.queue.api.impl.QueueEntryServiceImpl;
+import org.openmrs.module.queue.api.sort.ExistingValueSortWeightGenerator;
+import org.openmrs.module.queue.model.Queue;
 import org.openmrs.module.queue.model.QueueEntry;
+import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.representation.CustomRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.DefaultRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.FullRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.RefRepresentation;
+import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+import org.openmrs.module.webservices.rest.web.resource.impl.EmptySearchResult;
 
 @ExtendWith(MockitoExtension.class)
 public class QueueEntrySubResourceTest extends BaseQueueResourceTest<QueueEntry, QueueEntrySubResource> {
 	
 	private static final String QUEUE_ENTRY_UUID = "6hje567a-fca0-11e5-9e59-08002719a7";
 	
+	private static final String QUEUE_UUID = "3eb7fe43-2813-4kbc-80dc-2e5d30252cc5";
+	
 	@Mock
 	private QueueService queueService;
 	
@@ -148,8 +167,98 @@ public class QueueEntrySubResourceTest extends BaseQueueResourceTest<QueueEntry,
 		assertThat(getResource().newDelegate(), notNullValue());
 	}
 	
+	@Test
+	public void shouldRespondNotModifiedWithoutFetchingUnchangedQueueEntries() {
+		Queue queue = new Queue();
+		queue.setQueueId(1);
+		queue.setUuid(QUEUE_UUID);
+		when(queueEntryService.getQueueEntriesVersion(queue)).thenReturn(5L);
+		RequestContext requestContext = newRequestContext();
+		String eTag = QueueEntryETag.getETag(queueEntryService, Collections.singletonList(queue), requestContext);
+		when(requestContext.getRequest().getHeader(QueueEntryETag.HEADER_IF_NONE_MATCH)).thenReturn(eTag);
+		
+		PageableResult result = getResource().doGetAll(queue, requestContext);
+		assertThat(result, instanceOf(EmptySearchResult.class));
+		verify(requestContext.getResponse()).setHeader(QueueEntryETag.HEADER_ETAG, eTag);
+		verify(requestContext.getResponse()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		verify(queueEntryService, never()).getQueueEntries(any());
+	}
+	
+	@Test
+	public void shouldChangeETagWhenQueueEntriesChange() {
+		Queue queue = new Queue();
+		queue.setQueueId(1);
+		queue.setUuid(QUEUE_UUID);
+		when(queueEntryService.getQueueEntriesVersion(queue)).thenReturn(5L, 6L);
+		RequestContext requestContext = newRequestContext();
+		
+		String eTag = QueueEntryETag.getETag(queueEntryService, Collections.singletonList(queue), requestContext);
+		String changedETag = QueueEntryETag.getETag(queueEntryService, Collections.singletonList(queue), requestContext);
+		assertThat(changedETag, not(eTag));
+		assertThat(QueueEntryETag.matches("\"other\", " + eTag.substring(2), eTag), is(true));
+		assertThat(QueueEntryETag.matches(eTag, changedETag), is(false));
+	}
+	
+	@Test
+	public void shouldChangeETagOfQueueThatEntryIsMovedOutOf() {
+		QueueEntryDao dao = mock(QueueEntryDao.class);
+		QueueEntryServiceImpl service = new QueueEntryServiceImpl();
+		service.setDao(dao);
+		service.setSortWeightGenerator(new ExistingValueSortWeightGenerator());
+		Queue oldQueue = new Queue();
+		oldQueue.setQueueId(1);
+		oldQueue.setUuid(QUEUE_UUID);
+		Queue newQueue = new Queue();
+		newQueue.setQueueId(2);
+		QueueEntry movedQueueEntry = new QueueEntry();
+		movedQueueEntry.setQueueEntryId(1);
+		movedQueueEntry.setQueue(newQueue);
+		when(dao.getPersistedQueue(movedQueueEntry)).thenReturn(oldQueue);
+		RequestContext requestContext = newRequestContext();
+		
+		String eTag = QueueEntryETag.getETag(service, Collections.singletonList(oldQueue), requestContext);
+		service.saveQueueEntry(movedQueueEntry);
+		assertThat(QueueEntryETag.getETag(service, Collections.singletonList(oldQueue), requestContext), not(eTag));
+	}
+	
+	@Test
+	public void shouldGetSamePageCacheKeyRegardlessOfParameterOrder() {
+		Queue queue = new Queue();
+		queue.setUuid(QUEUE_UUID);
+		Map<String, String[]> parameters = new LinkedHashMap<>();
+		parameters.put("limit", new String[] { "10" });
+		parameters.put("startIndex", new String[] { "20" });
+		Map<String, String[]> reorderedParameters = new LinkedHashMap<>();
+		reorderedParameters.put("startIndex", new String[] { "20" });
+		reorderedParameters.put("limit", new String[] { "10" });
+		Map<String, String[]> otherParameters = new LinkedHashMap<>();
+		otherParameters.put("limit", new String[] { "10" });
+		otherParameters.put("startIndex", new String[] { "30" });
+		
+		String key = getResource().getPageCacheKey(queue, newRequestContext(parameters));
+		assertThat(getResource().getPageCacheKey(queue, newRequestContext(reorderedParameters)), is(key));
+		assertThat(getResource().getPageCacheKey(queue, newRequestContext(otherParameters)), not(key));
+	}
+	
 	@Test
 	public void verifyResourceVersion() {
 		assertThat(getResource().getResourceVersion(), is("2.3"));
 	}
+	
+	private RequestContext newRequestContext(Map<String, String[]> parameters) {
+		RequestContext requestContext = newRequestContext();
+		when(requestContext.getRequest().getParameterMap()).thenReturn(parameters);
+		return requestContext;
+	}
+	
+	private RequestContext newRequestContext() {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		lenient().when(request.getMethod()).thenReturn("GET");
+		lenient().when(request.getRequestURL()).thenReturn(new StringBuffer("/ws/rest/v1/queue/" + QUEUE_UUID + "/entry"));
+		RequestContext requestContext = new RequestContext();
+		requestContext.setRequest(request);
+		requestContext.setResponse(mock(HttpServletResponse.class));
+		requestContext.setRepresentation(new DefaultRepresentation());
+		return requestContext;
+	}
 }